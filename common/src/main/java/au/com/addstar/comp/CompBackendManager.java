@@ -7,21 +7,30 @@ import java.sql.SQLException;
 import java.sql.Timestamp;
 import java.util.AbstractMap;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
 
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import com.google.common.base.Joiner;
 import com.google.common.base.Preconditions;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
 
 import au.com.addstar.comp.criterions.BaseCriterion;
+import au.com.addstar.comp.database.DatabaseExecutor.SqlCallable;
+import au.com.addstar.comp.database.DatabaseExecutor.SqlRunnable;
 import au.com.addstar.comp.database.DatabaseManager;
 import au.com.addstar.comp.database.HikariConnectionPool;
 import au.com.addstar.comp.database.StatementKey;
+import au.com.addstar.comp.database.UnitOfWork;
+import au.com.addstar.comp.database.UUIDCodec;
+import au.com.addstar.comp.database.Workload;
 import au.com.addstar.comp.prizes.BasePrize;
 
 /**
@@ -42,6 +51,7 @@ public class CompBackendManager {
 	private static final StatementKey STATEMENT_CRITERIA_ADD;
 	private static final StatementKey STATEMENT_CRITERIA_REMOVE;
 	private static final StatementKey STATEMENT_CRITERIA_UPDATE;
+	private static final StatementKey STATEMENT_CRITERIA_LOAD_ALL;
 	
 	// Server table
 	private static final String TABLE_SERVER = "servers";
@@ -69,30 +79,36 @@ public class CompBackendManager {
 		STATEMENT_LOAD = new StatementKey("SELECT Theme, State, StartDate, EndDate, VoteEnd, VoteType, MaxEntrants, FirstPrize, SecondPrize, DefaultPrize FROM " + TABLE_COMP + " WHERE ID=?");
 		STATEMENT_ADD = new StatementKey("INSERT INTO " + TABLE_COMP + " (Theme, State, StartDate, EndDate, VoteEnd, VoteType, MaxEntrants, FirstPrize, SecondPrize, DefaultPrize) VALUES (?,?,?,?,?,?,?,?,?,?)", true);
 		STATEMENT_UPDATE = new StatementKey("UPDATE " + TABLE_COMP + " SET Theme=?, State=?, StartDate=?, EndDate=?, VoteEnd=?, VoteType=?, MaxEntrants=?, FirstPrize=?, SecondPrize=?, DefaultPrize=? WHERE ID=?");
-		STATEMENT_GETALL = new StatementKey("SELECT ID, Theme, State FROM " + TABLE_COMP + " ORDER BY ID");
+		STATEMENT_GETALL = new StatementKey("SELECT ID, Theme, State, StartDate, EndDate, VoteEnd, VoteType, MaxEntrants, FirstPrize, SecondPrize, DefaultPrize FROM " + TABLE_COMP + " ORDER BY ID");
 		STATEMENT_DELETE = new StatementKey("DELETE FROM " + TABLE_COMP + " WHERE ID=?");
 		
 		STATEMENT_CRITERIA_LOAD = new StatementKey("SELECT CriteriaID, Name, Description, Type, Data FROM " + TABLE_CRITERIA + " WHERE CompID=?");
 		STATEMENT_CRITERIA_ADD = new StatementKey("INSERT INTO " + TABLE_CRITERIA + " (CompID, Name, Description, Type, Data) VALUES (?,?,?,?,?)", true);
 		STATEMENT_CRITERIA_REMOVE = new StatementKey("DELETE FROM " + TABLE_CRITERIA + " WHERE CriteriaID=?");
 		STATEMENT_CRITERIA_UPDATE = new StatementKey("UPDATE " + TABLE_CRITERIA + " SET Name=?, Description=?, Type=?, Data=? WHERE CriteriaID=?");
+		STATEMENT_CRITERIA_LOAD_ALL = new StatementKey("SELECT CompID, CriteriaID, Name, Description, Type, Data FROM " + TABLE_CRITERIA + " ORDER BY CriteriaID");
 		
 		STATEMENT_SERVER_GET = new StatementKey("SELECT CompID FROM " + TABLE_SERVER + " WHERE ServerID=?");
 		STATEMENT_SERVER_GETALL = new StatementKey("SELECT ServerID, CompID FROM " + TABLE_SERVER + " WHERE CompID IS NOT NULL");
 		STATEMENT_SERVER_SET = new StatementKey("REPLACE INTO " + TABLE_SERVER + " (ServerID, CompID) VALUES (?,?)");
 
-		STATEMENT_RESULT_ADD = new StatementKey("INSERT INTO " + TABLE_RESULTS + " (CompID, UUID, Name, Rank, PlotID, Prize, Claimed) VALUES (?, ?, ?, ?, ?, ?, 0)");
+		STATEMENT_RESULT_ADD = new StatementKey("INSERT INTO " + TABLE_RESULTS + " (CompID, UUID, UUIDBin, Name, Rank, PlotID, Prize, Claimed) VALUES (?, ?, ?, ?, ?, ?, ?, 0)");
 		STATEMENT_RESULT_UPDATE_CLAIMED = new StatementKey("UPDATE " + TABLE_RESULTS + " SET Claimed=? WHERE CompID=? AND UUID=?");
-		STATEMENT_RESULT_GETALL_COMP = new StatementKey("SELECT UUID, Name, Rank, PlotID, Prize, Claimed FROM " + TABLE_RESULTS + " WHERE CompID=?");
-		STATEMENT_RESULT_GETALL_WINNERS = new StatementKey("SELECT UUID, Name, Rank, PlotID, Prize, Claimed FROM " + TABLE_RESULTS + " WHERE CompID=? AND Rank IS NOT NULL");
-		STATEMENT_RESULT_GET = new StatementKey("SELECT Name, Rank, PlotID, Prize, Claimed FROM " + TABLE_RESULTS + "WHERE CompID=? AND UUID=?");
+		STATEMENT_RESULT_GETALL_COMP = new StatementKey("SELECT UUID, UUIDBin, Name, Rank, PlotID, Prize, Claimed FROM " + TABLE_RESULTS + " WHERE CompID=?");
+		STATEMENT_RESULT_GETALL_WINNERS = new StatementKey("SELECT UUID, UUIDBin, Name, Rank, PlotID, Prize, Claimed FROM " + TABLE_RESULTS + " WHERE CompID=? AND Rank IS NOT NULL");
+		STATEMENT_RESULT_GET = new StatementKey("SELECT Name, Rank, PlotID, Prize, Claimed FROM " + TABLE_RESULTS + " WHERE CompID=? AND UUID=?");
 
-		STATEMENT_ENTRY_ADD = new StatementKey("INSERT INTO " + TABLE_PLOT_ENTRIES + " (CompID, UUID, PlotID, EntryDate) VALUES (?, ?, ?, ?)");
-		STATEMENT_ENTRY_GETALL_COMP = new StatementKey("SELECT UUID, PlotID, EntryDate FROM " + TABLE_PLOT_ENTRIES + " WHERE CompID=?");
+		STATEMENT_ENTRY_ADD = new StatementKey("INSERT INTO " + TABLE_PLOT_ENTRIES + " (CompID, UUID, UUIDBin, PlotID, EntryDate) VALUES (?, ?, ?, ?, ?)");
+		STATEMENT_ENTRY_GETALL_COMP = new StatementKey("SELECT UUID, UUIDBin, PlotID, EntryDate FROM " + TABLE_PLOT_ENTRIES + " WHERE CompID=?");
 		STATEMENT_ENTRY_GET = new StatementKey("SELECT PlotID, EntryDate FROM " + TABLE_PLOT_ENTRIES + " WHERE CompID=? AND UUID=?");
 		STATEMENT_ENTRY_REMOVE = new StatementKey("DELETE FROM " + TABLE_PLOT_ENTRIES + " WHERE CompID=? AND UUID=?");
 	}
 	
+	/**
+	 * The most ids to put in a single IN (...) clause
+	 */
+	private static final int MAX_IN_SIZE = 500;
+	
 	private final DatabaseManager manager;
 	
 	public CompBackendManager(DatabaseManager manager) {
@@ -103,6 +119,62 @@ public class CompBackendManager {
 		return manager.getPool();
 	}
 	
+	/**
+	 * Gets the pool for a kind of work. Slow reads and writes should not use the
+	 * interactive pool so that votes and joins are not kept waiting for a connection
+	 * @param workload The kind of work
+	 * @return The pool to use
+	 */
+	protected HikariConnectionPool getPool(Workload workload) {
+		return manager.getPool(workload);
+	}
+	
+	/**
+	 * Runs backend calls on the database executor, off the server thread.
+	 * For example {@code backend.async(() -> backend.getResult(comp, playerId))}
+	 * @param task The calls to make
+	 * @return A future for the result
+	 */
+	public <T> CompletableFuture<T> async(SqlCallable<T> task) {
+		return manager.getExecutor().submit(task);
+	}
+	
+	/**
+	 * Runs backend calls that return nothing on the database executor, off the server thread.
+	 * @param task The calls to make
+	 * @return A future that completes once the calls are done
+	 */
+	public CompletableFuture<Void> asyncRun(SqlRunnable task) {
+		return manager.getExecutor().execute(task);
+	}
+	
+	/**
+	 * Starts a transaction on a new connection.
+	 * Use it in a try-with-resources block and call {@link UnitOfWork#commit()} once everything is done
+	 * @return The unit of work
+	 * @throws SQLException Thrown if no connection could be obtained
+	 */
+	protected UnitOfWork beginWork() throws SQLException {
+		return beginWork(Workload.Interactive);
+	}
+	
+	/**
+	 * Starts a transaction on a new connection from the pool for a kind of work.
+	 * The workload must not be {@link Workload#ReadOnly}
+	 * @param workload The kind of work
+	 * @return The unit of work
+	 * @throws SQLException Thrown if no connection could be obtained
+	 */
+	protected UnitOfWork beginWork(Workload workload) throws SQLException {
+		Connection connection = getPool(workload).getConnection();
+		try {
+			return new UnitOfWork(connection);
+		} catch (SQLException e) {
+			connection.close();
+			throw e;
+		}
+	}
+	
 	private BasePrize loadPrize(String input) {
 		if (input == null) {
 			return null;
@@ -128,61 +200,14 @@ public class CompBackendManager {
 			statement.setInt(1, id);
 			ResultSet rs = statement.executeQuery();
 			if (rs.next()) {
-				Competition result = new Competition();
-				result.setCompId(id);
-				result.setTheme(rs.getString("Theme"));
-
-				String stateString = rs.getString("State");
-				if (stateString.equalsIgnoreCase("auto")) {
-					result.setAutoState();
-				} else {
-					CompState state;
-					try {
-						state = CompState.valueOf(rs.getString("State"));
-					} catch (IllegalArgumentException e) {
-						state = CompState.Closed;
-					}
-					result.setState(state);
-				}
-
-				Timestamp start = rs.getTimestamp("StartDate");
-				if (start != null) {
-					result.setStartDate(start.getTime());
-				}
-
-				Timestamp end = rs.getTimestamp("EndDate");
-				if (end != null) {
-					result.setEndDate(end.getTime());
-				}
-
-				Timestamp voteEnd = rs.getTimestamp("VoteEnd");
-				if (voteEnd != null) {
-					result.setVoteEndDate(voteEnd.getTime());
-				}
-
-				result.setVotingStrategy(rs.getString("VoteType"));
-
-				result.setMaxEntrants(rs.getInt("MaxEntrants"));
-
-				result.setFirstPrize(loadPrize(rs.getString("FirstPrize")));
-				result.setSecondPrize(loadPrize(rs.getString("SecondPrize")));
-				result.setParticipationPrize(loadPrize(rs.getString("DefaultPrize")));
+				Competition result = readCompetition(id, rs);
 
 				// Load criteria
 				PreparedStatement criteriaStatement = handler.prepareStatement(STATEMENT_CRITERIA_LOAD.getSQL());
 				criteriaStatement.setInt(1, id);
 				ResultSet criteria = criteriaStatement.executeQuery();
 				while (criteria.next()) {
-					BaseCriterion criterion = BaseCriterion.create(criteria.getString("Type"));
-					criterion.setName(criteria.getString("Name"));
-					criterion.setDescription(criteria.getString("Description"));
-
-					String data = criteria.getString("Data");
-					if (data != null) {
-						criterion.load(data);
-					}
-
-					result.getCriteria().add(criterion);
+					result.getCriteria().add(readCriterion(criteria));
 				}
 
 				return result;
@@ -192,14 +217,133 @@ public class CompBackendManager {
 		}
 	}
 	
+	/**
+	 * Loads many competitions at once. This uses one query for the comps
+	 * and one for all of their criteria, no matter how many are loaded
+	 * @param ids The ids of the comps to load
+	 * @return A map of comp id to the loaded Competition, in id order. Ids that do not exist are left out
+	 * @throws SQLException Thrown if an SQLException occurs in the database
+	 */
+	public Map<Integer, Competition> load(Collection<Integer> ids) throws SQLException {
+		Map<Integer, Competition> results = Maps.newTreeMap();
+		if (ids.isEmpty()) {
+			return results;
+		}
+		
+		List<Integer> idList = Lists.newArrayList(Sets.newTreeSet(ids));
+		try (Connection handler = manager.getPool().getConnection()) {
+			for (List<Integer> chunk : Lists.partition(idList, MAX_IN_SIZE)) {
+				String in = " IN (" + Joiner.on(',').join(Collections.nCopies(chunk.size(), "?")) + ")";
+				
+				PreparedStatement statement = handler.prepareStatement("SELECT ID, Theme, State, StartDate, EndDate, VoteEnd, VoteType, MaxEntrants, FirstPrize, SecondPrize, DefaultPrize FROM " + TABLE_COMP + " WHERE ID" + in);
+				setIds(statement, chunk);
+				try (ResultSet rs = statement.executeQuery()) {
+					while (rs.next()) {
+						int id = rs.getInt("ID");
+						results.put(id, readCompetition(id, rs));
+					}
+				}
+				
+				PreparedStatement criteriaStatement = handler.prepareStatement("SELECT CompID, CriteriaID, Name, Description, Type, Data FROM " + TABLE_CRITERIA + " WHERE CompID" + in + " ORDER BY CriteriaID");
+				setIds(criteriaStatement, chunk);
+				try (ResultSet rs = criteriaStatement.executeQuery()) {
+					readAllCriteria(rs, results);
+				}
+			}
+		}
+		
+		return results;
+	}
+	
+	private void setIds(PreparedStatement statement, List<Integer> ids) throws SQLException {
+		for (int i = 0; i < ids.size(); ++i) {
+			statement.setInt(i + 1, ids.get(i));
+		}
+	}
+	
+	/**
+	 * Reads criteria rows that include a CompID into the matching comps
+	 */
+	private void readAllCriteria(ResultSet rs, Map<Integer, Competition> comps) throws SQLException {
+		while (rs.next()) {
+			Competition comp = comps.get(rs.getInt("CompID"));
+			if (comp != null) {
+				comp.getCriteria().add(readCriterion(rs));
+			}
+		}
+	}
+	
+	/**
+	 * Reads a competition from a comps row
+	 */
+	private Competition readCompetition(int id, ResultSet rs) throws SQLException {
+		Competition result = new Competition();
+		result.setCompId(id);
+		result.setTheme(rs.getString("Theme"));
+
+		String stateString = rs.getString("State");
+		if (stateString.equalsIgnoreCase("auto")) {
+			result.setAutoState();
+		} else {
+			CompState state;
+			try {
+				state = CompState.valueOf(rs.getString("State"));
+			} catch (IllegalArgumentException e) {
+				state = CompState.Closed;
+			}
+			result.setState(state);
+		}
+
+		Timestamp start = rs.getTimestamp("StartDate");
+		if (start != null) {
+			result.setStartDate(start.getTime());
+		}
+
+		Timestamp end = rs.getTimestamp("EndDate");
+		if (end != null) {
+			result.setEndDate(end.getTime());
+		}
+
+		Timestamp voteEnd = rs.getTimestamp("VoteEnd");
+		if (voteEnd != null) {
+			result.setVoteEndDate(voteEnd.getTime());
+		}
+
+		result.setVotingStrategy(rs.getString("VoteType"));
+
+		result.setMaxEntrants(rs.getInt("MaxEntrants"));
+
+		result.setFirstPrize(loadPrize(rs.getString("FirstPrize")));
+		result.setSecondPrize(loadPrize(rs.getString("SecondPrize")));
+		result.setParticipationPrize(loadPrize(rs.getString("DefaultPrize")));
+		
+		return result;
+	}
+	
+	/**
+	 * Reads a criterion from a criteria row
+	 */
+	private BaseCriterion readCriterion(ResultSet rs) throws SQLException {
+		BaseCriterion criterion = BaseCriterion.create(rs.getString("Type"));
+		criterion.setName(rs.getString("Name"));
+		criterion.setDescription(rs.getString("Description"));
+
+		String data = rs.getString("Data");
+		if (data != null) {
+			criterion.load(data);
+		}
+		
+		return criterion;
+	}
+	
 	/**
 	 * Adds a new competition
 	 * @param competition The competition to add
 	 * @throws SQLException Thrown if an SQLException occurs in the database
 	 */
 	public void add(Competition competition) throws SQLException {
-		try (Connection handler = manager.getPool().getConnection()) {
-			PreparedStatement statement = handler.prepareStatement(STATEMENT_ADD.getSQL(), STATEMENT_ADD.returnsGeneratedKeysInt());
+		try (UnitOfWork work = beginWork()) {
+			PreparedStatement statement = work.prepare(STATEMENT_ADD);
 			statement.setString(1, competition.getTheme());
 			statement.setString(2, (competition.isAutomatic() ? "Auto" : competition.getState().name()));
 			statement.setTimestamp(3, competition.getStartDate() > 0 ? new Timestamp(competition.getStartDate()) : null);
@@ -213,23 +357,31 @@ public class CompBackendManager {
 			statement.executeUpdate();
 			
 			// Get the generated ID
-			ResultSet generatedKeys = statement.getGeneratedKeys();
-			if (generatedKeys.next()) {
-				int compId = generatedKeys.getInt(1);
-				competition.setCompId(compId);
-				
-				// Save all criteria
-				for (BaseCriterion criterion : competition.getCriteria()) {
-					PreparedStatement criteriaStatement = handler.prepareStatement(STATEMENT_CRITERIA_ADD.getSQL(), STATEMENT_CRITERIA_ADD.returnsGeneratedKeysInt());
-					criteriaStatement.setInt(1, compId);
-					criteriaStatement.setString(2, criterion.getName());
-					criteriaStatement.setString(3, criterion.getDescription());
-					criteriaStatement.setString(4, getCriterionType(criterion));
-					criteriaStatement.setString(5, getCriterionData(criterion));
-					criteriaStatement.executeUpdate();
-					criteriaStatement.close();
+			int compId;
+			try (ResultSet generatedKeys = statement.getGeneratedKeys()) {
+				if (!generatedKeys.next()) {
+					throw new SQLException("Failed to get generated comp ID");
 				}
+				compId = generatedKeys.getInt(1);
 			}
+			
+			// Save all criteria
+			batchCriteria(work, compId, competition.getCriteria());
+			work.executeBatch(STATEMENT_CRITERIA_ADD);
+			work.commit();
+			competition.setCompId(compId);
+		}
+	}
+	
+	private void batchCriteria(UnitOfWork work, int compId, Iterable<BaseCriterion> criteria) throws SQLException {
+		PreparedStatement statement = work.prepare(STATEMENT_CRITERIA_ADD);
+		for (BaseCriterion criterion : criteria) {
+			statement.setInt(1, compId);
+			statement.setString(2, criterion.getName());
+			statement.setString(3, criterion.getDescription());
+			statement.setString(4, getCriterionType(criterion));
+			statement.setString(5, getCriterionData(criterion));
+			statement.addBatch();
 		}
 	}
 	
@@ -281,19 +433,22 @@ public class CompBackendManager {
 	 * @throws SQLException Thrown if an SQLException occurs in the database
 	 */
 	public List<Competition> getAll() throws SQLException {
-		List<Competition> competitions = Lists.newArrayList();
-		try (Connection handler = manager.getPool().getConnection()) {
+		Map<Integer, Competition> competitions = Maps.newLinkedHashMap();
+		try (Connection handler = getPool(Workload.ReadOnly).getConnection()) {
 			PreparedStatement statement = handler.prepareStatement(STATEMENT_GETALL.getSQL());
-			ResultSet rs = statement.executeQuery();
-			while (rs.next()) {
-				int id = rs.getInt("ID");
-				Competition comp = load(id);
-				if (comp != null) {
-					competitions.add(comp);
+			try (ResultSet rs = statement.executeQuery()) {
+				while (rs.next()) {
+					int id = rs.getInt("ID");
+					competitions.put(id, readCompetition(id, rs));
 				}
 			}
+			
+			PreparedStatement criteriaStatement = handler.prepareStatement(STATEMENT_CRITERIA_LOAD_ALL.getSQL());
+			try (ResultSet rs = criteriaStatement.executeQuery()) {
+				readAllCriteria(rs, competitions);
+			}
 		}
-		return competitions;
+		return Lists.newArrayList(competitions.values());
 	}
 	
 	/**
@@ -381,7 +536,7 @@ public class CompBackendManager {
 	 * @throws SQLException Thrown if an SQLException occurs in the database
 	 */
 	public Map<String, Optional<Integer>> getServerComps() throws SQLException {
-		try (Connection handler = manager.getPool().getConnection()) {
+		try (Connection handler = getPool(Workload.ReadOnly).getConnection()) {
 			PreparedStatement statement = handler.prepareStatement(STATEMENT_SERVER_GETALL.getSQL(), STATEMENT_SERVER_GETALL.returnsGeneratedKeysInt());
 			Map<String, Optional<Integer>> results = Maps.newHashMap();
 			ResultSet rs = statement.executeQuery();
@@ -400,14 +555,14 @@ public class CompBackendManager {
 	}
 
 	public Collection<EntrantResult> loadResults(Competition comp, boolean winnersOnly) throws SQLException {
-		try (Connection handler = getPool().getConnection()) {
+		try (Connection handler = getPool(Workload.ReadOnly).getConnection()) {
 			PreparedStatement statement = handler.prepareStatement(winnersOnly ? STATEMENT_RESULT_GETALL_WINNERS.getSQL() : STATEMENT_RESULT_GETALL_COMP.getSQL());
 			statement.setInt(1, comp.getCompId());
 			List<EntrantResult> results = Lists.newArrayList();
 			try (ResultSet rs = statement.executeQuery()) {
 				while (rs.next()) {
 					try {
-						UUID playerId = UUID.fromString(rs.getString("UUID"));
+						UUID playerId = UUIDCodec.read(rs, "UUIDBin", "UUID");
 						EntrantResult result = createEntrantResult(playerId, rs);
 						results.add(result);
 					} catch (IllegalArgumentException e) {
@@ -483,19 +638,26 @@ public class CompBackendManager {
 	private void setParameters(Competition comp, EntrantResult result, String prize, PreparedStatement statement) throws SQLException {
 		statement.setInt(1, comp.getCompId());
 		statement.setString(2, result.getPlayerId().toString());
-		statement.setString(3, result.getPlayerName());
+		statement.setBytes(3, UUIDCodec.toBytes(result.getPlayerId()));
+		statement.setString(4, result.getPlayerName());
 		if (result.getRank().isPresent()) {
-			statement.setInt(4, result.getRank().get());
+			statement.setInt(5, result.getRank().get());
 		} else {
-			statement.setNull(4, java.sql.Types.INTEGER);
+			statement.setNull(5, java.sql.Types.INTEGER);
 		}
-		statement.setString(5, result.getPlotId());
-		statement.setString(6, prize);
+		statement.setString(6, result.getPlotId());
+		statement.setString(7, prize);
 	}
 
+	/**
+	 * Records the results of a comp. Either every result is recorded, or none are
+	 * @param comp The competition
+	 * @param results The results to add
+	 * @throws SQLException Thrown if an SQLException occurs in the database
+	 */
 	public void addResults(Competition comp, Iterable<EntrantResult> results) throws SQLException {
-		try (Connection handler = getPool().getConnection()) {
-			PreparedStatement statement = handler.prepareStatement(STATEMENT_RESULT_ADD.getSQL());
+		try (UnitOfWork work = beginWork(Workload.Bulk)) {
+			PreparedStatement statement = work.prepare(STATEMENT_RESULT_ADD);
 			for (EntrantResult result : results) {
 				String prize;
 				if (result.getPrize().isPresent()) {
@@ -506,10 +668,11 @@ public class CompBackendManager {
 				setParameters(comp, result, prize, statement);
 				statement.addBatch();
 			}
-			statement.executeBatch();
+			work.executeBatch(STATEMENT_RESULT_ADD);
+			work.commit();
 		}
 	}
-
+	
 	/**
 	 * Adds a plot entry record for a player in a competition
 	 * @param comp The competition
@@ -523,8 +686,9 @@ public class CompBackendManager {
 			PreparedStatement statement = handler.prepareStatement(STATEMENT_ENTRY_ADD.getSQL());
 			statement.setInt(1, comp.getCompId());
 			statement.setString(2, playerId.toString());
-			statement.setString(3, plotId);
-			statement.setTimestamp(4, new Timestamp(System.currentTimeMillis()));
+			statement.setBytes(3, UUIDCodec.toBytes(playerId));
+			statement.setString(4, plotId);
+			statement.setTimestamp(5, new Timestamp(System.currentTimeMillis()));
 			statement.executeUpdate();
 		}
 	}
@@ -537,14 +701,14 @@ public class CompBackendManager {
 	 */
 	public Map<UUID, String> getEntries(Competition comp) throws SQLException {
 		Preconditions.checkArgument(comp.getCompId() >= 0, "Competition must have a valid ID");
-		try (Connection handler = getPool().getConnection()) {
+		try (Connection handler = getPool(Workload.Bulk).getConnection()) {
 			PreparedStatement statement = handler.prepareStatement(STATEMENT_ENTRY_GETALL_COMP.getSQL());
 			statement.setInt(1, comp.getCompId());
 			Map<UUID, String> entries = Maps.newHashMap();
 			try (ResultSet rs = statement.executeQuery()) {
 				while (rs.next()) {
 					try {
-						UUID playerId = UUID.fromString(rs.getString("UUID"));
+						UUID playerId = UUIDCodec.read(rs, "UUIDBin", "UUID");
 						String plotId = rs.getString("PlotID");
 						entries.put(playerId, plotId);
 					} catch (IllegalArgumentException e) {
@@ -602,21 +766,64 @@ public class CompBackendManager {
 	 * @throws SQLException Thrown if an SQLException occurs in the database
 	 */
 	public int addCriterion(Competition comp, BaseCriterion criterion) throws SQLException {
+		return addCriteria(comp, Collections.singletonList(criterion)).get(0);
+	}
+	
+	/**
+	 * Adds several criteria to a competition in one transaction
+	 * @param comp The competition
+	 * @param criteria The criteria to add
+	 * @return The generated criteria IDs, in the same order as the criteria
+	 * @throws SQLException Thrown if an SQLException occurs in the database
+	 */
+	public List<Integer> addCriteria(Competition comp, List<BaseCriterion> criteria) throws SQLException {
 		Preconditions.checkArgument(comp.getCompId() >= 0, "Competition must have a valid ID");
-		try (Connection handler = getPool().getConnection()) {
-			PreparedStatement statement = handler.prepareStatement(STATEMENT_CRITERIA_ADD.getSQL(), STATEMENT_CRITERIA_ADD.returnsGeneratedKeysInt());
-			statement.setInt(1, comp.getCompId());
-			statement.setString(2, criterion.getName());
-			statement.setString(3, criterion.getDescription());
-			statement.setString(4, getCriterionType(criterion));
-			statement.setString(5, getCriterionData(criterion));
-			statement.executeUpdate();
+		if (criteria.isEmpty()) {
+			return Collections.emptyList();
+		}
+		
+		try (UnitOfWork work = beginWork()) {
+			batchCriteria(work, comp.getCompId(), criteria);
+			work.executeBatch(STATEMENT_CRITERIA_ADD);
 			
-			ResultSet generatedKeys = statement.getGeneratedKeys();
-			if (generatedKeys.next()) {
-				return generatedKeys.getInt(1);
+			List<Integer> ids = Lists.newArrayListWithCapacity(criteria.size());
+			try (ResultSet generatedKeys = work.prepare(STATEMENT_CRITERIA_ADD).getGeneratedKeys()) {
+				while (generatedKeys.next()) {
+					ids.add(generatedKeys.getInt(1));
+				}
 			}
-			throw new SQLException("Failed to get generated criteria ID");
+			if (ids.size() != criteria.size()) {
+				throw new SQLException("Failed to get generated criteria IDs");
+			}
+			
+			work.commit();
+			return ids;
+		}
+	}
+	
+	/**
+	 * Updates many existing criteria in one transaction
+	 * @param criteria The updated criterion data by criteria ID
+	 * @throws SQLException Thrown if an SQLException occurs in the database
+	 */
+	public void updateCriteria(Map<Integer, BaseCriterion> criteria) throws SQLException {
+		if (criteria.isEmpty()) {
+			return;
+		}
+		
+		try (UnitOfWork work = beginWork()) {
+			PreparedStatement statement = work.prepare(STATEMENT_CRITERIA_UPDATE);
+			for (Map.Entry<Integer, BaseCriterion> entry : criteria.entrySet()) {
+				BaseCriterion criterion = entry.getValue();
+				statement.setString(1, criterion.getName());
+				statement.setString(2, criterion.getDescription());
+				statement.setString(3, getCriterionType(criterion));
+				statement.setString(4, getCriterionData(criterion));
+				statement.setInt(5, entry.getKey());
+				statement.addBatch();
+			}
+			work.executeBatch(STATEMENT_CRITERIA_UPDATE);
+			work.commit();
 		}
 	}
 	
@@ -627,15 +834,7 @@ public class CompBackendManager {
 	 * @throws SQLException Thrown if an SQLException occurs in the database
 	 */
 	public void updateCriterion(int criteriaId, BaseCriterion criterion) throws SQLException {
-		try (Connection handler = getPool().getConnection()) {
-			PreparedStatement statement = handler.prepareStatement(STATEMENT_CRITERIA_UPDATE.getSQL());
-			statement.setString(1, criterion.getName());
-			statement.setString(2, criterion.getDescription());
-			statement.setString(3, getCriterionType(criterion));
-			statement.setString(4, getCriterionData(criterion));
-			statement.setInt(5, criteriaId);
-			statement.executeUpdate();
-		}
+		updateCriteria(Collections.singletonMap(criteriaId, criterion));
 	}
 	
 	/**
@@ -672,10 +871,27 @@ public class CompBackendManager {
 	 * @throws SQLException Thrown if an SQLException occurs in the database
 	 */
 	public void deleteCriterion(int criteriaId) throws SQLException {
-		try (Connection handler = getPool().getConnection()) {
-			PreparedStatement statement = handler.prepareStatement(STATEMENT_CRITERIA_REMOVE.getSQL());
-			statement.setInt(1, criteriaId);
-			statement.executeUpdate();
+		deleteCriteria(Collections.singleton(criteriaId));
+	}
+	
+	/**
+	 * Deletes many criteria in one transaction
+	 * @param criteriaIds The IDs of the criteria to delete
+	 * @throws SQLException Thrown if an SQLException occurs in the database
+	 */
+	public void deleteCriteria(Collection<Integer> criteriaIds) throws SQLException {
+		if (criteriaIds.isEmpty()) {
+			return;
+		}
+		
+		try (UnitOfWork work = beginWork()) {
+			PreparedStatement statement = work.prepare(STATEMENT_CRITERIA_REMOVE);
+			for (int criteriaId : criteriaIds) {
+				statement.setInt(1, criteriaId);
+				statement.addBatch();
+			}
+			work.executeBatch(STATEMENT_CRITERIA_REMOVE);
+			work.commit();
 		}
 	}
 	
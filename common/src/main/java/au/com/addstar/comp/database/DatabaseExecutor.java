@@ -0,0 +1,107 @@
+package au.com.addstar.comp.database;
+
+import java.sql.SQLException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Runs database work away from the server thread.
+ * At most as many tasks run at once as the connection pool has connections,
+ * so tasks never queue inside the pool itself.
+ */
+public class DatabaseExecutor {
+	private final ThreadPoolExecutor executor;
+
+	/**
+	 * @param threads How many tasks may run at once
+	 * @param queueSize How many tasks may wait before new ones are rejected
+	 * @param virtualThreads Whether to run tasks on virtual threads
+	 */
+	public DatabaseExecutor(int threads, int queueSize, boolean virtualThreads) {
+		ThreadFactory factory = null;
+		if (virtualThreads) {
+			try {
+				factory = Thread.ofVirtual().name("CompManager-DB-", 0).factory();
+			} catch (UnsupportedOperationException e) {
+				Logger.getLogger("CompManager").warning("Virtual threads are not available, using platform threads for the database");
+			}
+		}
+		if (factory == null) {
+			factory = new ThreadFactoryBuilder()
+				.setNameFormat("CompManager-DB-%d")
+				.setDaemon(true)
+				.build();
+		}
+
+		executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(queueSize), factory);
+		executor.allowCoreThreadTimeOut(true);
+	}
+
+	/**
+	 * Runs a task that returns a value
+	 * @param task The task to run
+	 * @return A future that completes with the value, or the exception thrown by the task.
+	 *         Fails with a {@link RejectedExecutionException} if the queue is full
+	 */
+	public <T> CompletableFuture<T> submit(SqlCallable<T> task) {
+		CompletableFuture<T> future = new CompletableFuture<>();
+		try {
+			executor.execute(() -> {
+				try {
+					future.complete(task.call());
+				} catch (Throwable e) {
+					future.completeExceptionally(e);
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			future.completeExceptionally(e);
+		}
+		return future;
+	}
+
+	/**
+	 * Runs a task that does not return a value
+	 * @param task The task to run
+	 * @return A future that completes when the task is done
+	 */
+	public CompletableFuture<Void> execute(SqlRunnable task) {
+		return submit(() -> {
+			task.run();
+			return null;
+		});
+	}
+
+	/**
+	 * Stops accepting tasks and waits for running ones to finish
+	 */
+	public void shutdown() {
+		executor.shutdown();
+		try {
+			if (!executor.awaitTermination(10, TimeUnit.SECONDS)) {
+				Logger.getLogger("CompManager").log(Level.WARNING, "Database tasks did not finish in time, " + executor.getQueue().size() + " were dropped");
+				executor.shutdownNow();
+			}
+		} catch (InterruptedException e) {
+			executor.shutdownNow();
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	@FunctionalInterface
+	public interface SqlCallable<T> {
+		T call() throws SQLException;
+	}
+
+	@FunctionalInterface
+	public interface SqlRunnable {
+		void run() throws SQLException;
+	}
+}
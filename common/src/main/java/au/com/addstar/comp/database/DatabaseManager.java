@@ -3,10 +3,12 @@ package au.com.addstar.comp.database;
 import java.io.File;
 import java.io.IOException;
 import java.sql.Connection;
-import java.sql.DatabaseMetaData;
-import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.sql.Statement;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
 
 import org.bukkit.configuration.ConfigurationSection;
 import org.bukkit.plugin.Plugin;
@@ -14,6 +16,9 @@ import org.bukkit.plugin.Plugin;
 public class DatabaseManager {
 	private final Plugin plugin;
 	private HikariConnectionPool pool;
+	private final Map<Workload, HikariConnectionPool> pools = new EnumMap<>(Workload.class);
+	private DatabaseExecutor executor;
+	private QueryProfiler profiler;
 
 	public DatabaseManager(Plugin plugin) {
 		this.plugin = plugin;
@@ -26,6 +31,33 @@ public class DatabaseManager {
 	public void initialize(File saveDir) throws IOException {
 		ConfigurationSection config = plugin.getConfig().getConfigurationSection("database");
 		pool = new HikariConnectionPool(config,saveDir);
+		pools.put(Workload.Interactive, pool);
+		for (Workload workload : new Workload[] {Workload.Bulk, Workload.ReadOnly}) {
+			pools.put(workload, createPool(workload, config, saveDir));
+		}
+		
+		if (config.getBoolean("profiling", true)) {
+			profiler = new QueryProfiler(
+				plugin.getDataFolder(),
+				config.getLong("slow-query-log.threshold", 250),
+				config.getInt("slow-query-log.max-size-kb", 1024) * 1024,
+				config.getInt("slow-query-log.files", 3)
+			);
+			for (HikariConnectionPool distinct : getDistinctPools()) {
+				distinct.setProfiler(profiler);
+			}
+		}
+		
+		// Every pool gets threads for all of its connections so slow work cannot hold up interactive work
+		int threads = 0;
+		for (HikariConnectionPool distinct : getDistinctPools()) {
+			threads += distinct.getMaximumPoolSize();
+		}
+		executor = new DatabaseExecutor(
+			threads,
+			config.getInt("executor-queue-size", 1000),
+			config.getBoolean("virtual-threads", true)
+		);
 		try (Connection connection = pool.getConnection()) {
 			// Connection test - connection is automatically closed
 		} catch (SQLException e) {
@@ -39,71 +71,93 @@ public class DatabaseManager {
 			plugin.getLogger().log(java.util.logging.Level.SEVERE, "Failed to run database migrations", e);
 			throw new IOException("Database migration failed", e);
 		}
+		
+		// Startup is allowed to block, only report what happens afterwards
+		for (HikariConnectionPool distinct : getDistinctPools()) {
+			distinct.setReportMainThreadAccess(config.getBoolean("debug-main-thread", false));
+		}
+		
+		if (config.getBoolean("uuid-backfill", true)) {
+			UUIDBackfill backfill = new UUIDBackfill(getPool(Workload.Bulk), plugin.getLogger());
+			executor.execute(backfill::run);
+		}
 	}
 	
 	/**
-	 * Runs database migrations to ensure schema is up to date
-	 * @throws SQLException Thrown if a migration fails
+	 * Creates the pool for a workload from its section under database.pools.
+	 * Workloads without an enabled section share the interactive pool. Pools are off unless
+	 * enabled as each one adds connections on every server
 	 */
-	private void runMigrations() throws SQLException {
-		try (Connection connection = pool.getConnection()) {
-			// Check and create plot_entries table if it doesn't exist
-			if (!tableExists(connection, "plot_entries")) {
-				plugin.getLogger().info("Creating plot_entries table...");
-				createPlotEntriesTable(connection);
-				plugin.getLogger().info("plot_entries table created successfully");
-			}
+	private HikariConnectionPool createPool(Workload workload, ConfigurationSection config, File saveDir) {
+		ConfigurationSection section = config.getConfigurationSection("pools." + workload.getConfigName());
+		if (section == null || !section.getBoolean("enabled", false)) {
+			return pool;
 		}
+		
+		return new HikariConnectionPool(config, saveDir, "comp-" + workload.getConfigName(), section, workload == Workload.ReadOnly, workload == Workload.Bulk);
+	}
+	
+	private Set<HikariConnectionPool> getDistinctPools() {
+		Set<HikariConnectionPool> distinct = Collections.newSetFromMap(new IdentityHashMap<>());
+		distinct.addAll(pools.values());
+		return distinct;
 	}
 	
 	/**
-	 * Checks if a table exists in the database
-	 * @param connection The database connection
-	 * @param tableName The name of the table to check
-	 * @return True if the table exists, false otherwise
-	 * @throws SQLException Thrown if an error occurs checking the table
+	 * Runs database migrations to ensure schema is up to date
+	 * @throws SQLException Thrown if a migration fails
 	 */
-	private boolean tableExists(Connection connection, String tableName) throws SQLException {
-		DatabaseMetaData metaData = connection.getMetaData();
-		try (ResultSet rs = metaData.getTables(null, null, tableName, null)) {
-			return rs.next();
-		}
+	private void runMigrations() throws SQLException {
+		new MigrationRunner(plugin, pool).migrate();
 	}
 	
 	/**
-	 * Creates the plot_entries table
-	 * @param connection The database connection
-	 * @throws SQLException Thrown if table creation fails
+	 * Cleans up the database connections
 	 */
-	private void createPlotEntriesTable(Connection connection) throws SQLException {
-		String sql = "CREATE TABLE IF NOT EXISTS `plot_entries` (" +
-			"`CompID`    int(11)     NOT NULL," +
-			"`UUID`      char(36)    NOT NULL," +
-			"`PlotID`    varchar(10) NOT NULL," +
-			"`EntryDate` datetime    NOT NULL," +
-			"PRIMARY KEY (`CompID`, `UUID`)," +
-			"KEY `CompID` (`CompID`)," +
-			"CONSTRAINT `fk_plot_entries_comp` FOREIGN KEY (`CompID`) REFERENCES `comps` (`ID`) ON DELETE CASCADE" +
-			") ENGINE = InnoDB DEFAULT CHARSET = latin1";
-		
-		try (Statement statement = connection.createStatement()) {
-			statement.executeUpdate(sql);
+	public void shutdown() {
+		if (executor != null) {
+			executor.shutdown();
+		}
+		for (HikariConnectionPool distinct : getDistinctPools()) {
+			distinct.closeConnections();
+		}
+		if (profiler != null) {
+			profiler.close();
 		}
 	}
 	
 	/**
-	 * Cleans up the database connections
+	 * Gets the profiler recording statement timings
+	 * @return The QueryProfiler, or null if profiling is disabled
 	 */
-	public void shutdown() {
-		pool.closeConnections();
+	public QueryProfiler getProfiler() {
+		return profiler;
 	}
 	
 	/**
-	 * Gets the connection pool
+	 * Gets the interactive connection pool
 	 * @return The HikariConnectionPool
 	 */
 	public HikariConnectionPool getPool() {
 		return pool;
 	}
+	
+	/**
+	 * Gets the connection pool for a kind of work
+	 * @param workload The kind of work
+	 * @return The HikariConnectionPool, which may be shared with other workloads
+	 */
+	public HikariConnectionPool getPool(Workload workload) {
+		HikariConnectionPool workloadPool = pools.get(workload);
+		return (workloadPool != null ? workloadPool : pool);
+	}
+	
+	/**
+	 * Gets the executor that database work should be run on
+	 * @return The DatabaseExecutor
+	 */
+	public DatabaseExecutor getExecutor() {
+		return executor;
+	}
 
 }
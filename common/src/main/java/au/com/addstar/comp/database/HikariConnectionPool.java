@@ -3,11 +3,15 @@ package au.com.addstar.comp.database;
 import com.zaxxer.hikari.HikariConfig;
 import com.zaxxer.hikari.HikariDataSource;
 
+import org.bukkit.Bukkit;
 import org.bukkit.configuration.ConfigurationSection;
 
 import java.io.File;
 import java.sql.Connection;
 import java.sql.SQLException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
 /**
@@ -15,10 +19,34 @@ import java.util.logging.Logger;
  * Created by benjamincharlton on 6/05/2019.
  */
 public class HikariConnectionPool {
+    private static final int DefaultOverrideMaxPoolSize = 2;
+    private static final int DefaultOverrideMinIdle = 0;
+
     private HikariDataSource dataSource;
     private final File propertiesFile;
+    private volatile boolean reportMainThreadAccess;
+    private volatile QueryProfiler profiler;
+    private final Set<String> reportedCallers = ConcurrentHashMap.newKeySet();
+    private final boolean cursorFetch;
 
     public HikariConnectionPool(ConfigurationSection section, File directory) {
+        this(section, directory, "comp", null, false, false);
+    }
+
+    /**
+     * Creates a named pool. Settings come from hikari.properties and the database section,
+     * and anything set in the overrides section replaces them for this pool only.
+     * @param section The database section
+     * @param directory The directory holding hikari.properties
+     * @param name The name of the pool
+     * @param overrides The pool's own section, or null. May set jdbc-url, username, password,
+     *                  maximum-pool-size and minimum-idle. Pools with overrides default to a small
+     *                  size rather than the one in hikari.properties, as every pool is opened on every server
+     * @param readOnly Whether connections from this pool are read only
+     * @param cursorFetch Whether statements with a fetch size read their results through a server side cursor.
+     *                    This makes every prepared statement server side, so only pools used for streaming should use it
+     */
+    public HikariConnectionPool(ConfigurationSection section, File directory, String name, ConfigurationSection overrides, boolean readOnly, boolean cursorFetch) {
 
         this.propertiesFile = new File(directory,"hikari.properties");
         String url = String.format(
@@ -27,6 +55,16 @@ public class HikariConnectionPool {
                 section.getInt("port", 3306),
                 section.getString("database", "comp")
         );
+        String username = section.getString("username", "username");
+        String password = section.getString("password", "password");
+        if (overrides != null) {
+            // An empty jdbc-url means use the primary database
+            if (!overrides.getString("jdbc-url", "").isEmpty()) {
+                url = overrides.getString("jdbc-url");
+            }
+            username = overrides.getString("username", username);
+            password = overrides.getString("password", password);
+        }
         HikariConfig config;
         if(!propertiesFile.exists()) {
             config = new HikariConfig();
@@ -48,10 +86,24 @@ public class HikariConnectionPool {
                 config = new HikariConfig();
             }
         }
-        config.setUsername(section.getString("username", "username"));
-        config.setPassword(section.getString("password", "password"));
+        config.setUsername(username);
+        config.setPassword(password);
         config.setJdbcUrl(url);
-        config.setPoolName("comp");
+        config.setPoolName(name);
+        config.setReadOnly(readOnly);
+        if (overrides != null) {
+            config.setMaximumPoolSize(Math.max(1, overrides.getInt("maximum-pool-size", DefaultOverrideMaxPoolSize)));
+            config.setMinimumIdle(Math.min(config.getMaximumPoolSize(), overrides.getInt("minimum-idle", DefaultOverrideMinIdle)));
+        }
+        // Lets batches be sent as multi-row statements instead of one round trip per row
+        if (!config.getDataSourceProperties().containsKey("rewriteBatchedStatements")) {
+            config.addDataSourceProperty("rewriteBatchedStatements", "true");
+        }
+        // Lets statements with a fetch size read their results in chunks
+        if (cursorFetch && !config.getDataSourceProperties().containsKey("useCursorFetch")) {
+            config.addDataSourceProperty("useCursorFetch", "true");
+        }
+        this.cursorFetch = Boolean.parseBoolean(String.valueOf(config.getDataSourceProperties().getProperty("useCursorFetch")));
         try {
             this.dataSource = new HikariDataSource(config);
         }catch (Exception e){
@@ -61,7 +113,64 @@ public class HikariConnectionPool {
 
     public Connection getConnection() throws SQLException {
         if(dataSource == null) throw new SQLException("No Connection Available") ;
-        return dataSource.getConnection();
+        if (reportMainThreadAccess && Bukkit.isPrimaryThread()) {
+            reportMainThreadAccess();
+        }
+        QueryProfiler current = profiler;
+        if (current == null) {
+            return dataSource.getConnection();
+        }
+
+        long start = System.nanoTime();
+        Connection connection = dataSource.getConnection();
+        return current.wrap(connection, System.nanoTime() - start);
+    }
+
+    /**
+     * Sets the profiler that statements run on this pool's connections are recorded in
+     * @param profiler The profiler, or null to stop profiling
+     */
+    public void setProfiler(QueryProfiler profiler) {
+        this.profiler = profiler;
+    }
+
+    /**
+     * Gets whether statements with a fetch size read their results in chunks through a cursor.
+     * Without it, the driver only streams results when the fetch size is {@link Integer#MIN_VALUE}
+     */
+    public boolean isCursorFetch() {
+        return cursorFetch;
+    }
+
+    /**
+     * Gets the most connections this pool will open
+     */
+    public int getMaximumPoolSize() {
+        if (dataSource == null) {
+            return 1;
+        }
+        return dataSource.getMaximumPoolSize();
+    }
+
+    /**
+     * Sets whether to log a stack trace when a connection is taken on the server thread.
+     * Each calling location is only logged once
+     */
+    public void setReportMainThreadAccess(boolean report) {
+        reportMainThreadAccess = report;
+    }
+
+    private void reportMainThreadAccess() {
+        Throwable trace = new Throwable("Database accessed from the server thread");
+        StackTraceElement[] stack = trace.getStackTrace();
+        // Skip this method and getConnection
+        StringBuilder caller = new StringBuilder();
+        for (int i = 2; i < Math.min(stack.length, 5); ++i) {
+            caller.append(stack[i]).append(';');
+        }
+        if (reportedCallers.add(caller.toString())) {
+            Logger.getLogger("CompManager").log(Level.WARNING, "JDBC call on the server thread", trace);
+        }
     }
 
     public void closeConnections(){
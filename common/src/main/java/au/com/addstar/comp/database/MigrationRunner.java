@@ -0,0 +1,244 @@
+package au.com.addstar.comp.database;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+
+import org.bukkit.plugin.Plugin;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.io.BaseEncoding;
+
+/**
+ * Brings the database schema up to date by running the SQL files in {@code migrations/}.
+ * Applied versions are recorded in the schema history table along with a checksum,
+ * so each migration runs once and changes to an applied migration are detected.
+ * <p>
+ * Migrations must only ever be appended to {@link #Migrations}. MySQL commits each DDL
+ * statement on its own, so keep to one schema change per file.
+ */
+public class MigrationRunner {
+	private static final String TABLE_HISTORY = "schema_history";
+	private static final String LOCK_NAME = "compmanager_migrations";
+	private static final int LOCK_TIMEOUT = 60;
+
+	private static final StatementKey STATEMENT_HISTORY_CREATE;
+	private static final StatementKey STATEMENT_HISTORY_GETALL;
+	private static final StatementKey STATEMENT_HISTORY_ADD;
+	private static final StatementKey STATEMENT_LOCK;
+	private static final StatementKey STATEMENT_UNLOCK;
+
+	static {
+		STATEMENT_HISTORY_CREATE = new StatementKey("CREATE TABLE IF NOT EXISTS `" + TABLE_HISTORY + "` ("
+				+ "`Version` int(11) NOT NULL,"
+				+ "`Description` varchar(255) NOT NULL,"
+				+ "`Checksum` char(64) NOT NULL,"
+				+ "`AppliedAt` datetime NOT NULL,"
+				+ "`ExecutionTime` int(11) NOT NULL,"
+				+ "PRIMARY KEY (`Version`)"
+				+ ") ENGINE = InnoDB DEFAULT CHARSET = latin1");
+		STATEMENT_HISTORY_GETALL = new StatementKey("SELECT Version, Checksum FROM `" + TABLE_HISTORY + "`");
+		STATEMENT_HISTORY_ADD = new StatementKey("INSERT INTO `" + TABLE_HISTORY + "` (Version, Description, Checksum, AppliedAt, ExecutionTime) VALUES (?,?,?,?,?)");
+		STATEMENT_LOCK = new StatementKey("SELECT GET_LOCK(?, ?)");
+		STATEMENT_UNLOCK = new StatementKey("SELECT RELEASE_LOCK(?)");
+	}
+
+	/**
+	 * Every migration in the order they are applied. File names are V&lt;version&gt;__&lt;description&gt;.sql
+	 */
+	private static final String[] Migrations = {
+		"V1__base_schema.sql",
+		"V2__votes_plot_index.sql",
+		"V3__results_rank_index.sql",
+		"V4__plot_entries_plot_index.sql",
+		"V5__votes_binary_uuid.sql",
+		"V6__results_binary_uuid.sql",
+		"V7__plot_entries_binary_uuid.sql",
+		"V8__whitelist_binary_uuid.sql",
+		"V9__uuid_backfill_progress.sql"
+	};
+
+	private final Plugin plugin;
+	private final HikariConnectionPool pool;
+	private final Logger logger;
+
+	public MigrationRunner(Plugin plugin, HikariConnectionPool pool) {
+		this.plugin = plugin;
+		this.pool = pool;
+		this.logger = plugin.getLogger();
+	}
+
+	/**
+	 * Applies every migration that has not been applied yet.
+	 * Servers starting at the same time take turns through a database lock.
+	 * @throws SQLException Thrown if a migration fails, or an applied migration has been changed
+	 */
+	public void migrate() throws SQLException {
+		try (Connection connection = pool.getConnection()) {
+			try (Statement statement = connection.createStatement()) {
+				statement.executeUpdate(STATEMENT_HISTORY_CREATE.getSQL());
+			}
+
+			lock(connection);
+			try {
+				Map<Integer, String> applied = loadHistory(connection);
+				int lastVersion = 0;
+				for (String file : Migrations) {
+					Migration migration = load(file);
+					if (migration.version <= lastVersion) {
+						throw new IllegalStateException("Migration " + file + " is out of order");
+					}
+					lastVersion = migration.version;
+
+					String checksum = applied.get(migration.version);
+					if (checksum == null) {
+						apply(connection, migration);
+					} else if (!checksum.equals(migration.checksum)) {
+						throw new SQLException("Migration " + file + " has been changed since it was applied. Restore the original file");
+					}
+				}
+			} finally {
+				unlock(connection);
+			}
+		}
+	}
+
+	private void lock(Connection connection) throws SQLException {
+		try (PreparedStatement statement = connection.prepareStatement(STATEMENT_LOCK.getSQL())) {
+			statement.setString(1, LOCK_NAME);
+			statement.setInt(2, LOCK_TIMEOUT);
+			try (ResultSet rs = statement.executeQuery()) {
+				if (!rs.next() || rs.getInt(1) != 1) {
+					throw new SQLException("Timed out waiting for another server to finish migrating the database");
+				}
+			}
+		}
+	}
+
+	private void unlock(Connection connection) throws SQLException {
+		try (PreparedStatement statement = connection.prepareStatement(STATEMENT_UNLOCK.getSQL())) {
+			statement.setString(1, LOCK_NAME);
+			statement.executeQuery().close();
+		}
+	}
+
+	private Map<Integer, String> loadHistory(Connection connection) throws SQLException {
+		Map<Integer, String> applied = Maps.newHashMap();
+		try (PreparedStatement statement = connection.prepareStatement(STATEMENT_HISTORY_GETALL.getSQL());
+				ResultSet rs = statement.executeQuery()) {
+			while (rs.next()) {
+				applied.put(rs.getInt("Version"), rs.getString("Checksum"));
+			}
+		}
+		return applied;
+	}
+
+	private void apply(Connection connection, Migration migration) throws SQLException {
+		logger.info("Applying database migration " + migration.version + ": " + migration.description);
+		long start = System.currentTimeMillis();
+		try (Statement statement = connection.createStatement()) {
+			for (String sql : migration.statements) {
+				statement.execute(sql);
+			}
+		}
+		int time = (int)(System.currentTimeMillis() - start);
+
+		try (PreparedStatement statement = connection.prepareStatement(STATEMENT_HISTORY_ADD.getSQL())) {
+			statement.setInt(1, migration.version);
+			statement.setString(2, migration.description);
+			statement.setString(3, migration.checksum);
+			statement.setTimestamp(4, new Timestamp(System.currentTimeMillis()));
+			statement.setInt(5, time);
+			statement.executeUpdate();
+		}
+		logger.info("Database migration " + migration.version + " applied in " + time + "ms");
+	}
+
+	private Migration load(String file) {
+		int split = file.indexOf("__");
+		if (!file.startsWith("V") || split < 0 || !file.endsWith(".sql")) {
+			throw new IllegalStateException("Invalid migration name " + file);
+		}
+
+		String source;
+		try (InputStream in = plugin.getResource("migrations/" + file)) {
+			if (in == null) {
+				throw new IllegalStateException("Missing migration " + file);
+			}
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			byte[] buffer = new byte[4096];
+			int read;
+			while ((read = in.read(buffer)) != -1) {
+				out.write(buffer, 0, read);
+			}
+			// Line endings depend on the checkout, so they are not part of the checksum
+			source = new String(out.toByteArray(), StandardCharsets.UTF_8).replace("\r\n", "\n");
+		} catch (IOException e) {
+			throw new IllegalStateException("Unable to read migration " + file, e);
+		}
+
+		Migration migration = new Migration();
+		migration.version = Integer.parseInt(file.substring(1, split));
+		migration.description = file.substring(split + 2, file.length() - 4).replace('_', ' ');
+		migration.checksum = sha256(source);
+		migration.statements = splitStatements(source);
+		return migration;
+	}
+
+	/**
+	 * Splits a script into statements. Statements end with a ; at the end of a line
+	 * and lines starting with -- are comments
+	 */
+	private static List<String> splitStatements(String source) {
+		List<String> statements = Lists.newArrayList();
+		StringBuilder current = new StringBuilder();
+		for (String line : source.split("\n")) {
+			String trimmed = line.trim();
+			if (trimmed.isEmpty() || trimmed.startsWith("--")) {
+				continue;
+			}
+
+			if (trimmed.endsWith(";")) {
+				current.append(trimmed, 0, trimmed.length() - 1);
+				statements.add(current.toString());
+				current.setLength(0);
+			} else {
+				current.append(trimmed).append('\n');
+			}
+		}
+
+		if (current.length() > 0) {
+			statements.add(current.toString());
+		}
+		return statements;
+	}
+
+	private static String sha256(String source) {
+		try {
+			MessageDigest digest = MessageDigest.getInstance("SHA-256");
+			return BaseEncoding.base16().lowerCase().encode(digest.digest(source.getBytes(StandardCharsets.UTF_8)));
+		} catch (NoSuchAlgorithmException e) {
+			throw new AssertionError(e);
+		}
+	}
+
+	private static class Migration {
+		int version;
+		String description;
+		String checksum;
+		List<String> statements;
+	}
+}
@@ -0,0 +1,205 @@
+package au.com.addstar.comp.database;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.List;
+
+import com.google.common.collect.Lists;
+
+/**
+ * Wraps JDBC objects so statements report their timings to a {@link QueryProfiler}.
+ * <p>
+ * Updates are recorded as soon as they return. Queries are recorded once their result set
+ * is exhausted or closed so the row count is known, but only the execute call counts towards latency.
+ */
+final class ProfilingProxy {
+	private ProfilingProxy() {}
+
+	static Connection wrap(Connection connection, QueryProfiler profiler, long waitNanos) {
+		return (Connection)Proxy.newProxyInstance(
+			ProfilingProxy.class.getClassLoader(),
+			new Class<?>[] {Connection.class},
+			new ConnectionHandler(connection, profiler, waitNanos)
+		);
+	}
+
+	private static Object invokeTarget(Object target, Method method, Object[] args) throws Throwable {
+		try {
+			return method.invoke(target, args);
+		} catch (InvocationTargetException e) {
+			throw e.getCause();
+		}
+	}
+
+	private static class ConnectionHandler implements InvocationHandler {
+		private final Connection target;
+		private final QueryProfiler profiler;
+		private final List<StatementHandler> statements = Lists.newArrayList();
+		private long waitNanos;
+
+		ConnectionHandler(Connection target, QueryProfiler profiler, long waitNanos) {
+			this.target = target;
+			this.profiler = profiler;
+			this.waitNanos = waitNanos;
+		}
+
+		/**
+		 * The connection wait is charged to the first statement run on the connection
+		 */
+		long takeWait() {
+			long wait = waitNanos;
+			waitNanos = 0;
+			return wait;
+		}
+
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			switch (method.getName()) {
+			case "prepareStatement":
+				return wrapStatement(PreparedStatement.class, (Statement)invokeTarget(target, method, args), (String)args[0]);
+			case "createStatement":
+				return wrapStatement(Statement.class, (Statement)invokeTarget(target, method, args), null);
+			case "close":
+				for (StatementHandler statement : statements) {
+					statement.finish();
+				}
+				statements.clear();
+				return invokeTarget(target, method, args);
+			default:
+				return invokeTarget(target, method, args);
+			}
+		}
+
+		private Object wrapStatement(Class<? extends Statement> type, Statement statement, String sql) {
+			StatementHandler handler = new StatementHandler(this, statement, sql);
+			statements.add(handler);
+			return Proxy.newProxyInstance(ProfilingProxy.class.getClassLoader(), new Class<?>[] {type}, handler);
+		}
+	}
+
+	private static class StatementHandler implements InvocationHandler {
+		private final ConnectionHandler connection;
+		private final Statement target;
+		private final String sql;
+		private ResultSetHandler openResults;
+
+		StatementHandler(ConnectionHandler connection, Statement target, String sql) {
+			this.connection = connection;
+			this.target = target;
+			this.sql = sql;
+		}
+
+		void finish() {
+			if (openResults != null) {
+				openResults.finish();
+				openResults = null;
+			}
+		}
+
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			String name = method.getName();
+			if (name.equals("close")) {
+				finish();
+				return invokeTarget(target, method, args);
+			}
+			if (!name.startsWith("execute")) {
+				return invokeTarget(target, method, args);
+			}
+
+			finish();
+			String statementSql = sql;
+			if (statementSql == null) {
+				statementSql = (args != null && args.length > 0 && args[0] instanceof String ? (String)args[0] : "(batch)");
+			}
+			long wait = connection.takeWait();
+
+			long start = System.nanoTime();
+			Object result;
+			try {
+				result = invokeTarget(target, method, args);
+			} catch (Throwable e) {
+				connection.profiler.record(statementSql, System.nanoTime() - start, 0, wait);
+				throw e;
+			}
+			long nanos = System.nanoTime() - start;
+
+			if (result instanceof ResultSet) {
+				openResults = new ResultSetHandler(connection.profiler, (ResultSet)result, statementSql, nanos, wait);
+				return Proxy.newProxyInstance(ProfilingProxy.class.getClassLoader(), new Class<?>[] {ResultSet.class}, openResults);
+			}
+
+			connection.profiler.record(statementSql, nanos, countRows(result), wait);
+			return result;
+		}
+
+		private static long countRows(Object result) {
+			if (result instanceof Number) {
+				return ((Number)result).longValue();
+			}
+
+			long rows = 0;
+			if (result instanceof int[]) {
+				for (int count : (int[])result) {
+					rows += (count == Statement.SUCCESS_NO_INFO ? 1 : Math.max(0, count));
+				}
+			} else if (result instanceof long[]) {
+				for (long count : (long[])result) {
+					rows += (count == Statement.SUCCESS_NO_INFO ? 1 : Math.max(0, count));
+				}
+			}
+			return rows;
+		}
+	}
+
+	private static class ResultSetHandler implements InvocationHandler {
+		private final QueryProfiler profiler;
+		private final ResultSet target;
+		private final String sql;
+		private final long nanos;
+		private final long wait;
+		private long rows;
+		private boolean finished;
+
+		ResultSetHandler(QueryProfiler profiler, ResultSet target, String sql, long nanos, long wait) {
+			this.profiler = profiler;
+			this.target = target;
+			this.sql = sql;
+			this.nanos = nanos;
+			this.wait = wait;
+		}
+
+		void finish() {
+			if (!finished) {
+				finished = true;
+				profiler.record(sql, nanos, rows, wait);
+			}
+		}
+
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			switch (method.getName()) {
+			case "next": {
+				Object result = invokeTarget(target, method, args);
+				if ((Boolean)result) {
+					++rows;
+				} else {
+					finish();
+				}
+				return result;
+			}
+			case "close":
+				finish();
+				return invokeTarget(target, method, args);
+			default:
+				return invokeTarget(target, method, args);
+			}
+		}
+	}
+}
@@ -0,0 +1,174 @@
+package au.com.addstar.comp.database;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.Connection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.FileHandler;
+import java.util.logging.Formatter;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
+
+import org.bukkit.ChatColor;
+
+import com.google.common.collect.Lists;
+
+/**
+ * Records how long each statement takes, how many rows it touches and how long
+ * it waited for a connection. Every {@link StatementKey} has its own SQL, so statistics
+ * are kept per SQL string, with placeholder lists such as {@code IN (?,?,?)} collapsed so
+ * chunked statements of every size share one entry.
+ * <p>
+ * Statements slower than the threshold are also written to a rolling slow query log.
+ */
+public class QueryProfiler {
+	private static final Pattern PlaceholderList = Pattern.compile("\\(\\s*\\?(?:\\s*,\\s*\\?)+\\s*\\)");
+	/**
+	 * How many statements are listed in a report
+	 */
+	private static final int ReportShown = 10;
+	/**
+	 * How much of each statement's SQL is shown in a report
+	 */
+	private static final int ReportSqlLength = 60;
+
+	private final ConcurrentMap<String, StatementStats> stats = new ConcurrentHashMap<>();
+	// Raw SQL to the SQL it is recorded under
+	private final ConcurrentMap<String, String> normalized = new ConcurrentHashMap<>();
+	private final long slowThresholdNanos;
+	private volatile FileHandler slowLog;
+
+	/**
+	 * @param directory The directory to write the slow query log to
+	 * @param slowThresholdMs Statements taking at least this long are logged. 0 or less disables the log
+	 * @param logSizeLimit How many bytes each log file may hold before rolling over
+	 * @param logFiles How many log files to keep
+	 */
+	public QueryProfiler(File directory, long slowThresholdMs, int logSizeLimit, int logFiles) {
+		this.slowThresholdNanos = TimeUnit.MILLISECONDS.toNanos(slowThresholdMs);
+
+		if (slowThresholdMs > 0) {
+			try {
+				slowLog = new FileHandler(new File(directory, "slow-queries.%g.log").getPath(), logSizeLimit, Math.max(1, logFiles), true);
+				slowLog.setFormatter(new Formatter() {
+					@Override
+					public String format(LogRecord record) {
+						return String.format("[%tF %<tT] %s%n", record.getMillis(), record.getMessage());
+					}
+				});
+			} catch (IOException e) {
+				Logger.getLogger("CompManager").log(Level.WARNING, "Unable to open the slow query log", e);
+			}
+		}
+	}
+
+	/**
+	 * Wraps a connection so that every statement run on it is recorded
+	 * @param connection The connection to wrap
+	 * @param waitNanos How long was spent waiting for the connection
+	 * @return The wrapped connection
+	 */
+	Connection wrap(Connection connection, long waitNanos) {
+		return ProfilingProxy.wrap(connection, this, waitNanos);
+	}
+
+	/**
+	 * Records one execution of a statement
+	 * @param sql The statement
+	 * @param nanos How long it took to execute
+	 * @param rows How many rows were returned or changed
+	 * @param waitNanos How long was spent waiting for the connection it ran on
+	 */
+	void record(String sql, long nanos, long rows, long waitNanos) {
+		stats.computeIfAbsent(normalized.computeIfAbsent(sql, QueryProfiler::normalize), StatementStats::new).record(nanos, rows, waitNanos);
+
+		FileHandler log = slowLog;
+		if (log != null && nanos >= slowThresholdNanos) {
+			String message = String.format("%dms (waited %dms for a connection) %d rows on %s: %s",
+				TimeUnit.NANOSECONDS.toMillis(nanos),
+				TimeUnit.NANOSECONDS.toMillis(waitNanos),
+				rows,
+				Thread.currentThread().getName(),
+				sql
+			);
+			log.publish(new LogRecord(Level.WARNING, message));
+		}
+	}
+
+	/**
+	 * Collapses every list of two or more placeholders into {@code (?, ...)}
+	 */
+	static String normalize(String sql) {
+		return PlaceholderList.matcher(sql).replaceAll("(?, ...)");
+	}
+
+	/**
+	 * Gets the statistics for every statement run so far, slowest in total first
+	 */
+	public List<StatementStats> getStatistics() {
+		List<StatementStats> all = Lists.newArrayList(stats.values());
+		all.sort(Comparator.comparingDouble(StatementStats::getTotalMillis).reversed());
+		return all;
+	}
+
+	/**
+	 * Formats the statements that have taken the most time so far for display in chat
+	 * @return The lines to send
+	 */
+	public List<String> getReport() {
+		List<StatementStats> stats = getStatistics();
+		if (stats.isEmpty()) {
+			return Collections.singletonList(ChatColor.GOLD + "No statements have been run yet");
+		}
+
+		List<String> lines = Lists.newArrayList();
+		lines.add(ChatColor.GOLD + "Database time by statement (count, p50, p99, max, rows, connection wait):");
+		for (StatementStats stat : stats.subList(0, Math.min(ReportShown, stats.size()))) {
+			String sql = stat.getSQL();
+			if (sql.length() > ReportSqlLength) {
+				sql = sql.substring(0, ReportSqlLength) + "...";
+			}
+
+			lines.add(ChatColor.YELLOW + String.format(" %.0fms", stat.getTotalMillis()) + ChatColor.GRAY + " " + sql);
+			lines.add(ChatColor.GRAY + String.format("   %dx, %.1fms, %.1fms, %.1fms, %d rows, %.1fms wait",
+				stat.getCount(),
+				stat.getPercentileMillis(0.5),
+				stat.getPercentileMillis(0.99),
+				stat.getMaxMillis(),
+				stat.getRows(),
+				stat.getAverageWaitMillis()
+			));
+		}
+		if (stats.size() > ReportShown) {
+			lines.add(ChatColor.GRAY + " and " + (stats.size() - ReportShown) + " more");
+		}
+
+		return lines;
+	}
+
+	/**
+	 * Clears all recorded statistics
+	 */
+	public void reset() {
+		stats.clear();
+		normalized.clear();
+	}
+
+	/**
+	 * Closes the slow query log
+	 */
+	public void close() {
+		FileHandler log = slowLog;
+		slowLog = null;
+		if (log != null) {
+			log.close();
+		}
+	}
+}
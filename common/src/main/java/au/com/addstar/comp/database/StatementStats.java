@@ -0,0 +1,102 @@
+package au.com.addstar.comp.database;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Timings for one statement. Latencies are kept in a histogram with four
+ * buckets per power of two, so percentiles are accurate to within 25%.
+ */
+public class StatementStats {
+	private static final int MaxExponent = 40;
+
+	private final String sql;
+	private final long[] buckets = new long[(MaxExponent + 1) * 4];
+
+	private long count;
+	private long totalNanos;
+	private long maxNanos;
+	private long rows;
+	private long waitNanos;
+
+	StatementStats(String sql) {
+		this.sql = sql;
+	}
+
+	synchronized void record(long nanos, long rowCount, long wait) {
+		++count;
+		totalNanos += nanos;
+		maxNanos = Math.max(maxNanos, nanos);
+		rows += rowCount;
+		waitNanos += wait;
+		++buckets[bucketFor(TimeUnit.NANOSECONDS.toMicros(nanos))];
+	}
+
+	private static int bucketFor(long micros) {
+		if (micros < 4) {
+			return (int)Math.max(0, micros);
+		}
+		int exponent = Math.min(MaxExponent, 63 - Long.numberOfLeadingZeros(micros));
+		int sub = (int)(micros >>> (exponent - 2)) & 3;
+		return exponent * 4 + sub;
+	}
+
+	private static long upperBound(int bucket) {
+		if (bucket < 4) {
+			return bucket;
+		}
+		int exponent = bucket / 4;
+		int sub = bucket % 4;
+		return ((5L + sub) << (exponent - 2)) - 1;
+	}
+
+	public String getSQL() {
+		return sql;
+	}
+
+	public synchronized long getCount() {
+		return count;
+	}
+
+	public synchronized long getRows() {
+		return rows;
+	}
+
+	/**
+	 * Gets the total time spent executing this statement
+	 */
+	public synchronized double getTotalMillis() {
+		return totalNanos / 1000000.0;
+	}
+
+	public synchronized double getMaxMillis() {
+		return maxNanos / 1000000.0;
+	}
+
+	/**
+	 * Gets the average time spent waiting for a connection before running this statement
+	 */
+	public synchronized double getAverageWaitMillis() {
+		return (count == 0 ? 0 : waitNanos / 1000000.0 / count);
+	}
+
+	/**
+	 * Gets a latency percentile
+	 * @param percentile The percentile between 0 and 1, eg. 0.99
+	 * @return The latency in ms
+	 */
+	public synchronized double getPercentileMillis(double percentile) {
+		if (count == 0) {
+			return 0;
+		}
+
+		long target = (long)Math.ceil(percentile * count);
+		long seen = 0;
+		for (int i = 0; i < buckets.length; ++i) {
+			seen += buckets[i];
+			if (seen >= target) {
+				return Math.min(upperBound(i) / 1000.0, getMaxMillis());
+			}
+		}
+		return getMaxMillis();
+	}
+}
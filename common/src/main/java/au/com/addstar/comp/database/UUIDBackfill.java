@@ -0,0 +1,205 @@
+package au.com.addstar.comp.database;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.google.common.collect.Lists;
+
+/**
+ * Fills in the binary uuid columns of rows that only have the text form.
+ * <p>
+ * Rows are updated one primary key range at a time (a comp and the first hex digit of the uuid)
+ * so each statement only locks a small slice of the table and the server keeps running normally.
+ * It is safe to run at any time and only touches rows that are still missing the binary form.
+ * <p>
+ * Progress is recorded in the backfill table after each comp, so a restart carries on where it stopped
+ * and finished tables are not scanned again. Rows written later by servers that have not been updated
+ * keep only the text form and are read through it, so the release that moves the keys to the binary
+ * columns must run one last pass first. Rows whose text uuid cannot be converted are left as they are
+ * and reported.
+ */
+public class UUIDBackfill {
+	private static final String Hex = "0123456789abcdef";
+	private static final String TABLE_PROGRESS = "uuid_backfill";
+
+	private static final StatementKey STATEMENT_PROGRESS_GET;
+	private static final StatementKey STATEMENT_PROGRESS_UPDATE;
+
+	static {
+		STATEMENT_PROGRESS_GET = new StatementKey("SELECT LastCompID, Completed FROM `" + TABLE_PROGRESS + "` WHERE TableName=?");
+		STATEMENT_PROGRESS_UPDATE = new StatementKey("INSERT INTO `" + TABLE_PROGRESS + "` (TableName, LastCompID, Completed, InvalidRows) VALUES (?,?,?,?) "
+				+ "ON DUPLICATE KEY UPDATE LastCompID=VALUES(LastCompID), Completed=VALUES(Completed), InvalidRows=InvalidRows+VALUES(InvalidRows)");
+	}
+
+	private static final Table[] Tables = {
+		new Table("votes", true, "UUID", "UUIDBin", "PlotOwner", "PlotOwnerBin"),
+		new Table("results", true, "UUID", "UUIDBin"),
+		new Table("plot_entries", true, "UUID", "UUIDBin"),
+		new Table("whitelist", false, "UUID", "UUIDBin")
+	};
+
+	private final HikariConnectionPool pool;
+	private final Logger logger;
+
+	public UUIDBackfill(HikariConnectionPool pool, Logger logger) {
+		this.pool = pool;
+		this.logger = logger;
+	}
+
+	/**
+	 * Backfills every table, logging rather than throwing on failure
+	 */
+	public void run() {
+		for (Table table : Tables) {
+			try {
+				long start = System.currentTimeMillis();
+				Progress progress = backfill(table);
+				if (progress.rows > 0) {
+					logger.info("Converted " + progress.rows + " uuids in " + table.name + " to binary in " + (System.currentTimeMillis() - start) + "ms");
+				}
+				if (progress.invalid > 0) {
+					logger.warning(progress.invalid + " rows in " + table.name + " have a uuid that cannot be converted to binary. They have been left as they are");
+				}
+			} catch (SQLException e) {
+				logger.log(Level.WARNING, "Failed to convert uuids in " + table.name + " to binary", e);
+			}
+		}
+	}
+
+	private Progress backfill(Table table) throws SQLException {
+		Progress progress = new Progress();
+		try (Connection connection = pool.getConnection()) {
+			int lastComp = -1;
+			try (PreparedStatement statement = connection.prepareStatement(STATEMENT_PROGRESS_GET.getSQL())) {
+				statement.setString(1, table.name);
+				try (ResultSet rs = statement.executeQuery()) {
+					if (rs.next()) {
+						if (rs.getBoolean("Completed")) {
+							return progress;
+						}
+						lastComp = rs.getInt("LastCompID");
+					}
+				}
+			}
+
+			List<Integer> comps = Lists.newArrayList();
+			if (table.compScoped) {
+				try (PreparedStatement statement = connection.prepareStatement(table.compsStatement.getSQL())) {
+					statement.setInt(1, lastComp);
+					try (ResultSet rs = statement.executeQuery()) {
+						while (rs.next()) {
+							comps.add(rs.getInt(1));
+						}
+					}
+				}
+			} else {
+				comps.add(null);
+			}
+
+			try (PreparedStatement update = connection.prepareStatement(table.updateStatement.getSQL());
+					PreparedStatement count = connection.prepareStatement(table.invalidStatement.getSQL());
+					PreparedStatement record = connection.prepareStatement(STATEMENT_PROGRESS_UPDATE.getSQL())) {
+				for (int i = 0; i < comps.size(); ++i) {
+					Integer comp = comps.get(i);
+					for (String prefix : prefixes(comp != null ? 1 : 2)) {
+						int index = 1;
+						if (comp != null) {
+							update.setInt(index++, comp);
+						}
+						update.setString(index, prefix + "%");
+						progress.rows += update.executeUpdate();
+					}
+
+					// Anything still missing the binary form could not be converted
+					int invalid = 0;
+					if (comp != null) {
+						count.setInt(1, comp);
+					}
+					try (ResultSet rs = count.executeQuery()) {
+						if (rs.next()) {
+							invalid = rs.getInt(1);
+						}
+					}
+					progress.invalid += invalid;
+
+					record.setString(1, table.name);
+					record.setInt(2, (comp != null ? comp : -1));
+					record.setBoolean(3, i == comps.size() - 1);
+					record.setInt(4, invalid);
+					record.executeUpdate();
+				}
+
+				if (comps.isEmpty()) {
+					record.setString(1, table.name);
+					record.setInt(2, lastComp);
+					record.setBoolean(3, true);
+					record.setInt(4, 0);
+					record.executeUpdate();
+				}
+			}
+		}
+		return progress;
+	}
+
+	private static List<String> prefixes(int length) {
+		List<String> prefixes = Lists.newArrayList("");
+		for (int i = 0; i < length; ++i) {
+			List<String> next = Lists.newArrayListWithCapacity(prefixes.size() * Hex.length());
+			for (String prefix : prefixes) {
+				for (char c : Hex.toCharArray()) {
+					next.add(prefix + c);
+				}
+			}
+			prefixes = next;
+		}
+		return prefixes;
+	}
+
+	private static String toBinary(String column) {
+		String stripped = "REPLACE(`" + column + "`, '-', '')";
+		return "IF(CHAR_LENGTH(" + stripped + ")=32, UNHEX(" + stripped + "), NULL)";
+	}
+
+	private static class Progress {
+		int rows;
+		int invalid;
+	}
+
+	private static class Table {
+		final String name;
+		final boolean compScoped;
+		final StatementKey compsStatement;
+		final StatementKey updateStatement;
+		final StatementKey invalidStatement;
+
+		/**
+		 * @param columns Pairs of text column and binary column. The first pair must be the key uuid
+		 */
+		Table(String name, boolean compScoped, String... columns) {
+			this.name = name;
+			this.compScoped = compScoped;
+
+			StringBuilder sql = new StringBuilder("UPDATE `").append(name).append("` SET ");
+			for (int i = 0; i < columns.length; i += 2) {
+				if (i > 0) {
+					sql.append(", ");
+				}
+				sql.append('`').append(columns[i + 1]).append("`=").append(toBinary(columns[i]));
+			}
+			sql.append(" WHERE ");
+			if (compScoped) {
+				sql.append("CompID=? AND ");
+			}
+			sql.append('`').append(columns[0]).append("` LIKE ? AND `").append(columns[1]).append("` IS NULL");
+
+			compsStatement = new StatementKey("SELECT DISTINCT CompID FROM `" + name + "` WHERE CompID>? ORDER BY CompID");
+			updateStatement = new StatementKey(sql.toString());
+			invalidStatement = new StatementKey("SELECT COUNT(*) FROM `" + name + "` WHERE " + (compScoped ? "CompID=? AND " : "") + "`" + columns[1] + "` IS NULL");
+		}
+	}
+}
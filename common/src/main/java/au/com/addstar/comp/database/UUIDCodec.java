@@ -0,0 +1,108 @@
+package au.com.addstar.comp.database;
+
+import java.nio.ByteBuffer;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.UUID;
+
+/**
+ * Converts uuids to and from their stored forms.
+ * <p>
+ * Uuids are stored both as text and as {@code binary(16)}. Rows written by older versions
+ * only have the text form until the backfill reaches them, so reads prefer the binary
+ * column and fall back to the text one.
+ */
+public final class UUIDCodec {
+	private UUIDCodec() {}
+
+	/**
+	 * Converts a uuid to its 16 byte big-endian form
+	 * @param id The uuid
+	 * @return The bytes, or null if id is null
+	 */
+	public static byte[] toBytes(UUID id) {
+		if (id == null) {
+			return null;
+		}
+
+		return ByteBuffer.allocate(16)
+			.putLong(id.getMostSignificantBits())
+			.putLong(id.getLeastSignificantBits())
+			.array();
+	}
+
+	/**
+	 * Converts 16 bytes back to a uuid
+	 * @param bytes The bytes
+	 * @return The uuid, or null if bytes is not 16 bytes long
+	 */
+	public static UUID fromBytes(byte[] bytes) {
+		if (bytes == null || bytes.length != 16) {
+			return null;
+		}
+
+		ByteBuffer buffer = ByteBuffer.wrap(bytes);
+		return new UUID(buffer.getLong(), buffer.getLong());
+	}
+
+	/**
+	 * Parses a uuid with or without dashes
+	 * @param text The uuid text
+	 * @return The uuid
+	 * @throws IllegalArgumentException Thrown if text is not a uuid
+	 */
+	public static UUID parse(String text) throws IllegalArgumentException {
+		if (text == null) {
+			throw new IllegalArgumentException("Missing uuid");
+		}
+
+		if (text.length() == 32) {
+			try {
+				return new UUID(
+					Long.parseUnsignedLong(text.substring(0, 16), 16),
+					Long.parseUnsignedLong(text.substring(16), 16)
+				);
+			} catch (NumberFormatException e) {
+				throw new IllegalArgumentException("Invalid uuid " + text);
+			}
+		}
+
+		return UUID.fromString(text);
+	}
+
+	/**
+	 * Reads a uuid stored in both forms, preferring the binary column
+	 * @param rs The result set positioned on the row
+	 * @param binaryColumn The binary(16) column
+	 * @param textColumn The text column
+	 * @return The uuid
+	 * @throws IllegalArgumentException Thrown if neither column holds a valid uuid
+	 * @throws SQLException Thrown if the columns cannot be read
+	 */
+	public static UUID read(ResultSet rs, String binaryColumn, String textColumn) throws SQLException, IllegalArgumentException {
+		UUID id = fromBytes(rs.getBytes(binaryColumn));
+		if (id != null) {
+			return id;
+		}
+
+		return parse(rs.getString(textColumn));
+	}
+
+	/**
+	 * Reads a uuid stored in both forms by column index, preferring the binary column
+	 * @param rs The result set positioned on the row
+	 * @param binaryColumn The index of the binary(16) column
+	 * @param textColumn The index of the text column
+	 * @return The uuid
+	 * @throws IllegalArgumentException Thrown if neither column holds a valid uuid
+	 * @throws SQLException Thrown if the columns cannot be read
+	 */
+	public static UUID read(ResultSet rs, int binaryColumn, int textColumn) throws SQLException, IllegalArgumentException {
+		UUID id = fromBytes(rs.getBytes(binaryColumn));
+		if (id != null) {
+			return id;
+		}
+
+		return parse(rs.getString(textColumn));
+	}
+}
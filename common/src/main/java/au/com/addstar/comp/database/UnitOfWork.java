@@ -0,0 +1,100 @@
+package au.com.addstar.comp.database;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Map;
+
+import com.google.common.collect.Maps;
+
+/**
+ * Runs several statements on one connection as a single transaction.
+ * Each {@link StatementKey} is prepared once and reused, so rows can be added
+ * with {@link PreparedStatement#addBatch()} and sent together with {@link #executeBatch(StatementKey)}.
+ * Nothing is kept unless {@link #commit()} is called before closing.
+ */
+public class UnitOfWork implements AutoCloseable {
+    private final Connection connection;
+    private final boolean previousAutoCommit;
+    private final Map<StatementKey, PreparedStatement> statements;
+    private boolean committed;
+
+    /**
+     * Starts a transaction on the connection. The connection is closed along with this.
+     * @param connection The connection to use
+     * @throws SQLException Thrown if the transaction cannot be started
+     */
+    public UnitOfWork(Connection connection) throws SQLException {
+        this.connection = connection;
+        previousAutoCommit = connection.getAutoCommit();
+        connection.setAutoCommit(false);
+        statements = Maps.newLinkedHashMap();
+    }
+
+    public Connection getConnection() {
+        return connection;
+    }
+
+    /**
+     * Gets the statement for a key, preparing it the first time
+     * @param key The statement to get
+     * @return The prepared statement, owned by this unit of work
+     * @throws SQLException Thrown if the statement could not be prepared
+     */
+    public PreparedStatement prepare(StatementKey key) throws SQLException {
+        PreparedStatement statement = statements.get(key);
+        if (statement == null) {
+            statement = key.createPreparedStatement(connection);
+            statements.put(key, statement);
+        }
+        return statement;
+    }
+
+    /**
+     * Sends all rows batched on a statement
+     * @param key The statement to execute
+     * @return The update counts of each row
+     * @throws SQLException Thrown if any row fails
+     */
+    public int[] executeBatch(StatementKey key) throws SQLException {
+        PreparedStatement statement = statements.get(key);
+        if (statement == null) {
+            return new int[0];
+        }
+        return statement.executeBatch();
+    }
+
+    /**
+     * Commits everything done in this unit of work
+     * @throws SQLException Thrown if the commit fails
+     */
+    public void commit() throws SQLException {
+        connection.commit();
+        committed = true;
+    }
+
+    /**
+     * Rolls back anything not committed, then releases the statements and connection
+     */
+    @Override
+    public void close() throws SQLException {
+        try {
+            if (!committed) {
+                connection.rollback();
+            }
+        } finally {
+            for (PreparedStatement statement : statements.values()) {
+                try {
+                    statement.close();
+                } catch (SQLException e) {
+                    // Closing the connection will release it anyway
+                }
+            }
+            try {
+                connection.setAutoCommit(previousAutoCommit);
+            } finally {
+                connection.close();
+            }
+        }
+    }
+}
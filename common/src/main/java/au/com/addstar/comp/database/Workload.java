@@ -0,0 +1,33 @@
+package au.com.addstar.comp.database;
+
+/**
+ * The kinds of database work, each of which gets its own connection pool
+ * so slow work cannot starve work players are waiting on.
+ */
+public enum Workload {
+	/**
+	 * Small reads and writes that players are waiting on, such as votes, joins and whitelist changes
+	 */
+	Interactive("interactive"),
+	/**
+	 * Large reads and writes against the primary database, such as loading every vote or recording results
+	 */
+	Bulk("bulk"),
+	/**
+	 * Reads that can tolerate replication lag, such as listing comps. May be served by a replica
+	 */
+	ReadOnly("read-only");
+
+	private final String configName;
+
+	Workload(String configName) {
+		this.configName = configName;
+	}
+
+	/**
+	 * Gets the name of this workload's section under database.pools
+	 */
+	public String getConfigName() {
+		return configName;
+	}
+}
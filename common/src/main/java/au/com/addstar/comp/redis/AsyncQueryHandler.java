@@ -0,0 +1,27 @@
+package au.com.addstar.comp.redis;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * A query handler that may take its time to answer.
+ * Handlers are called from a dispatch pool shared by every handler
+ * of the same class, never from the redis connection thread.
+ */
+public interface AsyncQueryHandler {
+	/**
+	 * Called to query some data
+	 * @param command The command being queried
+	 * @param arguments The provided arguments
+	 * @return A future for the response. Complete it exceptionally with a {@link QueryException} to indicate a problem
+	 */
+	CompletableFuture<String> onQuery(String command, String[] arguments);
+	
+	/**
+	 * Handlers that touch Bukkit state can return true here
+	 * to be called on the server main thread instead
+	 * @return True to run on the main thread
+	 */
+	default boolean runsOnMainThread() {
+		return false;
+	}
+}
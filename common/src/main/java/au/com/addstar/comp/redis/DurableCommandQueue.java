@@ -0,0 +1,174 @@
+package au.com.addstar.comp.redis;
+
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.lambdaworks.redis.RedisClient;
+import com.lambdaworks.redis.RedisException;
+import com.lambdaworks.redis.RedisFuture;
+import com.lambdaworks.redis.TransactionResult;
+import com.lambdaworks.redis.api.StatefulRedisConnection;
+import com.lambdaworks.redis.api.async.RedisAsyncCommands;
+import com.lambdaworks.redis.api.sync.RedisCommands;
+
+/**
+ * Delivers commands through a redis list per server so that commands
+ * sent while a server is offline are received once it starts.
+ * <p>
+ * Entries are moved onto a processing list while they are handled and removed
+ * once done. Anything left on the processing list was interrupted, and is
+ * replayed when the consumer starts. Every entry has an id which is remembered
+ * for a while after it is handled so that a replay does not run it twice.
+ */
+final class DurableCommandQueue {
+	private static final String QueueKey = RedisManager.RedisKey + ".cmd.";
+	private static final String ProcessingSuffix = ".processing";
+	private static final String DoneKey = RedisManager.RedisKey + ".cmd.done.";
+	
+	/**
+	 * Seconds to block waiting for a command before checking if we should stop
+	 */
+	private static final long PollTimeout = 5;
+	/**
+	 * Seconds to remember handled command ids for
+	 */
+	private static final long DoneTime = TimeUnit.HOURS.toSeconds(1);
+	/**
+	 * Seconds to wait for redis to accept a queued command
+	 */
+	private static final long PushTimeout = 5;
+	
+	private final String serverId;
+	private final int maxLength;
+	private final CommandReceiver receiver;
+	
+	private final RedisAsyncCommands<String, String> sendCommands;
+	private final StatefulRedisConnection<String, String> receiveConnection;
+	
+	private volatile boolean running;
+	private Thread consumer;
+	
+	DurableCommandQueue(RedisClient client, String serverId, int maxLength, CommandReceiver receiver) {
+		this.serverId = serverId;
+		this.maxLength = maxLength;
+		this.receiver = receiver;
+		
+		sendCommands = client.connect().async();
+		// Blocking pops need a connection to themselves
+		receiveConnection = client.connect();
+	}
+	
+	/**
+	 * Queues a command for a server. The push and trim are sent together
+	 * in one transaction. This waits for redis to reply so it should not
+	 * be called on the server thread.
+	 * @param targetId The id of the server to receive it
+	 * @param command The command to send
+	 * @throws RedisException Thrown if the command could not be queued
+	 */
+	void push(String targetId, String command) throws RedisException {
+		String entry = UUID.randomUUID() + "\01" + serverId + "\01" + command;
+		String key = QueueKey + targetId;
+		
+		RedisFuture<TransactionResult> result;
+		// Commands from another push must not end up inside this transaction
+		synchronized (sendCommands) {
+			sendCommands.multi();
+			sendCommands.lpush(key, entry);
+			// The oldest entries are at the tail
+			sendCommands.ltrim(key, 0, maxLength - 1);
+			result = sendCommands.exec();
+		}
+		
+		try {
+			if (!result.await(PushTimeout, TimeUnit.SECONDS)) {
+				throw new RedisException("Timed out queueing command for " + targetId);
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RedisException("Interrupted queueing command for " + targetId, e);
+		}
+		
+		if (result.getError() != null) {
+			throw new RedisException("Failed to queue command for " + targetId + ": " + result.getError());
+		}
+	}
+	
+	/**
+	 * Starts receiving commands for this server, replaying any that were interrupted
+	 */
+	synchronized void start() {
+		if (running) {
+			return;
+		}
+		
+		running = true;
+		consumer = new Thread(this::consume, "CompManager Command Queue");
+		consumer.setDaemon(true);
+		consumer.start();
+	}
+	
+	void stop() {
+		running = false;
+		receiveConnection.close();
+		sendCommands.getStatefulConnection().close();
+	}
+	
+	private void consume() {
+		RedisCommands<String, String> commands = receiveConnection.sync();
+		String queueKey = QueueKey + serverId;
+		String processingKey = queueKey + ProcessingSuffix;
+		
+		try {
+			// Anything still processing was never finished, oldest is at the tail
+			List<String> interrupted = commands.lrange(processingKey, 0, -1);
+			for (int i = interrupted.size() - 1; i >= 0; --i) {
+				handle(commands, processingKey, interrupted.get(i));
+			}
+		} catch (RedisException e) {
+			Logger.getLogger("CompManager").log(Level.WARNING, "Failed to replay queued commands", e);
+		}
+		
+		while (running) {
+			try {
+				String entry = commands.brpoplpush(PollTimeout, queueKey, processingKey);
+				if (entry != null) {
+					handle(commands, processingKey, entry);
+				}
+			} catch (RedisException e) {
+				if (!running) {
+					break;
+				}
+				
+				Logger.getLogger("CompManager").log(Level.WARNING, "Failed to receive queued commands", e);
+				try {
+					Thread.sleep(1000);
+				} catch (InterruptedException ex) {
+					break;
+				}
+			}
+		}
+	}
+	
+	private void handle(RedisCommands<String, String> commands, String processingKey, String entry) {
+		String[] parts = entry.split("\01", 3);
+		if (parts.length == 3) {
+			String doneKey = DoneKey + parts[0];
+			if (commands.exists(doneKey) == 0) {
+				try {
+					receiver.onReceive(parts[1], parts[2]);
+				} catch (Throwable e) {
+					Logger.getLogger("CompManager").log(Level.SEVERE, "Failed to handle queued command " + parts[2], e);
+				}
+				commands.setex(doneKey, DoneTime, "1");
+			}
+		} else {
+			Logger.getLogger("CompManager").warning("Dropped malformed queued command " + entry);
+		}
+		
+		commands.lrem(processingKey, 1, entry);
+	}
+}
@@ -0,0 +1,77 @@
+package au.com.addstar.comp.redis;
+
+import java.util.concurrent.TimeUnit;
+
+import org.bukkit.configuration.ConfigurationSection;
+
+import com.google.common.base.Strings;
+import com.lambdaworks.redis.RedisClient;
+import com.lambdaworks.redis.RedisURI;
+import com.lambdaworks.redis.codec.ByteArrayCodec;
+import com.lambdaworks.redis.pubsub.RedisPubSubAdapter;
+import com.lambdaworks.redis.pubsub.StatefulRedisPubSubConnection;
+import com.lambdaworks.redis.pubsub.api.async.RedisPubSubAsyncCommands;
+import com.lambdaworks.redis.pubsub.api.sync.RedisPubSubCommands;
+
+/**
+ * Sends messages through a redis server
+ */
+public class LettuceTransport implements MessageTransport {
+	private final ConfigurationSection redisConfig;
+	
+	private RedisClient client;
+	private RedisPubSubAsyncCommands<byte[], byte[]> subscribeConnection;
+	private RedisPubSubCommands<byte[], byte[]> publishConnection;
+	
+	public LettuceTransport(ConfigurationSection redisConfig) {
+		this.redisConfig = redisConfig;
+	}
+	
+	@Override
+	public void connect(Listener listener) {
+		RedisURI uri = new RedisURI(redisConfig.getString("host", "localhost"), redisConfig.getInt("port", 6379), 30, TimeUnit.SECONDS);
+		if (!Strings.isNullOrEmpty(redisConfig.getString("password"))) {
+			uri.setPassword(redisConfig.getString("password"));
+		}
+		
+		client = RedisClient.create(uri);
+		// Create the connection for subscribing
+		StatefulRedisPubSubConnection<byte[], byte[]> connection = client.connectPubSub(ByteArrayCodec.INSTANCE);
+		subscribeConnection = connection.async();
+		subscribeConnection.addListener(new RedisPubSubAdapter<byte[], byte[]>() {
+			@Override
+			public void message(byte[] pattern, byte[] channel, byte[] message) {
+				listener.onMessage(pattern, channel, message);
+			}
+		});
+		
+		// Create the connection for publishing
+		connection = client.connectPubSub(ByteArrayCodec.INSTANCE);
+		publishConnection = connection.sync();
+	}
+	
+	/**
+	 * Gets the underlying client for things beyond pub/sub
+	 * @return The client, or null if not connected
+	 */
+	public RedisClient getClient() {
+		return client;
+	}
+	
+	@Override
+	public void psubscribe(byte[] pattern) {
+		subscribeConnection.psubscribe(pattern);
+	}
+	
+	@Override
+	public void publish(byte[] channel, byte[] message) {
+		publishConnection.publish(channel, message);
+	}
+	
+	@Override
+	public void shutdown() {
+		if (client != null) {
+			client.shutdown();
+		}
+	}
+}
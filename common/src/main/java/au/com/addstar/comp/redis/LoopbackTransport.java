@@ -0,0 +1,139 @@
+package au.com.addstar.comp.redis;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+import org.bukkit.configuration.ConfigurationSection;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Passes messages between managers in the same JVM without a redis server.
+ * Useful for single server setups and for testing many virtual servers at once.
+ * Latency and loss can be simulated.
+ */
+public class LoopbackTransport implements MessageTransport {
+	private final Bus bus;
+	private final long latency;
+	private final double lossChance;
+	
+	private Listener listener;
+	
+	/**
+	 * Creates a transport on the shared bus using the loopback settings in the config
+	 * @param redisConfig The redis config section
+	 */
+	public LoopbackTransport(ConfigurationSection redisConfig) {
+		this(Bus.getShared(), redisConfig.getLong("loopback.latency", 0), redisConfig.getDouble("loopback.loss", 0));
+	}
+	
+	/**
+	 * @param bus The bus to send through. Only transports on the same bus can talk to each other
+	 * @param latency The delay in ms before messages are received
+	 * @param lossChance The chance (0 to 1) that any received message is dropped
+	 */
+	public LoopbackTransport(Bus bus, long latency, double lossChance) {
+		this.bus = bus;
+		this.latency = latency;
+		this.lossChance = lossChance;
+	}
+	
+	@Override
+	public void connect(Listener listener) {
+		this.listener = listener;
+	}
+	
+	@Override
+	public void psubscribe(byte[] pattern) {
+		bus.subscriptions.add(new Subscription(this, pattern));
+	}
+	
+	@Override
+	public void publish(byte[] channel, byte[] message) {
+		String name = new String(channel, StandardCharsets.UTF_8);
+		for (Subscription subscription : bus.subscriptions) {
+			if (subscription.matcher.matcher(name).matches()) {
+				subscription.transport.deliver(subscription.pattern, channel, message);
+			}
+		}
+	}
+	
+	private void deliver(byte[] pattern, byte[] channel, byte[] message) {
+		if (lossChance > 0 && ThreadLocalRandom.current().nextDouble() < lossChance) {
+			return;
+		}
+		
+		// Never deliver on the publishing thread, redis would not either
+		bus.executor.schedule(() -> listener.onMessage(pattern, channel, message), latency, TimeUnit.MILLISECONDS);
+	}
+	
+	@Override
+	public void shutdown() {
+		bus.subscriptions.removeIf(subscription -> subscription.transport == this);
+	}
+	
+	/**
+	 * Converts a redis glob pattern into a regex
+	 */
+	private static Pattern compileGlob(String glob) {
+		StringBuilder regex = new StringBuilder();
+		for (char c : glob.toCharArray()) {
+			switch (c) {
+			case '*':
+				regex.append(".*");
+				break;
+			case '?':
+				regex.append('.');
+				break;
+			default:
+				regex.append(Pattern.quote(String.valueOf(c)));
+				break;
+			}
+		}
+		return Pattern.compile(regex.toString(), Pattern.DOTALL);
+	}
+	
+	/**
+	 * A set of transports that can talk to each other
+	 */
+	public static class Bus {
+		private static final Bus shared = new Bus();
+		
+		private final List<Subscription> subscriptions;
+		private final ScheduledExecutorService executor;
+		
+		public Bus() {
+			subscriptions = new CopyOnWriteArrayList<>();
+			executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+					.setNameFormat("CompManager Loopback %d")
+					.setDaemon(true)
+					.build());
+		}
+		
+		/**
+		 * Gets the bus used by transports created from config
+		 * @return The shared bus
+		 */
+		public static Bus getShared() {
+			return shared;
+		}
+	}
+	
+	private static class Subscription {
+		private final LoopbackTransport transport;
+		private final byte[] pattern;
+		private final Pattern matcher;
+		
+		public Subscription(LoopbackTransport transport, byte[] pattern) {
+			this.transport = transport;
+			this.pattern = pattern;
+			matcher = compileGlob(new String(pattern, StandardCharsets.UTF_8));
+		}
+	}
+}
@@ -0,0 +1,136 @@
+package au.com.addstar.comp.redis;
+
+/**
+ * A single message passed between servers through redis
+ */
+final class Message {
+	enum Type {
+		Query('q'),
+		Reply('r'),
+		Error('e'),
+		Command('c'),
+		/**
+		 * Announces the protocol version of the sender
+		 */
+		Hello('h'),
+		/**
+		 * Regular heartbeat carrying server status
+		 */
+		Presence('p');
+
+		private final char code;
+
+		Type(char code) {
+			this.code = code;
+		}
+
+		public char getCode() {
+			return code;
+		}
+
+		public static Type fromCode(int code) {
+			for (Type type : values()) {
+				if (type.code == code) {
+					return type;
+				}
+			}
+			return null;
+		}
+	}
+
+	private static final String[] NoArgs = new String[0];
+
+	private final Type type;
+	private final int version;
+	private final long queryId;
+	private final String command;
+	private final String[] args;
+	private final String value;
+	private final long deadline;
+
+	Message(Type type, int version, long queryId, String command, String[] args, String value) {
+		this(type, version, queryId, command, args, value, 0);
+	}
+
+	Message(Type type, int version, long queryId, String command, String[] args, String value, long deadline) {
+		this.type = type;
+		this.version = version;
+		this.queryId = queryId;
+		this.command = command;
+		this.args = (args == null ? NoArgs : args);
+		this.value = value;
+		this.deadline = deadline;
+	}
+
+	static Message query(long queryId, String command, String[] args, long deadline) {
+		return new Message(Type.Query, MessageCodec.Version, queryId, command, args, null, deadline);
+	}
+
+	static Message reply(long queryId, String value) {
+		return new Message(Type.Reply, MessageCodec.Version, queryId, null, null, value);
+	}
+
+	static Message error(long queryId, String error) {
+		return new Message(Type.Error, MessageCodec.Version, queryId, null, null, error);
+	}
+
+	static Message command(String command) {
+		return new Message(Type.Command, MessageCodec.Version, 0, command, null, null);
+	}
+
+	static Message presence(String[] fields) {
+		return new Message(Type.Presence, MessageCodec.Version, 0, null, fields, null);
+	}
+
+	static Message hello() {
+		return new Message(Type.Hello, MessageCodec.Version, 0, null, null, null);
+	}
+
+	public Type getType() {
+		return type;
+	}
+
+	/**
+	 * Gets the protocol version this message was received in.
+	 * @return The version, 0 for the legacy text format
+	 */
+	public int getVersion() {
+		return version;
+	}
+
+	public long getQueryId() {
+		return queryId;
+	}
+
+	/**
+	 * Gets the command for queries and commands
+	 * @return The command or null
+	 */
+	public String getCommand() {
+		return command;
+	}
+
+	/**
+	 * Gets the arguments of a query, or the fields of a presence message
+	 * @return The arguments, never null
+	 */
+	public String[] getArgs() {
+		return args;
+	}
+
+	/**
+	 * Gets the return value of a reply, or the message of an error
+	 * @return The value or null
+	 */
+	public String getValue() {
+		return value;
+	}
+
+	/**
+	 * Gets when the sender of a query will stop waiting for the answer
+	 * @return The time in ms by the local clock, or 0 if unknown
+	 */
+	public long getDeadline() {
+		return deadline;
+	}
+}
@@ -0,0 +1,303 @@
+package au.com.addstar.comp.redis;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Map;
+
+import org.apache.commons.lang3.StringUtils;
+
+import com.google.common.collect.ImmutableMap;
+
+/**
+ * Encodes and decodes {@link Message}s.
+ * <p>
+ * Version 1 messages are binary and laid out as:
+ * <pre>
+ * marker, version, type, [varint queryId], body
+ * </pre>
+ * Version 2 adds a varint to the end of queries holding how many ms the sender
+ * will wait for an answer, or 0 for unknown. It is relative so that clocks do not need to agree.
+ * Strings are a varint length followed by UTF-8 bytes. Commands are a varint index into
+ * {@link #KnownCommands} (1 based), or 0 followed by the command as a string.
+ * <p>
+ * Version 0 is the original text format where fields are separated by \01.
+ * It is still understood so that servers can be updated one at a time.
+ */
+final class MessageCodec {
+	/**
+	 * The highest protocol version this codec can write
+	 */
+	static final int Version = 2;
+	static final int LegacyVersion = 0;
+
+	/**
+	 * Binary messages start with this. Legacy messages always start with a type letter.
+	 */
+	private static final byte Marker = (byte)0xCB;
+
+	/**
+	 * Commands that are sent often enough to be worth a short id.
+	 * Only ever append to this list, the index is part of the protocol.
+	 */
+	private static final String[] KnownCommands = {
+		"ping",
+		"entrant_count",
+		"is_entrant",
+		"join_begin",
+		"join_confirm",
+		"join_abort",
+		"backup_status",
+		"reload",
+		"reloadsender",
+		"reloadall",
+		"backup",
+		"reset"
+	};
+
+	private static final Map<String, Integer> KnownCommandIds;
+
+	static {
+		ImmutableMap.Builder<String, Integer> builder = ImmutableMap.builder();
+		for (int i = 0; i < KnownCommands.length; ++i) {
+			builder.put(KnownCommands[i], i + 1);
+		}
+		KnownCommandIds = builder.build();
+	}
+
+	private MessageCodec() {}
+
+	/**
+	 * Encodes a message
+	 * @param message The message to encode
+	 * @param version The protocol version to use. Must be at most {@link #Version}
+	 * @return The encoded bytes
+	 */
+	static byte[] encode(Message message, int version) {
+		if (version <= LegacyVersion) {
+			return encodeLegacy(message);
+		}
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream(32);
+		out.write(Marker);
+		out.write(Math.min(version, Version));
+		out.write(message.getType().getCode());
+
+		switch (message.getType()) {
+		case Query:
+			writeVarLong(out, message.getQueryId());
+			writeCommand(out, message.getCommand());
+			writeVarLong(out, message.getArgs().length);
+			for (String arg : message.getArgs()) {
+				writeString(out, arg);
+			}
+			if (version >= 2) {
+				long remaining = 0;
+				if (message.getDeadline() != 0) {
+					remaining = Math.max(1, message.getDeadline() - System.currentTimeMillis());
+				}
+				writeVarLong(out, remaining);
+			}
+			break;
+		case Reply:
+		case Error:
+			writeVarLong(out, message.getQueryId());
+			writeString(out, message.getValue());
+			break;
+		case Command:
+			writeCommand(out, message.getCommand());
+			break;
+		case Presence:
+			writeVarLong(out, message.getArgs().length);
+			for (String field : message.getArgs()) {
+				writeString(out, field);
+			}
+			break;
+		case Hello:
+			break;
+		}
+
+		return out.toByteArray();
+	}
+
+	/**
+	 * Decodes a message in either the binary or legacy format
+	 * @param data The raw message
+	 * @return The message, or null if it is a type this version does not understand
+	 * @throws IllegalArgumentException Thrown if the message is malformed
+	 */
+	static Message decode(byte[] data) throws IllegalArgumentException {
+		if (data.length == 0) {
+			throw new IllegalArgumentException("Empty message");
+		}
+
+		if (data[0] != Marker) {
+			return decodeLegacy(new String(data, StandardCharsets.UTF_8));
+		}
+
+		try {
+			ByteBuffer in = ByteBuffer.wrap(data);
+			in.get(); // Marker
+			int version = in.get() & 0xFF;
+			Message.Type type = Message.Type.fromCode(in.get() & 0xFF);
+			if (type == null) {
+				return null;
+			}
+
+			switch (type) {
+			case Query: {
+				long queryId = readVarLong(in);
+				String command = readCommand(in);
+				String[] args = new String[checkLength(readVarLong(in), in)];
+				for (int i = 0; i < args.length; ++i) {
+					args[i] = readString(in);
+				}
+				long deadline = 0;
+				if (version >= 2) {
+					long remaining = readVarLong(in);
+					if (remaining > 0) {
+						deadline = System.currentTimeMillis() + remaining;
+					}
+				}
+				return new Message(type, version, queryId, command, args, null, deadline);
+			}
+			case Reply:
+			case Error: {
+				long queryId = readVarLong(in);
+				return new Message(type, version, queryId, null, null, readString(in));
+			}
+			case Command:
+				return new Message(type, version, 0, readCommand(in), null, null);
+			case Presence: {
+				String[] fields = new String[checkLength(readVarLong(in), in)];
+				for (int i = 0; i < fields.length; ++i) {
+					fields[i] = readString(in);
+				}
+				return new Message(type, version, 0, null, fields, null);
+			}
+			case Hello:
+				return new Message(type, version, 0, null, null, null);
+			default:
+				return null;
+			}
+		} catch (BufferUnderflowException e) {
+			throw new IllegalArgumentException("Truncated message");
+		}
+	}
+
+	private static byte[] encodeLegacy(Message message) {
+		String data;
+		switch (message.getType()) {
+		case Query:
+			data = String.format("q\01%d\01%s\01%s", message.getQueryId(), message.getCommand(), StringUtils.join(message.getArgs(), '\01'));
+			break;
+		case Reply:
+			data = String.format("r\01%d\01%s", message.getQueryId(), message.getValue());
+			break;
+		case Error:
+			data = String.format("e\01%d\01%s", message.getQueryId(), message.getValue());
+			break;
+		case Command:
+			data = "c\01" + message.getCommand();
+			break;
+		case Presence:
+			data = "p\01" + StringUtils.join(message.getArgs(), '\01');
+			break;
+		default:
+			throw new IllegalArgumentException(message.getType() + " cannot be sent using the legacy protocol");
+		}
+
+		return data.getBytes(StandardCharsets.UTF_8);
+	}
+
+	private static Message decodeLegacy(String message) {
+		String[] dataParts = message.split("\01");
+		Message.Type type = Message.Type.fromCode(dataParts[0].length() == 1 ? dataParts[0].charAt(0) : -1);
+		if (type == null) {
+			return null;
+		}
+
+		try {
+			switch (type) {
+			case Query:
+				return new Message(type, LegacyVersion, Long.parseLong(dataParts[1]), dataParts[2], Arrays.copyOfRange(dataParts, 3, dataParts.length), null);
+			case Reply:
+			case Error:
+				return new Message(type, LegacyVersion, Long.parseLong(dataParts[1]), null, null, dataParts.length > 2 ? dataParts[2] : "");
+			case Command:
+				return new Message(type, LegacyVersion, 0, StringUtils.join(dataParts, '\01', 1, dataParts.length), null, null);
+			case Presence:
+				return new Message(type, LegacyVersion, 0, null, Arrays.copyOfRange(dataParts, 1, dataParts.length), null);
+			default:
+				return null;
+			}
+		} catch (ArrayIndexOutOfBoundsException | NumberFormatException e) {
+			throw new IllegalArgumentException("Malformed legacy message");
+		}
+	}
+
+	private static void writeCommand(ByteArrayOutputStream out, String command) {
+		Integer id = KnownCommandIds.get(command.toLowerCase());
+		if (id != null) {
+			writeVarLong(out, id);
+		} else {
+			writeVarLong(out, 0);
+			writeString(out, command);
+		}
+	}
+
+	private static String readCommand(ByteBuffer in) {
+		int id = (int)readVarLong(in);
+		if (id == 0) {
+			return readString(in);
+		}
+
+		if (id > KnownCommands.length) {
+			throw new IllegalArgumentException("Unknown command id " + id);
+		}
+		return KnownCommands[id - 1];
+	}
+
+	private static void writeString(ByteArrayOutputStream out, String value) {
+		byte[] bytes = (value == null ? "" : value).getBytes(StandardCharsets.UTF_8);
+		writeVarLong(out, bytes.length);
+		out.write(bytes, 0, bytes.length);
+	}
+
+	private static String readString(ByteBuffer in) {
+		int length = checkLength(readVarLong(in), in);
+		String value = new String(in.array(), in.arrayOffset() + in.position(), length, StandardCharsets.UTF_8);
+		in.position(in.position() + length);
+		return value;
+	}
+
+	private static int checkLength(long length, ByteBuffer in) {
+		// Every element takes at least one byte so this catches nonsense before allocating
+		if (length < 0 || length > in.remaining()) {
+			throw new IllegalArgumentException("Invalid length " + length);
+		}
+		return (int)length;
+	}
+
+	private static void writeVarLong(ByteArrayOutputStream out, long value) {
+		while ((value & ~0x7FL) != 0) {
+			out.write((int)((value & 0x7F) | 0x80));
+			value >>>= 7;
+		}
+		out.write((int)value);
+	}
+
+	private static long readVarLong(ByteBuffer in) {
+		long value = 0;
+		for (int shift = 0; shift < 64; shift += 7) {
+			byte b = in.get();
+			value |= (long)(b & 0x7F) << shift;
+			if ((b & 0x80) == 0) {
+				return value;
+			}
+		}
+		throw new IllegalArgumentException("Varint too long");
+	}
+}
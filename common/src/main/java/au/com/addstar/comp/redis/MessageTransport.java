@@ -0,0 +1,41 @@
+package au.com.addstar.comp.redis;
+
+/**
+ * Carries raw messages between servers for a {@link RedisManager}.
+ * Channels and patterns follow redis pub/sub rules.
+ */
+public interface MessageTransport {
+	/**
+	 * Opens any connections needed.
+	 * @param listener The listener to receive messages matching subscribed patterns
+	 */
+	void connect(Listener listener);
+	
+	/**
+	 * Subscribes to all channels matching a pattern
+	 * @param pattern A redis style glob pattern
+	 */
+	void psubscribe(byte[] pattern);
+	
+	/**
+	 * Publishes a message to a channel
+	 * @param channel The channel
+	 * @param message The raw message
+	 */
+	void publish(byte[] channel, byte[] message);
+	
+	/**
+	 * Closes all connections
+	 */
+	void shutdown();
+	
+	interface Listener {
+		/**
+		 * Called when a message arrives on a channel matching a subscribed pattern
+		 * @param pattern The pattern that was matched
+		 * @param channel The channel it was published to
+		 * @param message The raw message
+		 */
+		void onMessage(byte[] pattern, byte[] channel, byte[] message);
+	}
+}
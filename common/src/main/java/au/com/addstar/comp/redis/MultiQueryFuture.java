@@ -0,0 +1,101 @@
+package au.com.addstar.comp.redis;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+
+/**
+ * A future for a query sent to many servers at once. This completes once
+ * every expected server has answered, or the timeout has passed.
+ * Individual servers can be waited on through {@link #forServer(String)}
+ */
+public class MultiQueryFuture extends PendingQuery<MultiQueryResult> {
+	private final ImmutableSet<String> expected;
+	
+	private final Map<String, String> results;
+	private final Map<String, QueryException> failures;
+	private final Map<String, Long> latencies;
+	private final Map<String, SettableFuture<String>> serverFutures;
+	
+	MultiQueryFuture(long queryId, Collection<String> expected) {
+		super(queryId);
+		this.expected = (expected == null ? null : ImmutableSet.copyOf(expected));
+		
+		results = new ConcurrentHashMap<>();
+		failures = new ConcurrentHashMap<>();
+		latencies = new ConcurrentHashMap<>();
+		serverFutures = new ConcurrentHashMap<>();
+	}
+	
+	/**
+	 * Gets a future for the reply of a single server. This completes
+	 * as soon as that server answers, without waiting for the others.
+	 * @param serverId The id of the server
+	 * @return A future to get that servers result
+	 */
+	public synchronized ListenableFuture<String> forServer(String serverId) {
+		SettableFuture<String> future = serverFutures.get(serverId);
+		if (future != null) {
+			return future;
+		}
+		
+		if (isDone()) {
+			// Too late, nothing will answer anymore
+			return Futures.immediateFailedFuture(new QueryTimeoutException("Timeout"));
+		}
+		
+		future = SettableFuture.create();
+		serverFutures.put(serverId, future);
+		return future;
+	}
+	
+	@Override
+	synchronized void onReply(String serverId, String value, String error) {
+		if (isDone() || results.containsKey(serverId) || failures.containsKey(serverId)) {
+			return;
+		}
+		
+		latencies.put(serverId, getElapsed());
+		SettableFuture<String> serverFuture = serverFutures.computeIfAbsent(serverId, id -> SettableFuture.create());
+		if (value != null) {
+			results.put(serverId, value);
+			serverFuture.set(value);
+		} else {
+			QueryException exception = new QueryException(error);
+			failures.put(serverId, exception);
+			serverFuture.setException(exception);
+		}
+		
+		if (expected != null && results.size() + failures.size() >= expected.size()
+				&& expected.stream().allMatch(id -> results.containsKey(id) || failures.containsKey(id))) {
+			set(new MultiQueryResult(results, failures, latencies));
+		}
+	}
+	
+	@Override
+	synchronized void onTimeout() {
+		if (isDone()) {
+			return;
+		}
+		
+		if (expected != null) {
+			for (String serverId : expected) {
+				if (!results.containsKey(serverId)) {
+					failures.putIfAbsent(serverId, new QueryTimeoutException("Timeout"));
+				}
+			}
+		}
+		
+		// Anyone still waiting on a particular server will not get an answer now
+		for (SettableFuture<String> serverFuture : serverFutures.values()) {
+			serverFuture.setException(new QueryTimeoutException("Timeout"));
+		}
+		
+		set(new MultiQueryResult(results, failures, latencies));
+	}
+}
@@ -0,0 +1,85 @@
+package au.com.addstar.comp.redis;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Sets;
+
+/**
+ * The replies to a query sent to many servers at once
+ */
+public class MultiQueryResult {
+	private final Map<String, String> results;
+	private final Map<String, QueryException> failures;
+	private final Map<String, Long> latencies;
+	
+	MultiQueryResult(Map<String, String> results, Map<String, QueryException> failures, Map<String, Long> latencies) {
+		this.results = ImmutableMap.copyOf(results);
+		this.failures = ImmutableMap.copyOf(failures);
+		this.latencies = ImmutableMap.copyOf(latencies);
+	}
+	
+	/**
+	 * Gets the values returned by each server that answered successfully
+	 * @return An unmodifiable map of server id to returned value
+	 */
+	public Map<String, String> getResults() {
+		return results;
+	}
+	
+	/**
+	 * Gets the servers that did not answer successfully. Expected servers
+	 * that did not answer in time will have a {@link QueryTimeoutException}
+	 * @return An unmodifiable map of server id to the problem
+	 */
+	public Map<String, QueryException> getFailures() {
+		return failures;
+	}
+	
+	/**
+	 * Gets every server that answered or was expected to
+	 * @return An unmodifiable set of server ids
+	 */
+	public Set<String> getServers() {
+		return Collections.unmodifiableSet(Sets.union(results.keySet(), failures.keySet()));
+	}
+	
+	/**
+	 * Checks if a server answered successfully
+	 * @param serverId The id of the server
+	 * @return True if there is a result for it
+	 */
+	public boolean isSuccess(String serverId) {
+		return results.containsKey(serverId);
+	}
+	
+	/**
+	 * Gets the value returned by a server
+	 * @param serverId The id of the server
+	 * @return The value
+	 * @throws QueryException Thrown if the server replied with an error, or did not reply at all
+	 */
+	public String get(String serverId) throws QueryException {
+		String result = results.get(serverId);
+		if (result != null) {
+			return result;
+		}
+		
+		QueryException failure = failures.get(serverId);
+		if (failure != null) {
+			throw failure;
+		}
+		throw new QueryTimeoutException("Timeout");
+	}
+	
+	/**
+	 * Gets how long a server took to answer
+	 * @param serverId The id of the server
+	 * @return The time in ms, or -1 if it did not answer
+	 */
+	public long getLatency(String serverId) {
+		return latencies.getOrDefault(serverId, -1L);
+	}
+}
@@ -0,0 +1,53 @@
+package au.com.addstar.comp.redis;
+
+import com.google.common.util.concurrent.AbstractFuture;
+
+import io.netty.util.Timeout;
+
+/**
+ * A query that has been sent and is waiting for replies
+ * @param <T> The result type
+ */
+abstract class PendingQuery<T> extends AbstractFuture<T> {
+	private final long queryId;
+	private final long startTime;
+	volatile Timeout timeout;
+	
+	PendingQuery(long queryId) {
+		this.queryId = queryId;
+		startTime = System.nanoTime();
+	}
+	
+	public long getQueryId() {
+		return queryId;
+	}
+	
+	/**
+	 * Gets the time since this query was sent
+	 * @return The elapsed time in ms
+	 */
+	long getElapsed() {
+		return (System.nanoTime() - startTime) / 1000000;
+	}
+	
+	/**
+	 * Called when a reply arrives for this query
+	 * @param serverId The server that replied
+	 * @param value The returned value, or null if it was an error
+	 * @param error The error message if value is null
+	 */
+	abstract void onReply(String serverId, String value, String error);
+	
+	/**
+	 * Called when the time allowed for replies has passed
+	 */
+	abstract void onTimeout();
+	
+	/**
+	 * Fails this query without waiting for any more replies
+	 * @param throwable The reason
+	 */
+	void fail(Throwable throwable) {
+		setException(throwable);
+	}
+}
@@ -0,0 +1,10 @@
+package au.com.addstar.comp.redis;
+
+public interface PresenceListener {
+	/**
+	 * Called when a server sends a heartbeat. This is not called on the main thread
+	 * @param serverId The id of the server
+	 * @param presence The status it sent
+	 */
+	void onPresence(String serverId, ServerPresence presence);
+}
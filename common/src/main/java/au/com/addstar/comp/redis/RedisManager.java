@@ -1,76 +1,209 @@
 package au.com.addstar.comp.redis;
 
+import java.nio.charset.StandardCharsets;
 import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
 import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 import org.apache.commons.lang3.StringUtils;
 import org.bukkit.configuration.ConfigurationSection;
 
-import com.google.common.base.Strings;
-import com.google.common.collect.ArrayListMultimap;
-import com.google.common.collect.ListMultimap;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Maps;
-import com.google.common.util.concurrent.AbstractFuture;
+import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.lambdaworks.redis.RedisClient;
 import com.lambdaworks.redis.RedisException;
-import com.lambdaworks.redis.RedisURI;
-import com.lambdaworks.redis.pubsub.RedisPubSubListener;
-import com.lambdaworks.redis.pubsub.StatefulRedisPubSubConnection;
-import com.lambdaworks.redis.pubsub.api.async.RedisPubSubAsyncCommands;
-import com.lambdaworks.redis.pubsub.api.sync.RedisPubSubCommands;
+
+import io.netty.util.HashedWheelTimer;
+import io.netty.util.Timeout;
+import io.netty.util.Timer;
 
 public class RedisManager {
 	static final String RedisKey = "cmgr";
 	static final String RedisBcastKey = "cmgr.b";
 	
+	/**
+	 * How long a query may wait for a reply before it is failed,
+	 * unless the config or caller says otherwise
+	 */
+	private static final long QueryTimeout = TimeUnit.SECONDS.toMillis(10);
+	
+	/**
+	 * Timeouts in ms for commands that should fail fast.
+	 * Used when the config has no timeouts section
+	 */
+	private static final Map<String, Long> DefaultCommandTimeouts = ImmutableMap.of(
+		"ping", 2000L,
+		"entrant_count", 3000L,
+		"is_entrant", 3000L,
+		"backup_status", 3000L
+	);
+	
+	/**
+	 * Limits for the dispatch pool of each query handler class.
+	 * Queries beyond this are answered with an error instead of piling up
+	 */
+	private static final int HandlerThreads = 2;
+	private static final int HandlerQueueSize = 100;
+	
+	/**
+	 * Read only commands that may share a query when asked for at the
+	 * same time, and how long in ms their result may be reused for.
+	 * Used when the config has no coalesce section
+	 */
+	private static final Map<String, Long> DefaultCoalescedCommands = ImmutableMap.of(
+		"ping", 0L,
+		"entrant_count", 1000L,
+		"is_entrant", 0L,
+		"backup_status", 0L
+	);
+	
 	private final ConfigurationSection redisConfig;
 	
-	private final Map<String, RedisQueryHandler> queryHandlers;
+	private final Map<String, HandlerRegistration> queryHandlers;
+	private final Map<Class<?>, ExecutorService> handlerExecutors;
+	private volatile Executor mainThreadExecutor;
 	
-	private RedisClient client;
-	private RedisPubSubAsyncCommands<String, String> subscribeConnection;
-	private RedisPubSubCommands<String, String> publishConnection;
-	private RedisHandler handler;
+	private final MessageTransport transport;
 	private final String serverId;
 	private CommandReceiver commandReceiver;
+	private PresenceListener presenceListener;
+	private final boolean durableCommands;
+	private DurableCommandQueue commandQueue;
 	private final ExecutorService executors;
 	
-	private long nextQueryID;
-	private final ReentrantLock waitingLock = new ReentrantLock();
-	private final ListMultimap<String, WaitFuture> waitingFutures;
+	private final AtomicLong nextQueryID;
+	private final ConcurrentMap<Long, PendingQuery<?>> waitingFutures;
+	private final Timer timeoutTimer;
+	
+	// Query coalescing
+	private final Map<String, Long> coalescedCommands;
+	private final Map<String, Long> commandTimeouts;
+	private final long defaultTimeout;
+	private final ConcurrentMap<String, SharedQuery> sharedQueries;
+	
+	// Protocol negotiation
+	private final int maxVersion;
+	private final int defaultPeerVersion;
+	private final ConcurrentMap<String, Integer> peerVersions;
+	
+	private final ConcurrentMap<String, byte[]> sendChannels;
+	private final byte[] broadcastChannel;
 	
 	public RedisManager(ConfigurationSection redisConfig, String serverID) {
+		this(redisConfig, serverID, createTransport(redisConfig));
+	}
+	
+	/**
+	 * Creates a manager that sends through a specific transport
+	 * @param redisConfig The redis config section
+	 * @param serverID The id of this server
+	 * @param transport The transport to use
+	 */
+	public RedisManager(ConfigurationSection redisConfig, String serverID, MessageTransport transport) {
 		this.serverId = serverID;
 		this.redisConfig = redisConfig;
-		queryHandlers = Maps.newHashMap();
-		nextQueryID = 0;
-		waitingFutures = ArrayListMultimap.create();
+		this.transport = transport;
+		queryHandlers = new ConcurrentHashMap<>();
+		handlerExecutors = Maps.newHashMap();
+		nextQueryID = new AtomicLong();
+		waitingFutures = new ConcurrentHashMap<>();
 		executors = Executors.newCachedThreadPool();
+		// Coarse ticks are fine, timeouts only need to be accurate to within a fraction of a second
+		timeoutTimer = new HashedWheelTimer(r -> {
+			Thread thread = new Thread(r, "CompManager Redis Timeouts");
+			thread.setDaemon(true);
+			return thread;
+		}, 100, TimeUnit.MILLISECONDS, 128);
+		
+		// auto: talk binary to servers that have announced it, and text to everyone else
+		// legacy: never send binary, for rolling back
+		// binary: assume every server understands binary
+		String protocol = redisConfig.getString("protocol", "auto");
+		maxVersion = (protocol.equalsIgnoreCase("legacy") ? MessageCodec.LegacyVersion : MessageCodec.Version);
+		defaultPeerVersion = (protocol.equalsIgnoreCase("binary") ? MessageCodec.Version : MessageCodec.LegacyVersion);
+		peerVersions = new ConcurrentHashMap<>();
+		
+		ConfigurationSection coalesceSection = redisConfig.getConfigurationSection("coalesce");
+		if (coalesceSection != null) {
+			ImmutableMap.Builder<String, Long> builder = ImmutableMap.builder();
+			for (String command : coalesceSection.getKeys(false)) {
+				builder.put(command.toLowerCase(), Math.max(0, coalesceSection.getLong(command)));
+			}
+			coalescedCommands = builder.build();
+		} else {
+			coalescedCommands = DefaultCoalescedCommands;
+		}
+		sharedQueries = new ConcurrentHashMap<>();
+		
+		ConfigurationSection timeoutSection = redisConfig.getConfigurationSection("timeouts");
+		if (timeoutSection != null) {
+			ImmutableMap.Builder<String, Long> builder = ImmutableMap.builder();
+			for (String command : timeoutSection.getKeys(false)) {
+				if (!command.equalsIgnoreCase("default")) {
+					builder.put(command.toLowerCase(), Math.max(1, timeoutSection.getLong(command)));
+				}
+			}
+			commandTimeouts = builder.build();
+			defaultTimeout = Math.max(1, timeoutSection.getLong("default", QueryTimeout));
+		} else {
+			commandTimeouts = DefaultCommandTimeouts;
+			defaultTimeout = QueryTimeout;
+		}
+		
+		durableCommands = redisConfig.getBoolean("durable-commands", false);
+		
+		sendChannels = new ConcurrentHashMap<>();
+		broadcastChannel = (RedisBcastKey + "." + serverId).getBytes(StandardCharsets.UTF_8);
 	}
 	
-	public void initialize() throws RedisException {
-		RedisURI uri = new RedisURI(redisConfig.getString("host", "localhost"), redisConfig.getInt("port", 6379), 30, TimeUnit.SECONDS);
-		if (!Strings.isNullOrEmpty(redisConfig.getString("password"))) {
-			uri.setPassword(redisConfig.getString("password"));
+	private static MessageTransport createTransport(ConfigurationSection redisConfig) {
+		if (redisConfig.getString("transport", "redis").equalsIgnoreCase("loopback")) {
+			return new LoopbackTransport(redisConfig);
+		} else {
+			return new LettuceTransport(redisConfig);
 		}
+	}
+	
+	public void initialize() throws RedisException {
+		transport.connect(new RedisHandler());
+		transport.psubscribe((RedisKey + ".*>" + serverId).getBytes(StandardCharsets.UTF_8));
+		transport.psubscribe((RedisBcastKey + ".*").getBytes(StandardCharsets.UTF_8));
 		
-		client = RedisClient.create(uri);
-		// Create the connection for subscribing
-		StatefulRedisPubSubConnection<String, String> connection = client.connectPubSub();
-		subscribeConnection = connection.async();
-		
-		handler = new RedisHandler();
-		subscribeConnection.addListener(handler);
-		subscribeConnection.psubscribe(RedisKey + ".*>" + serverId );
-		subscribeConnection.psubscribe(RedisBcastKey + ".*");
+		// Let everyone know which protocol we speak. Older servers ignore this
+		if (maxVersion > MessageCodec.LegacyVersion) {
+			transport.publish(broadcastChannel, MessageCodec.encode(Message.hello(), maxVersion));
+		}
 		
-		// Create the connection for publishing
-		connection = client.connectPubSub();
-		publishConnection = connection.sync();
+		// Always listen for queued commands, even if we do not send them ourselves.
+		// This needs a real redis server
+		if (transport instanceof LettuceTransport) {
+			RedisClient client = ((LettuceTransport)transport).getClient();
+			commandQueue = new DurableCommandQueue(client, serverId, redisConfig.getInt("durable-commands-max-length", 1000), this::handleCommand);
+			if (commandReceiver != null) {
+				commandQueue.start();
+			}
+		}
 	}
 	
 	/**
@@ -81,23 +214,70 @@ public class RedisManager {
 	 */
 	public void setCommandReceiver(CommandReceiver receiver) {
 		this.commandReceiver = receiver;
+		
+		// Queued commands are taken off the queue when received so wait until there is something to give them to
+		if (commandQueue != null && receiver != null) {
+			commandQueue.start();
+		}
 	}
 	
 	/**
-	 * Sends a command to the target server
+	 * Sends a command to the target server.
+	 * If durable commands are enabled, the command is queued
+	 * so that it is received even if the server is not running.
+	 * This is sent asynchronously
 	 * @param serverId The id of the server to receive it
 	 * @param command The command to send
 	 */
 	public void sendCommand(String serverId, String command) {
-		send(serverId, "c\01" + command);
+		if (durableCommands && commandQueue != null) {
+			executors.submit(() -> {
+				try {
+					commandQueue.push(serverId, command);
+				} catch (RedisException e) {
+					Logger.getLogger("CompManager").log(Level.WARNING, "Failed to queue command for " + serverId, e);
+				}
+			});
+		} else {
+			send(serverId, Message.command(command));
+		}
 	}
 	
 	/**
-	 * Sends a command to the target server
+	 * Sets the listener to receive heartbeats sent
+	 * through {@link #broadcastPresence(ServerPresence)}
+	 *
+	 * @param listener The listener
+	 */
+	public void setPresenceListener(PresenceListener listener) {
+		this.presenceListener = listener;
+	}
+	
+	/**
+	 * Sends a heartbeat to every server. This is sent asynchronously
+	 * @param presence The status of this server
+	 */
+	public void broadcastPresence(ServerPresence presence) {
+		Message message = Message.presence(presence.toFields());
+		executors.submit(() -> broadcast(message));
+	}
+	
+	/**
+	 * Sends a command to every server.
+	 * This is never queued as there is no way to know every receiver
 	 * @param command The command to send
 	 */
 	public void broadcastCommand(String command) {
-		broadcast("c\01" + command);
+		broadcast(Message.command(command));
+	}
+	
+	/**
+	 * Sets the executor used for handlers that need to run on the main thread.
+	 * Until this is set, those handlers use their dispatch pool like any other.
+	 * @param executor The main thread executor
+	 */
+	public void setMainThreadExecutor(Executor executor) {
+		this.mainThreadExecutor = executor;
 	}
 	
 	/**
@@ -106,125 +286,324 @@ public class RedisManager {
 	 * @param commands The commands to register against
 	 */
 	public void registerQueryHandler(RedisQueryHandler handler, String... commands) {
+		AsyncQueryHandler wrapper = new AsyncQueryHandler() {
+			@Override
+			public CompletableFuture<String> onQuery(String command, String[] arguments) {
+				CompletableFuture<String> future = new CompletableFuture<>();
+				try {
+					future.complete(handler.onQuery(command, arguments));
+				} catch (QueryException e) {
+					future.completeExceptionally(e);
+				}
+				return future;
+			}
+			
+			@Override
+			public boolean runsOnMainThread() {
+				return handler.runsOnMainThread();
+			}
+		};
+		
+		register(wrapper, handler.getClass(), commands);
+	}
+	
+	/**
+	 * Registers a query handler for one or more commands
+	 * @param handler The handler to register
+	 * @param commands The commands to register against
+	 */
+	public void registerQueryHandler(AsyncQueryHandler handler, String... commands) {
+		register(handler, handler.getClass(), commands);
+	}
+	
+	private void register(AsyncQueryHandler handler, Class<?> handlerClass, String[] commands) {
+		ExecutorService executor;
+		synchronized (handlerExecutors) {
+			executor = handlerExecutors.computeIfAbsent(handlerClass, type -> {
+				ThreadFactory factory = new ThreadFactoryBuilder()
+						.setNameFormat("CompManager Query " + type.getSimpleName() + " %d")
+						.setDaemon(true)
+						.build();
+				ThreadPoolExecutor pool = new ThreadPoolExecutor(HandlerThreads, HandlerThreads, 60, TimeUnit.SECONDS, new ArrayBlockingQueue<>(HandlerQueueSize), factory);
+				pool.allowCoreThreadTimeOut(true);
+				return pool;
+			});
+		}
+		
+		HandlerRegistration registration = new HandlerRegistration(handler, executor);
 		for (String command : commands) {
-			queryHandlers.put(command.toLowerCase(), handler);
+			queryHandlers.put(command.toLowerCase(), registration);
 		}
 	}
 	
 	/**
-	 * Queries a particular server for some information
+	 * Queries a particular server for some information.
+	 * The query uses the timeout configured for the command.
+	 *
 	 * @param serverId The ID of the server to query
 	 * @param command The command to use
 	 * @param args Any arguments needed
 	 * @return A future to get the result
+	 * @see #query(String, String, long, String...)
 	 */
 	public ListenableFuture<String> query(String serverId, String command, String... args) {
-		// Prepare the data string
-		long queryId = nextQueryID++;
-		String data = String.format("q\01%d\01%s\01%s", queryId, command, StringUtils.join(args, '\01'));
-
-		WaitFuture future = new WaitFuture(queryId);
-		executors.submit(() -> {
-			waitingLock.lock();
-			try {
-				waitingFutures.put(serverId, future);
-			}finally {
-				waitingLock.unlock();
+		return query(serverId, command, getTimeout(command), args);
+	}
+	
+	/**
+	 * Queries a particular server for some information.
+	 * The deadline is sent along so the server can skip the query if it
+	 * cannot get to it in time.
+	 * <p>
+	 * Identical queries for commands configured to be coalesced
+	 * share a single request while it is in flight, and for a short
+	 * time afterwards if the command has a result TTL.
+	 *
+	 * @param serverId The ID of the server to query
+	 * @param command The command to use
+	 * @param timeout The maximum time to wait for a reply in ms
+	 * @param args Any arguments needed
+	 * @return A future to get the result
+	 */
+	public ListenableFuture<String> query(String serverId, String command, long timeout, String... args) {
+		Long resultTTL = coalescedCommands.get(command.toLowerCase());
+		if (resultTTL == null) {
+			return sendQuery(serverId, command, timeout, args);
+		}
+		
+		String key = serverId + '\0' + command.toLowerCase() + '\0' + timeout + '\0' + StringUtils.join(args, '\0');
+		SharedQuery shared = sharedQueries.compute(key, (k, existing) -> {
+			if (existing != null && existing.isUsable()) {
+				return existing;
 			}
-				send(serverId, data);
+			return new SharedQuery();
 		});
+		
+		// Only the first caller actually sends it
+		if (shared.claim()) {
+			ListenableFuture<String> future = sendQuery(serverId, command, timeout, args);
+			shared.setFuture(future);
+			future.addListener(() -> {
+				if (resultTTL > 0 && shared.isUsable()) {
+					timeoutTimer.newTimeout(t -> sharedQueries.remove(key, shared), resultTTL, TimeUnit.MILLISECONDS);
+					shared.setExpiry(System.currentTimeMillis() + resultTTL);
+				} else {
+					sharedQueries.remove(key, shared);
+				}
+			}, MoreExecutors.directExecutor());
+		}
+		
+		return shared.getFuture();
+	}
+	
+	/**
+	 * Gets the configured timeout for a command
+	 * @param command The command
+	 * @return The timeout in ms
+	 */
+	public long getTimeout(String command) {
+		return commandTimeouts.getOrDefault(command.toLowerCase(), defaultTimeout);
+	}
+	
+	private ListenableFuture<String> sendQuery(String serverId, String command, long timeout, String[] args) {
+		long queryId = nextQueryID.getAndIncrement();
+		Message message = Message.query(queryId, command, args, System.currentTimeMillis() + timeout);
+
+		WaitFuture future = new WaitFuture(queryId, serverId);
+		track(future, timeout);
+		
+		executors.submit(() -> send(serverId, message));
+		return future;
+	}
+	
+	/**
+	 * Queries every server at once with a single broadcast.
+	 * The returned future completes once all expected servers have answered,
+	 * or when the timeout passes, whichever is first.
+	 * Replies from servers not in {@code serverIds} are still collected.
+	 *
+	 * @param serverIds The ids of the servers expected to answer. Any that do not answer in time will be failed with a {@link QueryTimeoutException}
+	 * @param command The command to use
+	 * @param timeout The maximum time to wait for replies in ms
+	 * @param args Any arguments needed
+	 * @return A future to get the results of all servers, or of each server individually
+	 */
+	public MultiQueryFuture queryAll(Collection<String> serverIds, String command, long timeout, String... args) {
+		long queryId = nextQueryID.getAndIncrement();
+		Message message = Message.query(queryId, command, args, System.currentTimeMillis() + timeout);
+		
+		MultiQueryFuture future = new MultiQueryFuture(queryId, serverIds);
+		track(future, timeout);
+		
+		executors.submit(() -> broadcast(message));
 		return future;
 	}
 	
-	private void send(String targetId, String data) {
-		publishConnection.publish(String.format("%s.%s>%s", RedisKey,serverId, targetId), data);
+	/**
+	 * Queries every server at once with a single broadcast.
+	 * As no servers are expected, the returned future always completes
+	 * after the timeout with every reply received by then.
+	 *
+	 * @param command The command to use
+	 * @param timeout The time to wait for replies in ms
+	 * @param args Any arguments needed
+	 * @return A future to get the results of all servers, or of each server individually
+	 */
+	public MultiQueryFuture queryAll(String command, long timeout, String... args) {
+		return queryAll(null, command, timeout, args);
+	}
+	
+	private void track(PendingQuery<?> future, long timeout) {
+		long queryId = future.getQueryId();
+		waitingFutures.put(queryId, future);
+		future.timeout = timeoutTimer.newTimeout(t -> future.onTimeout(), timeout, TimeUnit.MILLISECONDS);
+		// However the future completes, it no longer needs to be tracked
+		future.addListener(() -> {
+			waitingFutures.remove(queryId, future);
+			future.timeout.cancel();
+		}, MoreExecutors.directExecutor());
+	}
+	
+	/**
+	 * Gets the protocol version to use when sending to a server
+	 * @param targetId The id of the server
+	 * @return The version
+	 */
+	private int getPeerVersion(String targetId) {
+		return Math.min(maxVersion, peerVersions.getOrDefault(targetId, defaultPeerVersion));
+	}
+	
+	private void send(String targetId, Message message) {
+		send(targetId, message, getPeerVersion(targetId));
 	}
 	
-	private void broadcast(String data) {
-		publishConnection.publish(String.format("%s.%s", RedisBcastKey, serverId), data);
+	private void send(String targetId, Message message, int version) {
+		byte[] channel = sendChannels.computeIfAbsent(targetId, id -> String.format("%s.%s>%s", RedisKey, serverId, id).getBytes(StandardCharsets.UTF_8));
+		transport.publish(channel, MessageCodec.encode(message, version));
 	}
 	
-	private void handleQuery(String serverId, long queryId, String command, String[] args) {
-		RedisQueryHandler handler = queryHandlers.get(command.toLowerCase());
-		String data;
-		if (handler == null) {
+	private void broadcast(Message message) {
+		// We cannot know every listener, so only use binary if told everyone understands it
+		transport.publish(broadcastChannel, MessageCodec.encode(message, Math.min(maxVersion, defaultPeerVersion)));
+	}
+	
+	private void handleQuery(String serverId, Message query) {
+		HandlerRegistration registration = queryHandlers.get(query.getCommand().toLowerCase());
+		if (registration == null) {
 			// Unknown command
-			data = String.format("e\01%d\01%s", queryId, "Unknown Command");
-		} else {
-			try {
-				String result = handler.onQuery(command, args);
-				data = String.format("r\01%d\01%s", queryId, result);
-			} catch (QueryException e) {
-				data = String.format("e\01%d\01%s", queryId, e.getMessage());
-			}
+			sendReply(serverId, query, Message.error(query.getQueryId(), "Unknown Command"));
+			return;
 		}
 		
-		// Reply
-		send(serverId, data);
-	}
-	
-	private void handleReply(String serverId, long queryId, String retVal, String error) {
-				waitingLock.lock();
+		// Never run handlers on the connection thread, a slow one would hold up every other message
+		Executor executor = registration.executor;
+		if (registration.handler.runsOnMainThread() && mainThreadExecutor != null) {
+			executor = mainThreadExecutor;
+		}
+		
+		try {
+			executor.execute(() -> {
+				// Nobody is waiting for the answer anymore
+				if (query.getDeadline() != 0 && System.currentTimeMillis() > query.getDeadline()) {
+					return;
+				}
+				
+				CompletableFuture<String> result;
 				try {
-					List<WaitFuture> futures = waitingFutures.get(serverId);
-
-					// Find and handle the correct future
-					for (WaitFuture future : futures) {
-						if (future.getQueryId() == queryId) {
-							// All done
-							if (retVal != null) {
-								future.set(retVal);
-							} else {
-								future.setException(new QueryException(error));
-							}
-
-							futures.remove(future);
-							break;
-						}
-					}
-				}finally {
-					waitingLock.unlock();
+					result = registration.handler.onQuery(query.getCommand(), query.getArgs());
+				} catch (Throwable e) {
+					result = new CompletableFuture<>();
+					result.completeExceptionally(e);
 				}
-			
-			// Remove expired futures
-			timeoutOldQueries();
+				
+				result.whenComplete((value, error) -> {
+					if (error instanceof CompletionException && error.getCause() != null) {
+						error = error.getCause();
+					}
+					
+					if (error == null) {
+						sendReply(serverId, query, Message.reply(query.getQueryId(), value));
+					} else if (error instanceof QueryException) {
+						sendReply(serverId, query, Message.error(query.getQueryId(), error.getMessage()));
+					} else {
+						Logger.getLogger("CompManager").log(Level.WARNING, "Query handler for " + query.getCommand() + " failed", error);
+						sendReply(serverId, query, Message.error(query.getQueryId(), "Internal Error"));
+					}
+				});
+			});
+		} catch (RejectedExecutionException e) {
+			sendReply(serverId, query, Message.error(query.getQueryId(), "Server Busy"));
+		}
+	}
+	
+	private void sendReply(String serverId, Message query, Message reply) {
+		// Reply in the same protocol that was used to ask
+		send(serverId, reply, Math.min(maxVersion, query.getVersion()));
 	}
 	
 	/**
-	 * Times out all old queries
+	 * Called when a server announces itself, usually because it just started
 	 */
-	public void timeoutOldQueries() {
-		if (waitingLock.tryLock()) {
-			try {
-				Iterator<WaitFuture> it = waitingFutures.values().iterator();
-				while (it.hasNext()) {
-					WaitFuture future = it.next();
-					if (future.isOld()) {
-						future.setException(new QueryTimeoutException("Timeout"));
-						it.remove();
-					}
-				}
-			} finally {
-				// Required to solve the "IllegalMonitorStateException" when calling unlock
-				if (waitingLock.isLocked() && waitingLock.isHeldByCurrentThread()) {
-					waitingLock.unlock();
-				}
-			}
+	private void handleHello(String serverId, Message hello) {
+		// Answer so they know our version too
+		if (maxVersion > MessageCodec.LegacyVersion) {
+			send(serverId, Message.hello(), Math.min(maxVersion, hello.getVersion()));
 		}
 	}
 	
+	private void handleReply(String serverId, long queryId, String retVal, String error) {
+		PendingQuery<?> future = waitingFutures.get(queryId);
+		// Ignore late replies
+		if (future == null) {
+			return;
+		}
+		
+		future.onReply(serverId, retVal, error);
+	}
+	
 	private void handleCommand(String sourceId, String command) {
 		if (commandReceiver != null) {
 			commandReceiver.onReceive(sourceId, command);
 		}
 	}
 	
+	private void handlePresence(String sourceId, Message message) {
+		if (presenceListener == null) {
+			return;
+		}
+		
+		ServerPresence presence;
+		try {
+			presence = ServerPresence.fromFields(message.getArgs());
+		} catch (IllegalArgumentException e) {
+			Logger.getLogger("CompManager").warning("Dropped heartbeat from " + sourceId + ": " + e.getMessage());
+			return;
+		}
+		presenceListener.onPresence(sourceId, presence);
+	}
+	
 	/**
 	 * Shuts down Redis connections and cleans up resources.
 	 */
 	public void shutdown() {
-		if (client != null) {
-			client.shutdown();
+		if (commandQueue != null) {
+			commandQueue.stop();
+		}
+		transport.shutdown();
+		
+		// Fail anything still waiting, nothing will answer them now
+		for (Timeout timeout : timeoutTimer.stop()) {
+			timeout.cancel();
+		}
+		for (PendingQuery<?> future : waitingFutures.values()) {
+			future.fail(new QueryException("Shutting down"));
+		}
+		sharedQueries.clear();
+		
+		synchronized (handlerExecutors) {
+			for (ExecutorService executor : handlerExecutors.values()) {
+				executor.shutdown();
+			}
 		}
 		
 		if (executors != null) {
@@ -243,13 +622,17 @@ public class RedisManager {
 	/**
 	 * A Pub-Sub handler
 	 */
-	private class RedisHandler implements RedisPubSubListener<String, String> {
+	private class RedisHandler implements MessageTransport.Listener {
 		@Override
-		public void message(String pattern, String channel, String message) {
+		public void onMessage(byte[] rawPattern, byte[] rawChannel, byte[] data) {
+			String pattern = new String(rawPattern, StandardCharsets.UTF_8);
+			String channel = new String(rawChannel, StandardCharsets.UTF_8);
+			
 			// Get the source server
 			String sourceId;
+			boolean isBroadcast = pattern.startsWith(RedisBcastKey);
 			
-			if (pattern.startsWith(RedisBcastKey)) {
+			if (isBroadcast) {
 				// Broadcast
 				int pos = pattern.indexOf('*');
 				sourceId = channel.substring(pos);
@@ -267,79 +650,145 @@ public class RedisManager {
 				return;
 			}
 			
-			// Extract the parameters
-			String[] dataParts = message.split("\01");
-			String type = dataParts[0];
-			long queryId;
+			Message message;
+			try {
+				message = MessageCodec.decode(data);
+			} catch (IllegalArgumentException e) {
+				Logger.getLogger("CompManager").warning("Dropped malformed message from " + sourceId + ": " + e.getMessage());
+				return;
+			}
+			
+			if (message == null) {
+				// Not something we understand
+				return;
+			}
 			
-			switch (type) {
-			case "q": // query
-				String command = dataParts[2];
-				String[] args = Arrays.copyOfRange(dataParts, 3, dataParts.length);
-				queryId = Long.parseLong(dataParts[1]);
-				handleQuery(sourceId, queryId, command, args);
+			// Broadcasts are encoded for the oldest possible listener, so only
+			// hellos and direct messages say which version the sender speaks
+			if (!isBroadcast || message.getType() == Message.Type.Hello) {
+				peerVersions.put(sourceId, message.getVersion());
+			}
+			
+			switch (message.getType()) {
+			case Query:
+				handleQuery(sourceId, message);
+				break;
+			case Reply:
+				handleReply(sourceId, message.getQueryId(), message.getValue(), null);
 				break;
-			case "r": // reply
-				queryId = Long.parseLong(dataParts[1]);
-				String retVal = dataParts[2];
-				handleReply(sourceId, queryId, retVal, null);
+			case Error:
+				handleReply(sourceId, message.getQueryId(), null, message.getValue());
 				break;
-			case "e": // error
-				queryId = Long.parseLong(dataParts[1]);
-				String error = dataParts[2];
-				handleReply(sourceId, queryId, null, error);
+			case Command:
+				handleCommand(sourceId, message.getCommand());
 				break;
-			case "c": // command
-				handleCommand(sourceId, StringUtils.join(dataParts, '\01', 1, dataParts.length));
+			case Presence:
+				handlePresence(sourceId, message);
+				break;
+			case Hello:
+				// Only answer announcements, answering answers would never end
+				if (isBroadcast) {
+					handleHello(sourceId, message);
+				}
 				break;
 			}
 		}
+	}
+	
+	private static class HandlerRegistration {
+		private final AsyncQueryHandler handler;
+		private final Executor executor;
 		
-		@Override
-		public void message(String channel, String message) {}
-
-		@Override
-		public void subscribed(String channel, long count) {}
-
-		@Override
-		public void psubscribed(String pattern, long count) {}
-
-		@Override
-		public void unsubscribed(String channel, long count) {}
-
-		@Override
-		public void punsubscribed(String pattern, long count) {}
+		public HandlerRegistration(AsyncQueryHandler handler, Executor executor) {
+			this.handler = handler;
+			this.executor = executor;
+		}
 	}
 	
-	private static class WaitFuture extends AbstractFuture<String> {
-		private final long queryId;
-		private final long initializeTime;
+	/**
+	 * A query that may be shared between identical callers
+	 */
+	private static class SharedQuery {
+		private final AtomicBoolean claimed = new AtomicBoolean();
+		private final SettableFuture<String> result = SettableFuture.create();
+		private volatile long expiry = Long.MAX_VALUE;
+		
+		/**
+		 * Claims the right to send this query
+		 * @return True if the caller should send it
+		 */
+		public boolean claim() {
+			return claimed.compareAndSet(false, true);
+		}
+		
+		public void setFuture(ListenableFuture<String> future) {
+			result.setFuture(future);
+		}
 		
-		public WaitFuture(long queryId) {
-			this.queryId = queryId;
-			initializeTime = System.currentTimeMillis();
+		public ListenableFuture<String> getFuture() {
+			return result;
 		}
 		
-		public long getQueryId() {
-			return queryId;
+		public void setExpiry(long expiry) {
+			this.expiry = expiry;
 		}
 		
 		/**
-		 * Is this future too old (> 10 seconds)
-		 * @return True if too old
+		 * Checks if another caller can use this query
+		 * @return False if it failed or the result has expired
 		 */
-		public boolean isOld() {
-			return System.currentTimeMillis() > initializeTime + 10000;
+		public boolean isUsable() {
+			if (!result.isDone()) {
+				return true;
+			}
+			
+			if (System.currentTimeMillis() >= expiry) {
+				return false;
+			}
+			
+			try {
+				Futures.getDone(result);
+				return true;
+			} catch (ExecutionException | CancellationException e) {
+				// Failures are never shared once known
+				return false;
+			}
+		}
+	}
+	
+	private static class WaitFuture extends PendingQuery<String> {
+		private final String serverId;
+		
+		public WaitFuture(long queryId, String serverId) {
+			super(queryId);
+			this.serverId = serverId;
+		}
+		
+		/**
+		 * Gets the id of the server this query was sent to
+		 * @return The server id
+		 */
+		public String getServerId() {
+			return serverId;
 		}
 		
 		@Override
-		public boolean set(String value) {
-			return super.set(value);
+		void onReply(String serverId, String value, String error) {
+			// Ignore replies from a server that was not asked
+			if (!this.serverId.equals(serverId)) {
+				return;
+			}
+			
+			if (value != null) {
+				set(value);
+			} else {
+				setException(new QueryException(error));
+			}
 		}
 		
 		@Override
-		public boolean setException(Throwable throwable) {
-			return super.setException(throwable);
+		void onTimeout() {
+			setException(new QueryTimeoutException("Timeout"));
 		}
 	}
 }
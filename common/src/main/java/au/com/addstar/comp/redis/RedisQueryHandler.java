@@ -1,5 +1,9 @@
 package au.com.addstar.comp.redis;
 
+/**
+ * A query handler that answers straight away.
+ * See {@link AsyncQueryHandler} for handlers that need to wait on something
+ */
 public interface RedisQueryHandler {
 	/**
 	 * Called to query some data
@@ -9,4 +13,13 @@ public interface RedisQueryHandler {
 	 * @throws QueryException thrown to indicate a problem
 	 */
 	String onQuery(String command, String[] arguments) throws QueryException;
+	
+	/**
+	 * Handlers that touch Bukkit state can return true here
+	 * to be called on the server main thread instead
+	 * @return True to run on the main thread
+	 */
+	default boolean runsOnMainThread() {
+		return false;
+	}
 }
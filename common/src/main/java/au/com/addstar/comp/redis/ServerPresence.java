@@ -0,0 +1,88 @@
+package au.com.addstar.comp.redis;
+
+import java.util.Map;
+
+import com.google.common.collect.Maps;
+
+/**
+ * The status a comp server sends with each heartbeat
+ */
+public class ServerPresence {
+	private final double tps;
+	private final int players;
+	private final String state;
+	private final int usedPlots;
+	private final int maxPlots;
+	
+	public ServerPresence(double tps, int players, String state, int usedPlots, int maxPlots) {
+		this.tps = tps;
+		this.players = players;
+		this.state = state;
+		this.usedPlots = usedPlots;
+		this.maxPlots = maxPlots;
+	}
+	
+	public double getTps() {
+		return tps;
+	}
+	
+	public int getPlayers() {
+		return players;
+	}
+	
+	/**
+	 * Gets the state of the current comp
+	 * @return The name of the state
+	 */
+	public String getState() {
+		return state;
+	}
+	
+	public int getUsedPlots() {
+		return usedPlots;
+	}
+	
+	/**
+	 * Gets the max entrants of the current comp
+	 * @return The max, or 0 if there is no comp
+	 */
+	public int getMaxPlots() {
+		return maxPlots;
+	}
+	
+	/**
+	 * Converts this into name, value pairs for sending
+	 */
+	String[] toFields() {
+		return new String[] {
+			"tps", String.valueOf(Math.round(tps * 100) / 100.0),
+			"players", String.valueOf(players),
+			"state", state,
+			"used", String.valueOf(usedPlots),
+			"max", String.valueOf(maxPlots)
+		};
+	}
+	
+	/**
+	 * Reads name, value pairs from a heartbeat.
+	 * Unknown fields are ignored and missing ones are zero
+	 */
+	static ServerPresence fromFields(String[] fields) {
+		Map<String, String> values = Maps.newHashMap();
+		for (int i = 0; i + 1 < fields.length; i += 2) {
+			values.put(fields[i], fields[i + 1]);
+		}
+		
+		try {
+			return new ServerPresence(
+				Double.parseDouble(values.getOrDefault("tps", "0")),
+				Integer.parseInt(values.getOrDefault("players", "0")),
+				values.getOrDefault("state", ""),
+				Integer.parseInt(values.getOrDefault("used", "0")),
+				Integer.parseInt(values.getOrDefault("max", "0"))
+			);
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException("Malformed presence " + e.getMessage());
+		}
+	}
+}
@@ -0,0 +1,147 @@
+package au.com.addstar.comp.whitelist;
+
+import java.util.Arrays;
+import java.util.UUID;
+
+/**
+ * An immutable set of UUIDs stored as pairs of longs in open addressed arrays.
+ * Uses about 32 bytes per entry and never allocates on lookup.
+ * Changes return a new set so readers never need to lock.
+ */
+final class UUIDSet {
+	static final UUIDSet EMPTY = new UUIDSet(new long[2], new long[2], new boolean[2], 0);
+
+	private final long[] most;
+	private final long[] least;
+	private final boolean[] used;
+	private final int size;
+
+	private UUIDSet(long[] most, long[] least, boolean[] used, int size) {
+		this.most = most;
+		this.least = least;
+		this.used = used;
+		this.size = size;
+	}
+
+	/**
+	 * Creates a set from an array of most and least significant bits
+	 * @param bits Pairs of longs, most significant first
+	 * @param count The number of pairs to use
+	 */
+	static UUIDSet of(long[] bits, int count) {
+		int capacity = capacityFor(count);
+		long[] most = new long[capacity];
+		long[] least = new long[capacity];
+		boolean[] used = new boolean[capacity];
+		int size = 0;
+		for (int i = 0; i < count; ++i) {
+			if (insert(most, least, used, bits[i * 2], bits[i * 2 + 1])) {
+				++size;
+			}
+		}
+		return new UUIDSet(most, least, used, size);
+	}
+
+	boolean contains(UUID id) {
+		long msb = id.getMostSignificantBits();
+		long lsb = id.getLeastSignificantBits();
+		int mask = used.length - 1;
+		for (int slot = hash(msb, lsb) & mask; used[slot]; slot = (slot + 1) & mask) {
+			if (most[slot] == msb && least[slot] == lsb) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	int size() {
+		return size;
+	}
+
+	/**
+	 * Gets a set that also contains the id
+	 * @return The new set, or this set if it already contains the id
+	 */
+	UUIDSet with(UUID id) {
+		if (contains(id)) {
+			return this;
+		}
+
+		int capacity = capacityFor(size + 1);
+		long[] newMost;
+		long[] newLeast;
+		boolean[] newUsed;
+		if (capacity == used.length) {
+			newMost = Arrays.copyOf(most, capacity);
+			newLeast = Arrays.copyOf(least, capacity);
+			newUsed = Arrays.copyOf(used, capacity);
+		} else {
+			newMost = new long[capacity];
+			newLeast = new long[capacity];
+			newUsed = new boolean[capacity];
+			for (int i = 0; i < used.length; ++i) {
+				if (used[i]) {
+					insert(newMost, newLeast, newUsed, most[i], least[i]);
+				}
+			}
+		}
+		insert(newMost, newLeast, newUsed, id.getMostSignificantBits(), id.getLeastSignificantBits());
+		return new UUIDSet(newMost, newLeast, newUsed, size + 1);
+	}
+
+	/**
+	 * Gets a set that does not contain the id
+	 * @return The new set, or this set if it does not contain the id
+	 */
+	UUIDSet without(UUID id) {
+		if (!contains(id)) {
+			return this;
+		}
+
+		// Rebuilding is simpler than fixing up probe chains, and removals are rare
+		long msb = id.getMostSignificantBits();
+		long lsb = id.getLeastSignificantBits();
+		long[] bits = new long[size * 2];
+		int count = 0;
+		for (int i = 0; i < used.length; ++i) {
+			if (used[i] && (most[i] != msb || least[i] != lsb)) {
+				bits[count * 2] = most[i];
+				bits[count * 2 + 1] = least[i];
+				++count;
+			}
+		}
+		return of(bits, count);
+	}
+
+	private static boolean insert(long[] most, long[] least, boolean[] used, long msb, long lsb) {
+		int mask = used.length - 1;
+		int slot = hash(msb, lsb) & mask;
+		while (used[slot]) {
+			if (most[slot] == msb && least[slot] == lsb) {
+				return false;
+			}
+			slot = (slot + 1) & mask;
+		}
+		used[slot] = true;
+		most[slot] = msb;
+		least[slot] = lsb;
+		return true;
+	}
+
+	/**
+	 * Keeps the load factor at or below 1/2
+	 */
+	private static int capacityFor(int count) {
+		int capacity = 2;
+		while (capacity < count * 2) {
+			capacity <<= 1;
+		}
+		return capacity;
+	}
+
+	private static int hash(long msb, long lsb) {
+		long h = msb * 0x9E3779B97F4A7C15L ^ lsb;
+		h ^= (h >>> 32);
+		return (int)(h ^ (h >>> 16));
+	}
+}
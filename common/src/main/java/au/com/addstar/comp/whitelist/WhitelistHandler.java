@@ -4,33 +4,73 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 import org.bukkit.OfflinePlayer;
 
+import com.google.common.collect.Lists;
+
+import au.com.addstar.comp.database.DatabaseExecutor;
+import au.com.addstar.comp.database.DatabaseManager;
 import au.com.addstar.comp.database.HikariConnectionPool;
 import au.com.addstar.comp.database.StatementKey;
+import au.com.addstar.comp.database.UUIDCodec;
+import au.com.addstar.comp.database.Workload;
+import au.com.addstar.comp.redis.CommandReceiver;
+import au.com.addstar.comp.redis.RedisManager;
 
 /**
- * Provides access to check and change whitelist state for players
+ * Provides access to check and change whitelist state for players.
+ * <p>
+ * The whole whitelist is kept in memory so checks do not touch the database.
+ * Changes made through this handler are broadcast so every server applies them straight away,
+ * and {@link #reload()} should be called periodically to pick up changes made elsewhere.
  */
-public class WhitelistHandler {
+public class WhitelistHandler implements CommandReceiver {
+	/**
+	 * Commands starting with this are whitelist changes from other servers
+	 */
+	public static final String CommandPrefix = "whitelist ";
+	
 	private static final String TABLE = "whitelist";
 	
 	private static final StatementKey STATEMENT_GET;
+	private static final StatementKey STATEMENT_GETALL;
 	private static final StatementKey STATEMENT_ADD;
 	private static final StatementKey STATEMENT_REMOVE;
 	
 	static {
 		STATEMENT_GET = new StatementKey("SELECT 1 FROM `" + TABLE + "` WHERE `uuid`=? LIMIT 1;");
-		STATEMENT_ADD = new StatementKey("INSERT INTO `" + TABLE + "` VALUES(?);");
+		STATEMENT_GETALL = new StatementKey("SELECT `uuid`, `UUIDBin` FROM `" + TABLE + "`;");
+		STATEMENT_ADD = new StatementKey("INSERT INTO `" + TABLE + "` (`uuid`, `UUIDBin`) VALUES(?, ?);");
 		STATEMENT_REMOVE = new StatementKey("DELETE FROM `" + TABLE + "` WHERE `uuid`=?;");
 	}
 	
 	private final HikariConnectionPool pool;
+	private final HikariConnectionPool bulkPool;
+	private final DatabaseExecutor executor;
+	private final RedisManager redis;
+	
+	private final Object lock = new Object();
+	/**
+	 * The cached whitelist, or null if it has never loaded
+	 */
+	private volatile UUIDSet entries;
+	/**
+	 * Changes made while a reload is running, so they can be applied on top of it. Null when not reloading
+	 */
+	private List<Change> changesDuringReload;
 	
-	public WhitelistHandler(HikariConnectionPool pool) {
-		this.pool = pool;
+	public WhitelistHandler(DatabaseManager manager, RedisManager redis) {
+		this.pool = manager.getPool(Workload.Interactive);
+		this.bulkPool = manager.getPool(Workload.Bulk);
+		this.executor = manager.getExecutor();
+		this.redis = redis;
 	}
 	
 	/**
@@ -43,12 +83,100 @@ public class WhitelistHandler {
 	}
 	
 	/**
-	 * Checks if a player uuid is on the whitelist for comp
+	 * Loads the entire whitelist from the database, replacing what is cached
+	 * @throws SQLException Thrown if an SQLException occurs when querying the database
+	 */
+	public void reload() throws SQLException {
+		synchronized (lock) {
+			if (changesDuringReload != null) {
+				// Already reloading
+				return;
+			}
+			changesDuringReload = Lists.newArrayList();
+		}
+		
+		UUIDSet loaded = null;
+		try {
+			long[] bits = new long[256];
+			int count = 0;
+			try (Connection handler = bulkPool.getConnection();
+					PreparedStatement statement = handler.prepareStatement(STATEMENT_GETALL.getSQL());
+					ResultSet result = statement.executeQuery()) {
+				while (result.next()) {
+					UUID id;
+					try {
+						id = UUIDCodec.read(result, "UUIDBin", "uuid");
+					} catch (IllegalArgumentException e) {
+						// Not a uuid, skip it
+						continue;
+					}
+					
+					if (count * 2 == bits.length) {
+						bits = Arrays.copyOf(bits, bits.length * 2);
+					}
+					bits[count * 2] = id.getMostSignificantBits();
+					bits[count * 2 + 1] = id.getLeastSignificantBits();
+					++count;
+				}
+			}
+			loaded = UUIDSet.of(bits, count);
+		} finally {
+			synchronized (lock) {
+				if (loaded != null) {
+					for (Change change : changesDuringReload) {
+						loaded = change.applyTo(loaded);
+					}
+					entries = loaded;
+				}
+				changesDuringReload = null;
+			}
+		}
+	}
+	
+	/**
+	 * Reloads the whitelist, logging any failure. Suitable for running periodically
+	 */
+	public void refresh() {
+		try {
+			reload();
+		} catch (SQLException e) {
+			Logger.getLogger("CompManager").log(Level.WARNING, "Failed to refresh the whitelist", e);
+		}
+	}
+	
+	/**
+	 * Gets the number of whitelisted players
+	 * @return The count, or -1 if the whitelist has not loaded
+	 */
+	public int getCachedSize() {
+		UUIDSet current = entries;
+		return (current == null ? -1 : current.size());
+	}
+	
+	private void applyChange(Change change) {
+		synchronized (lock) {
+			if (entries != null) {
+				entries = change.applyTo(entries);
+			}
+			if (changesDuringReload != null) {
+				changesDuringReload.add(change);
+			}
+		}
+	}
+	
+	/**
+	 * Checks if a player uuid is on the whitelist for comp.
+	 * This only goes to the database if the whitelist could not be loaded
 	 * @param playerId The uuid of the player being checked
 	 * @return True if they are whitelisted
 	 * @throw SQLException Thrown if an SQLException occurs when querying the database
 	 */
 	public boolean isWhitelisted(UUID playerId) throws SQLException {
+		UUIDSet current = entries;
+		if (current != null) {
+			return current.contains(playerId);
+		}
+		
 		try (Connection handler = pool.getConnection();
 				PreparedStatement statement = handler.prepareStatement(STATEMENT_GET.getSQL())) {
 			statement.setString(1, idToString(playerId));
@@ -58,6 +186,30 @@ public class WhitelistHandler {
 		}
 	}
 	
+	/**
+	 * Checks the in memory whitelist only, never the database.
+	 * Use this where blocking is not allowed and a late answer is useless, such as placeholders
+	 * @param playerId The uuid of the player being checked
+	 * @return True if they are whitelisted, false if not or if the whitelist has not loaded yet
+	 */
+	public boolean isWhitelistedCached(UUID playerId) {
+		UUIDSet current = entries;
+		return (current != null && current.contains(playerId));
+	}
+	
+	/**
+	 * Checks if a player uuid is on the whitelist for comp without blocking
+	 * @param playerId The uuid of the player being checked
+	 * @return A future that completes with true if they are whitelisted
+	 */
+	public CompletableFuture<Boolean> isWhitelistedAsync(UUID playerId) {
+		UUIDSet current = entries;
+		if (current != null) {
+			return CompletableFuture.completedFuture(current.contains(playerId));
+		}
+		return executor.submit(() -> isWhitelisted(playerId));
+	}
+	
 	/**
 	 * Checks if a player is on the whitelist for comp
 	 * @param player The player to check
@@ -77,8 +229,20 @@ public class WhitelistHandler {
 		try (Connection handler = pool.getConnection()) {
 			PreparedStatement statement = handler.prepareStatement(STATEMENT_ADD.getSQL());
 			statement.setString(1, idToString(playerId));
+			statement.setBytes(2, UUIDCodec.toBytes(playerId));
 			statement.executeUpdate();
 		}
+		applyChange(new Change(playerId, true));
+		redis.broadcastCommand(CommandPrefix + "add " + playerId);
+	}
+	
+	/**
+	 * Adds a player to the whitelist without blocking
+	 * @param playerId The uuid of the player
+	 * @return A future that completes once they are added
+	 */
+	public CompletableFuture<Void> addAsync(UUID playerId) {
+		return executor.execute(() -> add(playerId));
 	}
 	
 	/**
@@ -101,6 +265,17 @@ public class WhitelistHandler {
 			statement.setString(1, idToString(playerId));
 			statement.executeUpdate();
 		}
+		applyChange(new Change(playerId, false));
+		redis.broadcastCommand(CommandPrefix + "remove " + playerId);
+	}
+	
+	/**
+	 * Removes a player from the whitelist without blocking
+	 * @param playerId The uuid of the player
+	 * @return A future that completes once they are removed
+	 */
+	public CompletableFuture<Void> removeAsync(UUID playerId) {
+		return executor.execute(() -> remove(playerId));
 	}
 	
 	/**
@@ -111,4 +286,46 @@ public class WhitelistHandler {
 	public void remove(OfflinePlayer player) throws SQLException {
 		remove(player.getUniqueId());
 	}
+	
+	/**
+	 * Applies a whitelist change broadcast by another server.
+	 * Commands look like {@code whitelist add <uuid>} or {@code whitelist remove <uuid>}
+	 */
+	@Override
+	public void onReceive(String serverId, String command) {
+		String[] parts = command.split(" ");
+		if (parts.length != 3) {
+			return;
+		}
+		
+		UUID playerId;
+		try {
+			playerId = UUID.fromString(parts[2]);
+		} catch (IllegalArgumentException e) {
+			return;
+		}
+		
+		switch (parts[1].toLowerCase()) {
+		case "add":
+			applyChange(new Change(playerId, true));
+			break;
+		case "remove":
+			applyChange(new Change(playerId, false));
+			break;
+		}
+	}
+	
+	private static class Change {
+		private final UUID playerId;
+		private final boolean added;
+		
+		public Change(UUID playerId, boolean added) {
+			this.playerId = playerId;
+			this.added = added;
+		}
+		
+		public UUIDSet applyTo(UUIDSet set) {
+			return (added ? set.with(playerId) : set.without(playerId));
+		}
+	}
 }
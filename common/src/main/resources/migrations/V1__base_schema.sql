@@ -0,0 +1,85 @@
+-- Migration: Base schema
+-- Matches createDatabase.sql but leaves existing tables alone, so it can be
+-- recorded as applied on databases that were set up by hand
+
+CREATE TABLE IF NOT EXISTS `comps`
+(
+  `ID`           int(11)     NOT NULL AUTO_INCREMENT,
+  `Theme`        varchar(255) DEFAULT NULL,
+  `State`        varchar(30) NOT NULL,
+  `StartDate`    datetime     DEFAULT NULL,
+  `EndDate`      datetime     DEFAULT NULL,
+  `VoteEnd`      datetime     DEFAULT NULL,
+  `VoteType`     varchar(30) NOT NULL,
+  `MaxEntrants`  int(11)     NOT NULL,
+  `FirstPrize`   varchar(255) DEFAULT NULL,
+  `SecondPrize`  varchar(255) DEFAULT NULL,
+  `DefaultPrize` varchar(255) DEFAULT NULL,
+  PRIMARY KEY (`ID`)
+) ENGINE = InnoDB
+  DEFAULT CHARSET = latin1;
+
+CREATE TABLE IF NOT EXISTS `criteria`
+(
+  `CriteriaID`  int(11)     NOT NULL AUTO_INCREMENT,
+  `CompID`      int(11)     NOT NULL,
+  `Name`        varchar(30) NOT NULL,
+  `Description` varchar(255) DEFAULT NULL,
+  `Type`        varchar(30)  DEFAULT NULL,
+  `Data`        varchar(255) DEFAULT NULL,
+  PRIMARY KEY (`CriteriaID`),
+  KEY `CompID` (`CompID`)
+) ENGINE = InnoDB
+  DEFAULT CHARSET = latin1;
+
+CREATE TABLE IF NOT EXISTS `servers`
+(
+  `ServerID` varchar(30) NOT NULL,
+  `CompID`   int(11) DEFAULT NULL,
+  PRIMARY KEY (`ServerID`),
+  KEY `CompID` (`CompID`)
+) ENGINE = InnoDB
+  DEFAULT CHARSET = latin1;
+
+CREATE TABLE IF NOT EXISTS `results`
+(
+  `CompID`  int(11)  NOT NULL,
+  `UUID`    char(36) NOT NULL,
+  `Name`    varchar(20)  DEFAULT NULL,
+  `Rank`    int(11)      DEFAULT NULL,
+  `PlotID`  varchar(10)  DEFAULT NULL,
+  `Prize`   varchar(255) DEFAULT NULL,
+  `Claimed` tinyint(1)   DEFAULT NULL,
+  PRIMARY KEY (`CompID`, `UUID`)
+) ENGINE = InnoDB
+  DEFAULT CHARSET = latin1;
+
+CREATE TABLE IF NOT EXISTS `votes`
+(
+  `CompID`    int(11)     NOT NULL,
+  `UUID`      char(36)    NOT NULL,
+  `PlotID`    varchar(10) NOT NULL,
+  `PlotOwner` char(36)    NOT NULL,
+  `Vote`      int(11)     NOT NULL,
+  PRIMARY KEY (`CompID`, `UUID`, `PlotID`)
+) ENGINE = InnoDB
+  DEFAULT CHARSET = latin1;
+
+CREATE TABLE IF NOT EXISTS `whitelist`
+(
+  `UUID` char(32) NOT NULL,
+  PRIMARY KEY (`UUID`)
+) ENGINE = InnoDB
+  DEFAULT CHARSET = latin1;
+
+CREATE TABLE IF NOT EXISTS `plot_entries`
+(
+  `CompID`    int(11)     NOT NULL,
+  `UUID`      char(36)    NOT NULL,
+  `PlotID`    varchar(10) NOT NULL,
+  `EntryDate` datetime    NOT NULL,
+  PRIMARY KEY (`CompID`, `UUID`),
+  KEY `CompID` (`CompID`),
+  CONSTRAINT `fk_plot_entries_comp` FOREIGN KEY (`CompID`) REFERENCES `comps` (`ID`) ON DELETE CASCADE
+) ENGINE = InnoDB
+  DEFAULT CHARSET = latin1;
@@ -0,0 +1,5 @@
+-- Migration: Index votes by plot within a comp
+-- Includes Vote so per plot tallies are answered from the index alone
+-- (UUID comes along as part of the primary key)
+
+ALTER TABLE `votes` ADD INDEX `CompPlot` (`CompID`, `PlotID`, `Vote`);
@@ -0,0 +1,4 @@
+-- Migration: Index results by rank within a comp
+-- Lets the winners and leaderboard queries skip unplaced entrants
+
+ALTER TABLE `results` ADD INDEX `CompRank` (`CompID`, `Rank`);
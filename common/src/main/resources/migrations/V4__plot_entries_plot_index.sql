@@ -0,0 +1,4 @@
+-- Migration: Index plot entries by plot
+-- For looking up who entered with a given plot
+
+ALTER TABLE `plot_entries` ADD INDEX `PlotID` (`PlotID`);
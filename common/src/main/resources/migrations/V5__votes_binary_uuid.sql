@@ -0,0 +1,8 @@
+-- Migration: Binary copies of the voter and plot owner uuids
+-- Nullable so the column can be added without copying the table. Rows are filled
+-- in by the uuid backfill, and rows written by older versions are left null until then
+
+ALTER TABLE `votes`
+  ADD COLUMN `UUIDBin` binary(16) NULL AFTER `UUID`,
+  ADD COLUMN `PlotOwnerBin` binary(16) NULL AFTER `PlotOwner`,
+  ALGORITHM = INPLACE, LOCK = NONE;
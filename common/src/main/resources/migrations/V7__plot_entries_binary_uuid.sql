@@ -0,0 +1,5 @@
+-- Migration: Binary copy of the entrant uuid in plot entries
+
+ALTER TABLE `plot_entries`
+  ADD COLUMN `UUIDBin` binary(16) NULL AFTER `UUID`,
+  ALGORITHM = INPLACE, LOCK = NONE;
@@ -0,0 +1,5 @@
+-- Migration: Binary copy of the whitelisted uuid
+
+ALTER TABLE `whitelist`
+  ADD COLUMN `UUIDBin` binary(16) NULL AFTER `UUID`,
+  ALGORITHM = INPLACE, LOCK = NONE;
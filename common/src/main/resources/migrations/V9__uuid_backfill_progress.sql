@@ -0,0 +1,14 @@
+-- Migration: Progress of the uuid backfill
+-- Comps up to LastCompID have been converted, so a restart carries on from there,
+-- and tables that are Completed are not scanned again. InvalidRows counts rows whose
+-- text uuid could not be converted. They are left as they are for an admin to look at
+
+CREATE TABLE IF NOT EXISTS `uuid_backfill`
+(
+  `TableName`   varchar(30) NOT NULL,
+  `LastCompID`  int(11)     NOT NULL DEFAULT -1,
+  `Completed`   tinyint(1)  NOT NULL DEFAULT 0,
+  `InvalidRows` int(11)     NOT NULL DEFAULT 0,
+  PRIMARY KEY (`TableName`)
+) ENGINE = InnoDB
+  DEFAULT CHARSET = latin1;
@@ -0,0 +1,113 @@
+package au.com.addstar.comp.lobby;
+
+/**
+ * Stops queries being sent to a server that is not answering.
+ * After enough timeouts in a row the breaker opens and queries fail
+ * straight away. Once the open time passes a single probe query is
+ * let through, which closes the breaker again if it is answered.
+ */
+public class CircuitBreaker {
+	public enum State {
+		/**
+		 * Queries are sent normally
+		 */
+		Closed,
+		/**
+		 * Queries fail without being sent
+		 */
+		Open,
+		/**
+		 * A single probe query is in flight
+		 */
+		HalfOpen
+	}
+	
+	private final int failureThreshold;
+	private final long openTime;
+	
+	private State state;
+	private int consecutiveTimeouts;
+	private long openUntil;
+	
+	/**
+	 * @param failureThreshold The number of timeouts in a row before opening
+	 * @param openTime How long in ms to stay open before probing
+	 */
+	public CircuitBreaker(int failureThreshold, long openTime) {
+		this.failureThreshold = failureThreshold;
+		this.openTime = openTime;
+		state = State.Closed;
+	}
+	
+	/**
+	 * Checks if a query may be sent. When the open time has passed
+	 * this lets through one probe and denies the rest until it finishes.
+	 * @return True if the query should be sent
+	 */
+	public synchronized boolean allowRequest() {
+		switch (state) {
+		case Closed:
+			return true;
+		case Open:
+			if (System.currentTimeMillis() >= openUntil) {
+				state = State.HalfOpen;
+				return true;
+			}
+			return false;
+		case HalfOpen:
+		default:
+			return false;
+		}
+	}
+	
+	/**
+	 * Records that the server answered. Errors count as answers,
+	 * the server was still there to send them.
+	 */
+	public synchronized void onSuccess() {
+		state = State.Closed;
+		consecutiveTimeouts = 0;
+	}
+	
+	/**
+	 * Records that the server did not answer in time
+	 */
+	public synchronized void onTimeout() {
+		++consecutiveTimeouts;
+		if (state == State.HalfOpen || consecutiveTimeouts >= failureThreshold) {
+			state = State.Open;
+			openUntil = System.currentTimeMillis() + openTime;
+		}
+	}
+	
+	/**
+	 * Records a query that failed without saying anything about the server,
+	 * such as one that could not be sent. A probe that ends this way
+	 * is tried again after the open time.
+	 */
+	public synchronized void onFailure() {
+		if (state == State.HalfOpen) {
+			state = State.Open;
+			openUntil = System.currentTimeMillis() + openTime;
+		}
+	}
+	
+	public synchronized State getState() {
+		return state;
+	}
+	
+	public synchronized int getConsecutiveTimeouts() {
+		return consecutiveTimeouts;
+	}
+	
+	/**
+	 * Gets how long until a probe will be let through
+	 * @return The time in ms, or 0 if not open
+	 */
+	public synchronized long getTimeUntilProbe() {
+		if (state != State.Open) {
+			return 0;
+		}
+		return Math.max(0, openUntil - System.currentTimeMillis());
+	}
+}
@@ -1,16 +1,24 @@
 package au.com.addstar.comp.lobby;
 
 import au.com.addstar.comp.redis.CommandReceiver;
+import au.com.addstar.comp.whitelist.WhitelistHandler;
 
 public class CommandHandler implements CommandReceiver {
 	private final CompManager manager;
+	private final WhitelistHandler whitelist;
 	
-	public CommandHandler(CompManager manager) {
+	public CommandHandler(CompManager manager, WhitelistHandler whitelist) {
 		this.manager = manager;
+		this.whitelist = whitelist;
 	}
 	
 	@Override
 	public void onReceive(String serverId, String command) {
+		if (command.startsWith(WhitelistHandler.CommandPrefix)) {
+			whitelist.onReceive(serverId, command);
+			return;
+		}
+		
 		switch (command.toLowerCase()) {
 		case "reloadsender":
 			reload(serverId);
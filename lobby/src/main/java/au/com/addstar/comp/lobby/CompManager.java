@@ -6,6 +6,7 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 
 import org.bukkit.Bukkit;
@@ -15,15 +16,22 @@ import org.bukkit.plugin.Plugin;
 import java.util.Optional;
 import com.google.common.base.Strings;
 import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
 
 import au.com.addstar.comp.util.Messages;
 import au.com.addstar.comp.CompBackendManager;
 import au.com.addstar.comp.Competition;
+import au.com.addstar.comp.redis.MultiQueryFuture;
 import au.com.addstar.comp.redis.RedisManager;
 
 import javax.annotation.Nullable;
 
 public class CompManager {
+	/**
+	 * How long to wait for every server to answer a batched query
+	 */
+	private static final long BatchQueryTimeout = TimeUnit.SECONDS.toMillis(5);
+
 	private final CompBackendManager backend;
 	private final RedisManager redis;
 	private final Plugin plugin;
@@ -44,6 +52,13 @@ public class CompManager {
 
 		broadcastSettings = plugin.getConfig().getConfigurationSection("broadcast-settings");
 		servers = Maps.newHashMap();
+
+		redis.setPresenceListener((serverId, presence) -> Bukkit.getScheduler().runTask(plugin, () -> {
+			CompServer server = servers.get(serverId);
+			if (server != null) {
+				server.updatePresence(presence);
+			}
+		}));
 	}
 
 	/**
@@ -80,6 +95,13 @@ public class CompManager {
 					Map<String, Optional<Integer>> map = backend.getServerComps();
 					retainAll(servers, map.keySet());
 
+					// Load every comp at once
+					Set<Integer> compIds = Sets.newHashSet();
+					for (Optional<Integer> compId : map.values()) {
+						compId.ifPresent(compIds::add);
+					}
+					Map<Integer, Competition> comps = backend.load(compIds);
+
 					for (String serverId : map.keySet()) {
 						CompServer server = servers.get(serverId);
 						if (server == null) {
@@ -89,13 +111,7 @@ public class CompManager {
 
 						// Load in the competition object
 						Optional<Integer> compId = map.get(serverId);
-						server.currentComp = null;
-						if (compId.isPresent()) {
-							Competition comp = backend.load(compId.get());
-							if (comp != null) {
-								server.currentComp = comp;
-							}
-						}
+						server.currentComp = compId.map(comps::get).orElse(null);
 					}
 
 				} catch (SQLException e) {
@@ -208,6 +224,42 @@ public class CompManager {
 		return Collections.unmodifiableCollection(servers.values());
 	}
 
+	/**
+	 * Sends a query to every known server with a single broadcast.
+	 * Use {@link MultiQueryFuture#forServer(String)} to handle each
+	 * server as soon as it answers.
+	 *
+	 * @param command The command to use
+	 * @param args Any arguments needed
+	 * @return A future for the replies
+	 */
+	public MultiQueryFuture queryAll(String command, String... args) {
+		return redis.queryAll(servers.keySet(), command, BatchQueryTimeout, args);
+	}
+
+	/**
+	 * Fetches the entrant count of every online server with a comp in one
+	 * query. Calls to {@link CompServer#getEntrantCount()} shortly after
+	 * will share this query instead of sending their own.
+	 */
+	public void refreshEntrantCounts() {
+		Map<String, CompServer> targets = Maps.newHashMap();
+		for (CompServer server : servers.values()) {
+			if (server.isOnline() && server.getCurrentComp() != null && server.getBreaker().allowRequest()) {
+				targets.put(server.getId(), server);
+			}
+		}
+
+		if (targets.isEmpty()) {
+			return;
+		}
+
+		MultiQueryFuture future = redis.queryAll(targets.keySet(), "entrant_count", BatchQueryTimeout);
+		for (CompServer server : targets.values()) {
+			server.setEntrantCountBatch(future.forServer(server.getId()));
+		}
+	}
+
 	/**
 	 * Minimum minutes between broadcasting that a comp is running
 	 *
@@ -1,15 +1,23 @@
 package au.com.addstar.comp.lobby;
 
 import java.sql.SQLException;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.Level;
 
+import com.google.common.collect.MapMaker;
+import com.google.common.util.concurrent.FutureCallback;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
 import org.bukkit.Bukkit;
 import org.bukkit.OfflinePlayer;
 import org.bukkit.entity.Player;
 import org.bukkit.plugin.Plugin;
+import org.jetbrains.annotations.NotNull;
 
 import java.util.Optional;
 import com.google.common.io.ByteArrayDataOutput;
@@ -21,7 +29,9 @@ import au.com.addstar.comp.confirmations.Confirmable;
 import au.com.addstar.comp.entry.EntryDeniedException;
 import au.com.addstar.comp.lobby.entry.RemoteEnterFuture;
 import au.com.addstar.comp.redis.QueryException;
+import au.com.addstar.comp.redis.QueryTimeoutException;
 import au.com.addstar.comp.redis.RedisManager;
+import au.com.addstar.comp.redis.ServerPresence;
 import au.com.addstar.comp.util.Messages;
 
 /**
@@ -37,6 +47,36 @@ public class CompServer {
 	Competition currentComp;
 	private boolean isOnline;
 	
+	/**
+	 * How long a batched entrant count may be shared for
+	 */
+	private static final long BatchReuseTime = 1000;
+	
+	private ListenableFuture<String> entrantCountBatch;
+	private long entrantCountBatchTime;
+	
+	private ServerPresence presence;
+	private long lastHeartbeat;
+	
+	/**
+	 * Timeouts in a row before queries to this server are stopped,
+	 * and how long in ms before trying again
+	 */
+	private static final int BreakerThreshold = 3;
+	private static final long BreakerOpenTime = 15000;
+	
+	private final CircuitBreaker breaker;
+	/**
+	 * The last value returned by each query without arguments,
+	 * given out while the breaker is open
+	 */
+	private final Map<String, String> lastKnown;
+	/**
+	 * Queries already feeding the breaker. Coalesced queries hand the same
+	 * future to every caller, and it must only count once
+	 */
+	private final Set<ListenableFuture<?>> trackedQueries;
+	
 	CompServer(String serverId, Plugin plugin, RedisManager redis, CompBackendManager backend) {
 		this.plugin = plugin;
 		this.redis = redis;
@@ -44,6 +84,9 @@ public class CompServer {
 		this.serverId = serverId;
 		
 		isOnline = false;
+		breaker = new CircuitBreaker(BreakerThreshold, BreakerOpenTime);
+		lastKnown = new ConcurrentHashMap<>();
+		trackedQueries = Collections.newSetFromMap(new MapMaker().weakKeys().makeMap());
 	}
 	
 	/**
@@ -70,6 +113,98 @@ public class CompServer {
 		this.isOnline = isOnline;
 	}
 	
+	/**
+	 * Records a heartbeat from this server, marking it online
+	 * @param presence The status sent with the heartbeat
+	 */
+	void updatePresence(ServerPresence presence) {
+		this.presence = presence;
+		lastHeartbeat = System.currentTimeMillis();
+		isOnline = true;
+		breaker.onSuccess();
+	}
+	
+	/**
+	 * Gets the status sent with the last heartbeat
+	 * @return The status, or null if this server has never sent a heartbeat
+	 */
+	public ServerPresence getPresence() {
+		return presence;
+	}
+	
+	/**
+	 * Gets the circuit breaker guarding queries to this server
+	 * @return The breaker
+	 */
+	public CircuitBreaker getBreaker() {
+		return breaker;
+	}
+	
+	/**
+	 * Sends a query to this server unless the breaker is open.
+	 * While open, queries without arguments get the last known value if there is one,
+	 * otherwise they fail with a {@link QueryTimeoutException} straight away.
+	 * @param command The command to use
+	 * @param args Any arguments needed
+	 * @return A future to get the result
+	 */
+	private ListenableFuture<String> query(String command, String... args) {
+		String cacheKey = (args.length == 0 ? command : null);
+		if (!breaker.allowRequest()) {
+			String cached = (cacheKey != null ? lastKnown.get(cacheKey) : null);
+			if (cached != null) {
+				return Futures.immediateFuture(cached);
+			}
+			return Futures.immediateFailedFuture(new QueryTimeoutException("Server not responding"));
+		}
+		
+		ListenableFuture<String> future = redis.query(serverId, command, args);
+		trackQuery(future, cacheKey);
+		return future;
+	}
+	
+	/**
+	 * Feeds the outcome of a query sent to this server into the breaker
+	 * @param future The query future
+	 * @param cacheKey The key to remember the result under, or null
+	 */
+	void trackQuery(ListenableFuture<String> future, String cacheKey) {
+		if (!trackedQueries.add(future)) {
+			return;
+		}
+		
+		Futures.addCallback(future, new FutureCallback<String>() {
+			@Override
+			public void onSuccess(String result) {
+				breaker.onSuccess();
+				if (cacheKey != null) {
+					lastKnown.put(cacheKey, result);
+				}
+			}
+			
+			@Override
+			public void onFailure(@NotNull Throwable error) {
+				if (error instanceof QueryTimeoutException) {
+					breaker.onTimeout();
+				} else if (error instanceof QueryException) {
+					// It answered, just not with what we wanted
+					breaker.onSuccess();
+				} else {
+					// Never reached the server, but a probe must still finish
+					breaker.onFailure();
+				}
+			}
+		}, MoreExecutors.directExecutor());
+	}
+	
+	/**
+	 * Gets when the last heartbeat was received
+	 * @return The time in ms, or 0 if this server has never sent one
+	 */
+	public long getLastHeartbeat() {
+		return lastHeartbeat;
+	}
+	
 	/**
 	 * Gets the currently selected competition for this server.
 	 * This comp may or may not be running
@@ -80,19 +215,21 @@ public class CompServer {
 	}
 	
 	/**
-	 * Updates the comp settings and notifies the server
+	 * Updates the comp settings and notifies the server.
+	 * This is saved asynchronously
 	 */
 	public void updateComp() {
-		if (currentComp == null) {
+		final Competition comp = currentComp;
+		if (comp == null) {
 			return;
 		}
 		
-		try {
-			backend.update(currentComp);
-			redis.sendCommand(serverId, "reload");
-		} catch (SQLException e) {
-			plugin.getLogger().log(Level.SEVERE, "Failed to update comp for " + serverId, e);
-		}
+		backend.asyncRun(() -> backend.update(comp))
+			.thenRun(() -> redis.sendCommand(serverId, "reload"))
+			.exceptionally(e -> {
+				plugin.getLogger().log(Level.SEVERE, "Failed to update comp for " + serverId, e);
+				return null;
+			});
 	}
 	
 	/**
@@ -120,7 +257,7 @@ public class CompServer {
 	 * @return A future that returns true if they are entered
 	 */
 	public ListenableFuture<Boolean> isEntrant(UUID playerId) {
-		ListenableFuture<String> future = redis.query(serverId, "is_entrant", playerId.toString());
+		ListenableFuture<String> future = query("is_entrant", playerId.toString());
 		
 		return Futures.transform(future, Boolean::valueOf, Bukkit.getScheduler().getMainThreadExecutor(LobbyPlugin.instance));
 	}
@@ -139,17 +276,33 @@ public class CompServer {
 	 * @return A future that returns the number of entrants
 	 */
 	public ListenableFuture<Integer> getEntrantCount() {
-		ListenableFuture<String> future = redis.query(serverId, "entrant_count");
+		ListenableFuture<String> future;
+		if (entrantCountBatch != null && System.currentTimeMillis() - entrantCountBatchTime < BatchReuseTime) {
+			future = entrantCountBatch;
+		} else {
+			future = query("entrant_count");
+		}
 		
 		return Futures.transform(future, Integer::valueOf, Bukkit.getScheduler().getMainThreadExecutor(LobbyPlugin.instance));
 	}
 	
+	/**
+	 * Supplies the result of a batched entrant_count query so that
+	 * {@link #getEntrantCount()} can use it instead of querying again
+	 * @param future The future for this servers reply
+	 */
+	void setEntrantCountBatch(ListenableFuture<String> future) {
+		trackQuery(future, "entrant_count");
+		entrantCountBatch = future;
+		entrantCountBatchTime = System.currentTimeMillis();
+	}
+	
 	/**
 	 * Pings the server to see if it is online
 	 * @return A Future
 	 */
 	public ListenableFuture<?> ping() {
-		return redis.query(serverId, "ping");
+		return query("ping");
 	}
 	
 	/**
@@ -173,7 +326,7 @@ public class CompServer {
 	 * @throws QueryException Thrown through the Future. Thrown if there is a redis error
 	 */
 	public ListenableFuture<Confirmable> joinComp(OfflinePlayer player, Messages messages) {
-		ListenableFuture<String> rawFuture = redis.query(serverId, "join_begin", player.getUniqueId().toString());
+		ListenableFuture<String> rawFuture = query("join_begin", player.getUniqueId().toString());
 		
 		RemoteEnterFuture future = new RemoteEnterFuture(this, player.getUniqueId(), redis, messages);
 		Futures.addCallback(rawFuture, future, Bukkit.getScheduler().getMainThreadExecutor(LobbyPlugin.instance));
@@ -25,7 +25,6 @@ import au.com.addstar.comp.lobby.signs.SignListener;
 import au.com.addstar.comp.lobby.signs.SignManager;
 import au.com.addstar.comp.lobby.signs.SignRefresher;
 import au.com.addstar.comp.redis.RedisManager;
-import au.com.addstar.comp.redis.RedisQueryTimeoutTask;
 import au.com.addstar.comp.util.Messages;
 import au.com.addstar.comp.whitelist.WhitelistHandler;
 
@@ -81,7 +80,8 @@ public class LobbyPlugin extends JavaPlugin {
 			return;
 		}
 
-		whitelistHandler = new WhitelistHandler(databaseManager.getPool());
+		whitelistHandler = new WhitelistHandler(databaseManager, redisManager);
+		whitelistHandler.refresh();
 
 		compManager = new CompManager(new CompBackendManager(databaseManager), redisManager, this, messages);
 		compManager.reload(false);
@@ -97,12 +97,12 @@ public class LobbyPlugin extends JavaPlugin {
 		}
 
 		// Register commands
-		new CompAdminCommand(whitelistHandler, compManager, redisManager, signManager, messages, confirmationManager, this).registerAs(getCommand("compadmin"));
+		new CompAdminCommand(whitelistHandler, compManager, redisManager, signManager, messages, confirmationManager, databaseManager.getProfiler(), this).registerAs(getCommand("compadmin"));
 		new AgreeCommand(confirmationManager, messages).registerAs(getCommand("compagree"));
 
 		// Register listeners
 		Bukkit.getPluginManager().registerEvents(new SignListener(signManager), this);
-		redisManager.setCommandReceiver(new CommandHandler(compManager));
+		redisManager.setCommandReceiver(new CommandHandler(compManager, whitelistHandler));
 		Bukkit.getScheduler().runTaskTimer(this, () -> confirmationManager.expireConfirmations(), 20, 20);
 
 		// Grab the plugin manager
@@ -128,9 +128,10 @@ public class LobbyPlugin extends JavaPlugin {
 		}
 		// Register tasks
 		// TODO: Make refresh interval configurable
-		Bukkit.getScheduler().runTaskTimer(this, new SignRefresher(signManager), 0, 200);
-		Bukkit.getScheduler().runTaskTimer(this, new ServerStatusUpdater(compManager), 200, 200);
-		Bukkit.getScheduler().runTaskTimer(this, new RedisQueryTimeoutTask(redisManager), 20, 20);
+		Bukkit.getScheduler().runTaskTimer(this, new SignRefresher(signManager, compManager), 0, 200);
+		Bukkit.getScheduler().runTaskTimer(this, new ServerStatusUpdater(compManager), 20, 20);
+		long whitelistRefresh = Math.max(1, getConfig().getLong("whitelist-refresh", 300)) * 20;
+		Bukkit.getScheduler().runTaskTimerAsynchronously(this, whitelistHandler::refresh, whitelistRefresh, whitelistRefresh);
 //		Bukkit.getScheduler().runTaskTimer(this, new BroadcastReminder(compManager, broadcastChannel), 20, 20);
 		Bukkit.getMessenger().registerOutgoingPluginChannel(this, "BungeeCord");
 	}
@@ -146,6 +147,15 @@ public class LobbyPlugin extends JavaPlugin {
 		}
 	}
 
+	/**
+	 * Gets the comp whitelist
+	 *
+	 * @return The WhitelistHandler
+	 */
+	public WhitelistHandler getWhitelist() {
+		return whitelistHandler;
+	}
+
 	/**
 	 * Gets the competition manager
 	 *
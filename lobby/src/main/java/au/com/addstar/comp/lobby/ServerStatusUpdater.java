@@ -1,5 +1,8 @@
 package au.com.addstar.comp.lobby;
 
+import java.util.List;
+
+import com.google.common.collect.Lists;
 import com.google.common.util.concurrent.FutureCallback;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
@@ -7,12 +10,25 @@ import com.google.common.util.concurrent.ListenableFuture;
 import org.bukkit.Bukkit;
 import org.jetbrains.annotations.NotNull;
 
+import au.com.addstar.comp.redis.MultiQueryFuture;
+
 /**
- * Simple periodic task to update the online status
- * of servers by pinging them
+ * Simple periodic task to update the online status of servers.
+ * Servers are online while their heartbeats keep arriving.
+ * Servers that do not send heartbeats are pinged instead
  */
 public class ServerStatusUpdater implements Runnable {
+	/**
+	 * How long after the last heartbeat a server is considered offline
+	 */
+	private static final long HeartbeatTimeout = 3000;
+	/**
+	 * How many runs between pings of servers without heartbeats
+	 */
+	private static final int PingInterval = 10;
+	
 	private final CompManager manager;
+	private int runCount;
 	
 	public ServerStatusUpdater(CompManager manager) {
 		this.manager = manager;
@@ -20,8 +36,28 @@ public class ServerStatusUpdater implements Runnable {
 	
 	@Override
 	public void run() {
-		for (final CompServer server : manager.getServers()) {
-			ListenableFuture<?> future = server.ping();
+		long now = System.currentTimeMillis();
+		boolean doPing = (runCount++ % PingInterval == 0);
+		
+		List<CompServer> toPing = Lists.newArrayList();
+		for (CompServer server : manager.getServers()) {
+			if (server.getLastHeartbeat() != 0) {
+				if (server.isOnline() && now - server.getLastHeartbeat() > HeartbeatTimeout) {
+					server.setOnline(false);
+				}
+			} else if (doPing && server.getBreaker().allowRequest()) {
+				toPing.add(server);
+			}
+		}
+		
+		if (toPing.isEmpty()) {
+			return;
+		}
+		
+		MultiQueryFuture pings = manager.queryAll("ping");
+		for (final CompServer server : toPing) {
+			ListenableFuture<String> future = pings.forServer(server.getId());
+			server.trackQuery(future, "ping");
 			Futures.addCallback(future, new FutureCallback<Object>() {
 				@Override
 				public void onSuccess(Object error) {
@@ -30,7 +66,10 @@ public class ServerStatusUpdater implements Runnable {
 				
 				@Override
 				public void onFailure(@NotNull Throwable error) {
-					server.setOnline(false);
+					// A heartbeat may have arrived in the meantime
+					if (server.getLastHeartbeat() == 0) {
+						server.setOnline(false);
+					}
 				}
 			}, Bukkit.getScheduler().getMainThreadExecutor(LobbyPlugin.instance));
 		}
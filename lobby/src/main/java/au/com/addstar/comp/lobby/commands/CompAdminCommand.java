@@ -3,6 +3,7 @@ package au.com.addstar.comp.lobby.commands;
 import org.bukkit.plugin.Plugin;
 
 import au.com.addstar.comp.confirmations.ConfirmationManager;
+import au.com.addstar.comp.database.QueryProfiler;
 import au.com.addstar.comp.lobby.CompManager;
 import au.com.addstar.comp.lobby.commands.signs.SignCommand;
 import au.com.addstar.comp.lobby.services.CompetitionDialogService;
@@ -15,7 +16,7 @@ import au.com.addstar.comp.whitelist.WhitelistHandler;
 import au.com.addstar.monolith.command.RootCommandDispatcher;
 
 public final class CompAdminCommand extends RootCommandDispatcher {
-	public CompAdminCommand(WhitelistHandler whitelist, CompManager manager, RedisManager redis, SignManager signManager, Messages messages, ConfirmationManager confirmationManager, Plugin plugin) {
+	public CompAdminCommand(WhitelistHandler whitelist, CompManager manager, RedisManager redis, SignManager signManager, Messages messages, ConfirmationManager confirmationManager, QueryProfiler profiler, Plugin plugin) {
 		super("Gives access to all comp administration commands");
 		
 		// Create services for commands
@@ -28,7 +29,7 @@ public final class CompAdminCommand extends RootCommandDispatcher {
 		registerCommand(new CriteriaCommand(manager, manager.getBackend(), redis));
 		registerCommand(new ReloadCommand(manager));
 		registerCommand(new ReloadServersCommand(manager, redis));
-		registerCommand(new CompDebugCommand(redis));
+		registerCommand(new CompDebugCommand(manager, redis));
 		registerCommand(new SignCommand(signManager, manager));
 		registerCommand(new InfoCommand(manager, messages));
 		registerCommand(new StateCommand(manager, messages));
@@ -37,5 +38,6 @@ public final class CompAdminCommand extends RootCommandDispatcher {
 		registerCommand(new DialogCommand(manager, dialogService, joinService, viewService, messages, plugin));
 		registerCommand(new BackupCommand(manager, redis, messages));
 		registerCommand(new ResetCommand(manager, redis, messages));
+		registerCommand(new DbStatsCommand(profiler));
 	}
 }
@@ -3,8 +3,12 @@ package au.com.addstar.comp.lobby.commands;
 import java.util.EnumSet;
 import java.util.List;
 
+import au.com.addstar.comp.lobby.CircuitBreaker;
+import au.com.addstar.comp.lobby.CompManager;
+import au.com.addstar.comp.lobby.CompServer;
 import au.com.addstar.comp.lobby.LobbyPlugin;
 import org.bukkit.Bukkit;
+import org.bukkit.ChatColor;
 import org.bukkit.command.CommandSender;
 import org.jetbrains.annotations.NotNull;
 
@@ -18,9 +22,11 @@ import au.com.addstar.monolith.command.CommandSenderType;
 import au.com.addstar.monolith.command.ICommand;
 
 public class CompDebugCommand implements ICommand {
+	private final CompManager manager;
 	private final RedisManager redis;
 	
-	public CompDebugCommand(RedisManager redis) {
+	public CompDebugCommand(CompManager manager, RedisManager redis) {
+		this.manager = manager;
 		this.redis = redis;
 	}
 	
@@ -41,7 +47,7 @@ public class CompDebugCommand implements ICommand {
 
 	@Override
 	public String getUsageString(String label, CommandSender sender) {
-		return label;
+		return label + " [server]";
 	}
 
 	@Override
@@ -70,11 +76,44 @@ public class CompDebugCommand implements ICommand {
 					sender.sendMessage("Query errored: " + error);
 				}
 			}, Bukkit.getScheduler().getMainThreadExecutor(LobbyPlugin.instance));
-		} else
-			return false;
+		} else {
+			showServerStatus(sender);
+		}
 		
 		return true;
 	}
+	
+	private void showServerStatus(CommandSender sender) {
+		sender.sendMessage(ChatColor.GOLD + "Server status:");
+		long now = System.currentTimeMillis();
+		for (CompServer server : manager.getServers()) {
+			CircuitBreaker breaker = server.getBreaker();
+			
+			StringBuilder line = new StringBuilder();
+			line.append(ChatColor.GRAY).append(server.getId()).append(": ");
+			line.append(server.isOnline() ? ChatColor.GREEN + "online" : ChatColor.RED + "offline");
+			
+			line.append(ChatColor.GRAY).append(" breaker ");
+			switch (breaker.getState()) {
+			case Closed:
+				line.append(ChatColor.GREEN).append("closed");
+				break;
+			case Open:
+				line.append(ChatColor.RED).append("open").append(ChatColor.GRAY)
+					.append(" (probe in ").append(breaker.getTimeUntilProbe() / 1000).append("s)");
+				break;
+			case HalfOpen:
+				line.append(ChatColor.YELLOW).append("half-open");
+				break;
+			}
+			line.append(ChatColor.GRAY).append(" timeouts ").append(breaker.getConsecutiveTimeouts());
+			
+			if (server.getLastHeartbeat() != 0) {
+				line.append(" heartbeat ").append(now - server.getLastHeartbeat()).append("ms ago");
+			}
+			sender.sendMessage(line.toString());
+		}
+	}
 
 	@Override
 	public List<String> onTabComplete(CommandSender sender, String parent, String label, String[] args) {
@@ -327,12 +327,11 @@ public class PlaceHolderHandler {
     
     /**
      * Gets whether a player is whitelisted.
-     * Note: This is not implemented on the lobby server yet.
-     * @return null (unimplemented)
+     * The whitelist is shared by every server so the server is not needed
      */
     private String getIsWhitelisted(Player player, String serverId) {
-        // Whitelist is not implemented on the lobby server yet.
-        return null;
+        // Never wait on the database here, placeholders are resolved on the main thread
+        return Boolean.toString(plugin.getWhitelist().isWhitelistedCached(player.getUniqueId()));
     }
     
     /**
@@ -1,13 +1,19 @@
 package au.com.addstar.comp.lobby.signs;
 
+import au.com.addstar.comp.lobby.CompManager;
+
 public class SignRefresher implements Runnable {
 	private final SignManager manager;
-	public SignRefresher(SignManager manager) {
+	private final CompManager compManager;
+	public SignRefresher(SignManager manager, CompManager compManager) {
 		this.manager = manager;
+		this.compManager = compManager;
 	}
 	
 	@Override
 	public void run() {
+		// Fetch every servers count at once, the signs then share it
+		compManager.refreshEntrantCounts();
 		for (BaseSign sign : manager.getAllSigns()) {
 			sign.refresh();
 		}
@@ -11,6 +11,7 @@ import org.bukkit.Bukkit;
 import au.com.addstar.comp.redis.CommandReceiver;
 import au.com.addstar.comp.services.PlotBackupService;
 import au.com.addstar.comp.services.PlotResetService;
+import au.com.addstar.comp.whitelist.WhitelistHandler;
 
 public class CommandHandler implements CommandReceiver {
 	private final CompManager manager;
@@ -25,6 +26,11 @@ public class CommandHandler implements CommandReceiver {
 	
 	@Override
 	public void onReceive(String serverId, String command) {
+		if (command.startsWith(WhitelistHandler.CommandPrefix)) {
+			manager.getWhitelist().onReceive(serverId, command);
+			return;
+		}
+		
 		switch (command.toLowerCase()) {
 		case "reload":
 			manager.reloadCurrentComp();
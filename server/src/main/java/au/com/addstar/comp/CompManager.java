@@ -3,17 +3,19 @@ package au.com.addstar.comp;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Strings;
 import com.google.common.collect.Lists;
-import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.MoreExecutors;
 
 import au.com.addstar.comp.entry.EnterHandler;
 import au.com.addstar.comp.entry.EntryDeniedException;
 import au.com.addstar.comp.entry.EntryDeniedException.Reason;
+import au.com.addstar.comp.entry.PlotAllocator;
 import au.com.addstar.comp.prizes.BasePrize;
 import au.com.addstar.comp.redis.RedisManager;
 import au.com.addstar.comp.util.P2Bridge;
 import au.com.addstar.comp.voting.AbstractVotingStrategy;
 import au.com.addstar.comp.voting.Placement;
 import au.com.addstar.comp.voting.Vote;
+import au.com.addstar.comp.voting.VoteBuffer;
 import au.com.addstar.comp.voting.VoteStorage;
 import au.com.addstar.comp.voting.VotingStrategies;
 import au.com.addstar.comp.whitelist.WhitelistHandler;
@@ -22,6 +24,7 @@ import au.com.addstar.comp.whitelist.WhitelistHandler;
 import com.plotsquared.core.plot.Plot;
 import com.plotsquared.core.plot.PlotId;
 import org.bukkit.Bukkit;
+import org.bukkit.ChatColor;
 import org.bukkit.OfflinePlayer;
 import org.bukkit.entity.Player;
 
@@ -29,8 +32,8 @@ import java.sql.SQLException;
 import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
-import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Predicate;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -57,6 +60,7 @@ public class CompManager {
 
     private Competition currentComp;
     private VoteStorage<? extends Vote> voteStorage;
+    private final VoteBuffer voteBuffer;
     private au.com.addstar.comp.services.PlotBackupService plotBackupService;
     private au.com.addstar.comp.services.PlotResetService plotResetService;
     private au.com.addstar.comp.util.CompetitionChangeTracker changeTracker;
@@ -65,9 +69,14 @@ public class CompManager {
     private final boolean autoResetPlots;
     private final String lobbyId;
 
-    public CompManager(CompServerBackendManager backend, WhitelistHandler whitelist, P2Bridge bridge, RedisManager redis, Logger logger, 
+    // How long a plot stays reserved for a player who has not finished entering
+    private static final long EntryLeaseTime = TimeUnit.MINUTES.toMillis(10);
+    private final PlotAllocator allocator;
+
+    public CompManager(CompServerBackendManager backend, VoteBuffer voteBuffer, WhitelistHandler whitelist, P2Bridge bridge, RedisManager redis, Logger logger, 
             au.com.addstar.comp.util.CompetitionChangeTracker changeTracker, boolean autoResetPlots, String lobbyId) {
         this.backend = backend;
+        this.voteBuffer = voteBuffer;
         this.whitelist = whitelist;
         this.bridge = bridge;
         this.logger = logger;
@@ -75,6 +84,7 @@ public class CompManager {
         this.changeTracker = changeTracker;
         this.autoResetPlots = autoResetPlots;
         this.lobbyId = lobbyId;
+        this.allocator = new PlotAllocator(bridge);
 
         Entrant = player -> {
             if (currentComp != null && currentComp.getState() != CompState.Closed) {
@@ -172,6 +182,12 @@ public class CompManager {
         }
         
         Bukkit.getScheduler().runTaskAsynchronously(CompPlugin.instance, () -> {
+            // Buffered votes are not in the database yet, so they would drop out of the reloaded tally
+            if (!voteBuffer.flush()) {
+                logger.severe("[CompManager] Reload aborted: buffered votes could not be written to the database");
+                return;
+            }
+
             currentComp = getCompetition();
 
             if (currentComp != null) {
@@ -198,14 +214,16 @@ public class CompManager {
                         }
                         
                         // Clear reserved plots before reset
-                        reservedPlots.clear();
+                        allocator.reset();
                         
-                        // Trigger reset
-                        plotResetService.resetPlots(currentComp, null, () -> {
+                        // Trigger reset. Entries reopen whether it worked or not, as a failed reset is reported and
+                        // the plots that could not be cleared are still claimed
+                        plotResetService.resetPlots(currentComp, null, null).addListener(() -> {
+                            allocator.reset();
                             synchronized (plotResetLock) {
                                 isResettingPlots = false;
                             }
-                        });
+                        }, MoreExecutors.directExecutor());
                     } else if (changeTracker.hasCompetitionChanged(currentComp)) {
                         // Competition changed but reset not needed (no plots or auto-reset disabled)
                         // Still update tracker
@@ -231,17 +249,17 @@ public class CompManager {
      * Pushes all changes to the backend and notifies the lobby
      */
     public void updateCurrentComp() {
-        Bukkit.getScheduler().runTaskAsynchronously(CompPlugin.instance, () -> {
-            if (currentComp == null) {
-                return;
-            }
+        final Competition comp = currentComp;
+        if (comp == null) {
+            return;
+        }
 
-            try {
-                backend.update(currentComp);
-                redis.broadcastCommand("reloadsender");
-            } catch (SQLException e) {
-                logger.log(Level.SEVERE, "Failed to update current comp", e);
-            }
+        backend.asyncRun(() -> {
+            backend.update(comp);
+            redis.broadcastCommand("reloadsender");
+        }).exceptionally(e -> {
+            logger.log(Level.SEVERE, "Failed to update current comp", e);
+            return null;
         });
     }
 
@@ -359,6 +377,14 @@ public class CompManager {
         return backend;
     }
 
+    /**
+     * Gets the buffer that votes are written to the backend through
+     * @return The vote buffer
+     */
+    public VoteBuffer getVoteBuffer() {
+        return voteBuffer;
+    }
+
     public WhitelistHandler getWhitelist() {
         return whitelist;
     }
@@ -438,14 +464,20 @@ public class CompManager {
             }
         }
 
-        // Record the results
-        try {
-            backend.addResults(currentComp, fullResults);
-        } catch (SQLException e) {
-            logger.log(Level.SEVERE, "Failed to record results", e);
-        }
-        currentComp.setState(CompState.Closed);
-        updateCurrentComp();
+        // Record the results. Every vote is stored first so the two agree
+        final Competition comp = currentComp;
+        comp.setState(CompState.Closed);
+        backend.asyncRun(() -> {
+            if (!voteBuffer.flush()) {
+                throw new SQLException("Buffered votes could not be written, so the results would not match them");
+            }
+            backend.addResults(comp, fullResults);
+        }).whenComplete((result, error) -> {
+            if (error != null) {
+                logger.log(Level.SEVERE, "Failed to record results", error);
+            }
+            updateCurrentComp();
+        });
     }
 
     private List<PlotId> determineWinners(int maxPlacements) {
@@ -478,9 +510,6 @@ public class CompManager {
         return finalPlacements;
     }
 
-    // Plots reserved for players entering the comp (but not finished entering)
-    private final Set<Plot> reservedPlots = Sets.newHashSet();
-
     /**
      * Tries to enter a player into the current comp.
      * @param player The player to enter
@@ -499,7 +528,8 @@ public class CompManager {
             throw new EntryDeniedException(Reason.NotRunning, "No comp running");
         }
 
-        if (hasEntered(player)) {
+        // A claim the owner index missed must not let them enter twice
+        if (bridge.findPlot(player.getUniqueId()) != null) {
             throw new EntryDeniedException(Reason.AlreadyEntered, player.getName() + " is already entered");
         }
 
@@ -517,49 +547,66 @@ public class CompManager {
             throw new EntryDeniedException(Reason.Full, "Comp is full");
         }
 
-        // Find a plot for them
-        Plot target = null;
-        for (Plot plot : bridge.getOrderedPlots(currentComp.getMaxEntrants())) {
-            // Must not have an owner, or be reserved
-            if (!plot.hasOwner() && !reservedPlots.contains(plot)) {
-                target = plot;
-                break;
-            }
-        }
+        // Reserve a plot for them
+        allocator.ensureSize(currentComp.getMaxEntrants());
+        PlotAllocator.Lease lease = allocator.lease(player.getUniqueId(), EntryLeaseTime);
 
         // Can happen if there are reserved plots
-        if (target == null) {
+        if (lease == null) {
             throw new EntryDeniedException(Reason.Full, "Comp is full");
         }
 
-        reservedPlots.add(target);
+        return new EnterHandlerImpl(currentComp, lease, player);
+    }
 
-        return new EnterHandlerImpl(currentComp, target, player);
+    /**
+     * Frees any plots reserved for players who never finished entering
+     */
+    public void expireEntryLeases() {
+        int expired = allocator.expireLeases();
+        if (expired > 0) {
+            logger.info("[CompManager] Released " + expired + " plot reservations that were never completed");
+        }
     }
 
     private class EnterHandlerImpl extends EnterHandler {
-        public EnterHandlerImpl(Competition comp, Plot plot, OfflinePlayer player) {
-            super(comp, plot, player);
+        private final PlotAllocator.Lease lease;
+
+        public EnterHandlerImpl(Competition comp, PlotAllocator.Lease lease, OfflinePlayer player) {
+            super(comp, lease.getPlot(), player);
+            this.lease = lease;
         }
 
         @Override
         public void complete() {
+            if (!allocator.complete(lease)) {
+                // Their reservation ran out and the plot has gone to someone else
+                logger.warning("[CompManager] The plot reserved for " + getPlayer().getName() + " expired before they finished entering");
+                Player online = getPlayer().getPlayer();
+                if (online != null) {
+                    online.sendMessage(ChatColor.RED + "Your plot reservation expired. Please try entering again.");
+                }
+                return;
+            }
+
             // Assign the plot
             bridge.claim(getPlot(), getPlayer(), true);
-            reservedPlots.remove(getPlot());
             
             // Record entry in database for external web app access
-            try {
-                backend.addEntry(getComp(), getPlayer().getUniqueId(), getPlot().getId().toString());
-            } catch (SQLException e) {
-                // Log error but don't fail entry process - P2 is the source of truth
-                logger.log(Level.WARNING, "Failed to record plot entry in database for " + getPlayer().getName() + " in comp " + getComp().getCompId(), e);
-            }
+            final Competition comp = getComp();
+            final OfflinePlayer player = getPlayer();
+            final String plotId = getPlot().getId().toString();
+            backend.asyncRun(() -> backend.addEntry(comp, player.getUniqueId(), plotId))
+                    .exceptionally(e -> {
+                        // Log error but don't fail entry process - P2 is the source of truth
+                        logger.log(Level.WARNING, "Failed to record plot entry in database for " + player.getName() + " in comp " + comp.getCompId(), e);
+                        return null;
+                    });
         }
 
         @Override
         public void abort() {
-            reservedPlots.remove(getPlot());
+            allocator.release(lease);
             // No further action required
         }
     }
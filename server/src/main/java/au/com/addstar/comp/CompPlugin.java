@@ -31,10 +31,12 @@ import au.com.addstar.comp.placeholders.PAPIPlaceHolderExtension;
 import au.com.addstar.comp.placeholders.PlaceHolderHandler;
 import au.com.addstar.comp.query.*;
 import au.com.addstar.comp.redis.RedisManager;
-import au.com.addstar.comp.redis.RedisQueryTimeoutTask;
 import au.com.addstar.comp.util.CompetitionChangeTracker;
 import au.com.addstar.comp.util.Messages;
 import au.com.addstar.comp.util.P2Bridge;
+import au.com.addstar.comp.util.PlotClearingPipeline;
+import au.com.addstar.comp.util.PlotEmptinessChecker;
+import au.com.addstar.comp.voting.VoteBuffer;
 import au.com.addstar.comp.whitelist.WhitelistHandler;
 
 @SuppressWarnings("unused")
@@ -51,6 +53,7 @@ public class CompPlugin extends JavaPlugin {
     private PlotBackupService plotBackupService;
     private PlotResetService plotResetService;
     private CompetitionChangeTracker changeTracker;
+    private VoteBuffer voteBuffer;
     private static final HashMap<Player, Hotbar> currentHotbars = new HashMap<>();
     private static String serverName;
 
@@ -103,7 +106,8 @@ public class CompPlugin extends JavaPlugin {
             getLogger().log(Level.SEVERE, "Failed to load messages", e);
             return;
         }
-        WhitelistHandler whitelistHandler = new WhitelistHandler(databaseManager.getPool());
+        WhitelistHandler whitelistHandler = new WhitelistHandler(databaseManager, redisManager);
+        whitelistHandler.refresh();
         try{
             PlotAPI api = new PlotAPI();
             bridge = new P2Bridge(api);
@@ -128,7 +132,10 @@ public class CompPlugin extends JavaPlugin {
         boolean autoResetPlots = getConfig().getBoolean("auto-reset-plots-on-comp-change", false);
         String lobbyId = getConfig().getString("lobby-id", "complobby");
         
-        compManager = new CompManager(new CompServerBackendManager(databaseManager), whitelistHandler, bridge, redisManager, getLogger(),
+        CompServerBackendManager backend = new CompServerBackendManager(databaseManager);
+        backend.setVoteFetchSize(getConfig().getInt("database.vote-fetch-size", 1000));
+        voteBuffer = new VoteBuffer(backend, this, getConfig().getInt("vote-buffer.max-size", 200));
+        compManager = new CompManager(backend, voteBuffer, whitelistHandler, bridge, redisManager, getLogger(),
                 changeTracker, autoResetPlots, lobbyId);
         confirmationManager = new ConfirmationManager();
 
@@ -148,9 +155,18 @@ public class CompPlugin extends JavaPlugin {
         // Create plot backup service
         boolean backupEmptyPlots = getConfig().getBoolean("backup.backup-empty-plots", true);
         int progressInterval = getConfig().getInt("backup.backup-progress-interval", 10);
-        plotBackupService = new PlotBackupService(bridge, this, getLogger(), backupEmptyPlots, progressInterval);
+        PlotEmptinessChecker emptinessChecker = new PlotEmptinessChecker(this, getConfig().getLong("backup.empty-check-max-age", 30));
+        Bukkit.getPluginManager().registerEvents(emptinessChecker, this);
+        plotBackupService = new PlotBackupService(bridge, emptinessChecker, this, getLogger(), backupEmptyPlots, progressInterval);
         
         // Create plot reset service
+        bridge.setClearingSettings(new PlotClearingPipeline.Settings(
+                getConfig().getInt("plot-clearing.max-concurrent", 4),
+                getConfig().getLong("plot-clearing.tick-budget", 5),
+                getConfig().getDouble("plot-clearing.target-tps", 18),
+                getConfig().getLong("plot-clearing.progress-interval", 5),
+                getConfig().getLong("plot-clearing.deletion-timeout", 120)
+        ));
         plotResetService = new PlotResetService(plotBackupService, bridge, this, getLogger(), changeTracker, lobbyId, messages);
         
         // Set services in CompManager
@@ -161,7 +177,7 @@ public class CompPlugin extends JavaPlugin {
         Bukkit.getMessenger().registerOutgoingPluginChannel(this, "BungeeCord");
 
         // Register commands
-        new CompAdminCommand(whitelistHandler, compManager, notificationManager, confirmationManager, plotBackupService, plotResetService, messages).registerAs(getCommand("compadmin"));
+        new CompAdminCommand(whitelistHandler, compManager, notificationManager, confirmationManager, plotBackupService, plotResetService, bridge, databaseManager.getProfiler(), messages).registerAs(getCommand("compadmin"));
         new JoinCommand(compManager, confirmationManager, messages).registerAs(getCommand("compjoin"));
         new AgreeCommand(confirmationManager, messages).registerAs(getCommand("compagree"));
         new CompInfoCommand(compManager, messages).registerAs(getCommand("compinfo"));
@@ -178,9 +194,16 @@ public class CompPlugin extends JavaPlugin {
         Bukkit.getScheduler().runTaskTimer(this, () -> {
             confirmationManager.expireConfirmations();
             remoteJoinManager.expireHandlers();
+            compManager.expireEntryLeases();
         }, 20, 20);
         Bukkit.getScheduler().runTaskTimerAsynchronously(this, new CompTimer(compManager, notificationManager), 10, 10);
-        Bukkit.getScheduler().runTaskTimer(this, new RedisQueryTimeoutTask(redisManager), 20, 20);
+        Bukkit.getScheduler().runTaskTimer(this, new HeartbeatTask(compManager, bridge, redisManager), 0, 20);
+        long flushInterval = Math.max(1, getConfig().getLong("vote-buffer.flush-interval", 40));
+        Bukkit.getScheduler().runTaskTimerAsynchronously(this, voteBuffer, flushInterval, flushInterval);
+        long whitelistRefresh = Math.max(1, getConfig().getLong("whitelist-refresh", 300)) * 20;
+        Bukkit.getScheduler().runTaskTimerAsynchronously(this, whitelistHandler::refresh, whitelistRefresh, whitelistRefresh);
+        long plotIndexReconcile = Math.max(1, getConfig().getLong("plot-index-reconcile", 300)) * 20;
+        Bukkit.getScheduler().runTaskTimer(this, bridge::reconcileOwnerIndex, plotIndexReconcile, plotIndexReconcile);
         redisManager.setCommandReceiver(new CommandHandler(compManager, plotBackupService, plotResetService));
 
         // Load the comp
@@ -189,6 +212,7 @@ public class CompPlugin extends JavaPlugin {
     }
 
     private void registerQueryHandlers() {
+        redisManager.setMainThreadExecutor(Bukkit.getScheduler().getMainThreadExecutor(this));
         redisManager.registerQueryHandler(new QueryEntrantCount(bridge), "entrant_count");
         redisManager.registerQueryHandler(new QueryIsEntrant(bridge), "is_entrant");
         redisManager.registerQueryHandler(new QueryPing(), "ping");
@@ -212,6 +236,11 @@ public class CompPlugin extends JavaPlugin {
             redisManager.shutdown();
         }
         
+        // Write any votes that have not been stored yet
+        if (voteBuffer != null && !voteBuffer.flush()) {
+            getLogger().severe(voteBuffer.getDepth() + " votes could not be saved during shutdown");
+        }
+        
         if (databaseManager != null) {
             databaseManager.shutdown();
         }
@@ -2,11 +2,17 @@ package au.com.addstar.comp;
 
 
 import au.com.addstar.comp.database.DatabaseManager;
+import au.com.addstar.comp.database.HikariConnectionPool;
 import au.com.addstar.comp.database.StatementKey;
+import au.com.addstar.comp.database.UUIDCodec;
+import au.com.addstar.comp.database.Workload;
+import au.com.addstar.comp.database.UnitOfWork;
 import au.com.addstar.comp.voting.AbstractVoteProvider;
 import au.com.addstar.comp.voting.Vote;
 import com.google.common.collect.HashMultimap;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Multimap;
 import com.google.common.collect.SetMultimap;
 import com.plotsquared.core.plot.PlotId;
 
@@ -16,6 +22,7 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 
 public class CompServerBackendManager extends CompBackendManager {
@@ -27,16 +34,26 @@ public class CompServerBackendManager extends CompBackendManager {
 	private static final StatementKey STATEMENT_VOTE_GETALL_PLAYER;
 
 	static {
-		STATEMENT_VOTE_ADD = new StatementKey("INSERT INTO " + TABLE_VOTES + " (CompID, UUID, PlotID, PlotOwner, Vote) VALUES (?,?,?,?,?) ON DUPLICATE KEY UPDATE Vote=VALUES(Vote)");
+		STATEMENT_VOTE_ADD = new StatementKey("INSERT INTO " + TABLE_VOTES + " (CompID, UUID, UUIDBin, PlotID, PlotOwner, PlotOwnerBin, Vote) VALUES (?,?,?,?,?,?,?) ON DUPLICATE KEY UPDATE Vote=VALUES(Vote), UUIDBin=VALUES(UUIDBin), PlotOwnerBin=VALUES(PlotOwnerBin)");
 		STATEMENT_VOTE_REMOVE = new StatementKey("DELETE FROM " + TABLE_VOTES + " WHERE CompID=? AND UUID=? AND PlotID=?");
-		STATEMENT_VOTE_GETALL_COMP = new StatementKey("SELECT UUID, PlotID, PlotOwner, Vote FROM " + TABLE_VOTES + " WHERE CompID=?");
-		STATEMENT_VOTE_GETALL_PLAYER = new StatementKey("SELECT PlotID, PlotOwner, Vote FROM " + TABLE_VOTES + " WHERE CompID=? AND UUID=?");
+		STATEMENT_VOTE_GETALL_COMP = new StatementKey("SELECT UUID, UUIDBin, PlotID, PlotOwner, PlotOwnerBin, Vote FROM " + TABLE_VOTES + " WHERE CompID=?");
+		STATEMENT_VOTE_GETALL_PLAYER = new StatementKey("SELECT PlotID, PlotOwner, PlotOwnerBin, Vote FROM " + TABLE_VOTES + " WHERE CompID=? AND UUID=?");
 	}
 
+	private int voteFetchSize = 1000;
+
 	public CompServerBackendManager(DatabaseManager manager) {
 		super(manager);
 	}
 
+	/**
+	 * Sets how many vote rows are fetched from the database at a time when streaming votes
+	 * @param voteFetchSize The number of rows, or 0 to read the whole result at once
+	 */
+	public void setVoteFetchSize(int voteFetchSize) {
+		this.voteFetchSize = Math.max(0, voteFetchSize);
+	}
+
 	/**
 	 * Loads all votes for a player in a comp
 	 * @param player The player to load votes for
@@ -56,10 +73,10 @@ public class CompServerBackendManager extends CompBackendManager {
 			List<T> votes = Lists.newArrayList();
 			while (rs.next()) {
 				String rawPlotId = rs.getString("PlotID");
-				String rawPlotOwnerUUID = rs.getString("UUID");
+				UUID plotOwner = readPlotOwner(rs);
 				int voteValue = rs.getInt("Vote");
 				try {
-					T vote = getVote(rawPlotId,rawPlotOwnerUUID,voteValue,provider);
+					T vote = getVote(rawPlotId,plotOwner,voteValue,provider);
 					votes.add(vote);
 				} catch (IllegalArgumentException e) {
 					// Drop invalid votes
@@ -72,19 +89,20 @@ public class CompServerBackendManager extends CompBackendManager {
 		}
 	}
 
-	private <T extends  Vote> T getVote(String rawPlotId, String rawPlotOwnerUUID, int voteValue,AbstractVoteProvider<T> provider) throws IllegalArgumentException{
+	private <T extends  Vote> T getVote(String rawPlotId, UUID plotowner, int voteValue,AbstractVoteProvider<T> provider) throws IllegalArgumentException{
 		PlotId plot = PlotId.fromString(rawPlotId);
 
-		UUID plotowner;
+		T vote = provider.loadVote(plot, plotowner, voteValue);
+		return vote;
+	}
+
+	private UUID readPlotOwner(ResultSet rs) throws SQLException {
 		try {
-			plotowner = UUID.fromString(rawPlotOwnerUUID);
+			return UUIDCodec.read(rs, "PlotOwnerBin", "PlotOwner");
 		} catch (IllegalArgumentException e) {
 			// It's fine to have invalid plotowners stored (will happen when this change is first deployed)
-			plotowner = null;
+			return null;
 		}
-
-		T vote = provider.loadVote(plot, plotowner, voteValue);
-		return vote;
 	}
 
 	/**
@@ -94,41 +112,71 @@ public class CompServerBackendManager extends CompBackendManager {
 	 * @param <T> The type of vote
 	 * @return A multimap. The key is the UUID of the player, the values are the votes that player did
 	 * @throws SQLException Thrown if something goes wrong reading the votes
+	 * @see #streamVotes(Competition, AbstractVoteProvider, VoteConsumer)
 	 */
 	public <T extends Vote> SetMultimap<UUID, T> loadVotes(Competition comp, AbstractVoteProvider<T> provider) throws SQLException {
-		try (Connection handler = getPool().getConnection()) {
-			String sql;
-			PreparedStatement statement = handler.prepareStatement(STATEMENT_VOTE_GETALL_COMP.getSQL());
+		SetMultimap<UUID, T> votes = HashMultimap.create();
+		streamVotes(comp, provider, votes::put);
+		return votes;
+	}
+
+	/**
+	 * Reads all votes for a comp, handing each one over as it is read.
+	 * Rows are streamed from the bulk pool so the whole result is never held in memory,
+	 * and each plot id is only parsed once so votes for the same plot share one PlotId.
+	 * @param comp The comp to load votes for
+	 * @param provider A provider to create votes
+	 * @param consumer Receives each vote along with its voter
+	 * @param <T> The type of vote
+	 * @return The number of votes read
+	 * @throws SQLException Thrown if something goes wrong reading the votes
+	 */
+	public <T extends Vote> int streamVotes(Competition comp, AbstractVoteProvider<T> provider, VoteConsumer<? super T> consumer) throws SQLException {
+		Map<String, PlotId> plotIds = Maps.newHashMap();
+		int count = 0;
+		HikariConnectionPool pool = getPool(Workload.Bulk);
+		try (Connection handler = pool.getConnection();
+				PreparedStatement statement = handler.prepareStatement(STATEMENT_VOTE_GETALL_COMP.getSQL(), ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+			// Without cursor fetch (bulk pool shared with the interactive one) the driver streams row by row instead
+			statement.setFetchSize(pool.isCursorFetch() ? voteFetchSize : Integer.MIN_VALUE);
 			statement.setInt(1, comp.getCompId());
 			try (ResultSet rs = statement.executeQuery()) {
-				SetMultimap<UUID, T> votes = HashMultimap.create();
+				// Columns: UUID, UUIDBin, PlotID, PlotOwner, PlotOwnerBin, Vote
 				while (rs.next()) {
-					String rawUUID = rs.getString("UUID");
-					String rawPlotId = rs.getString("PlotID");
-					String rawPlotOwnerUUID = rs.getString("UUID");
-					int voteValue = rs.getInt("Vote");
-
-					UUID id;
-					try {
-						id = UUID.fromString(rawUUID);
-					} catch (IllegalArgumentException e) {
-						// Drop invalid votes
-						continue;
-					}
+					UUID voter;
 					T vote;
 					try {
-						vote = getVote(rawPlotId,rawPlotOwnerUUID,voteValue,provider);
-						votes.put(id, vote);
+						voter = UUIDCodec.read(rs, 2, 1);
+						PlotId plot = plotIds.computeIfAbsent(rs.getString(3), PlotId::fromString);
+
+						UUID plotOwner;
+						try {
+							plotOwner = UUIDCodec.read(rs, 5, 4);
+						} catch (IllegalArgumentException e) {
+							// It's fine to have invalid plotowners stored (will happen when this change is first deployed)
+							plotOwner = null;
+						}
+
+						vote = provider.loadVote(plot, plotOwner, rs.getInt(6));
 					} catch (IllegalArgumentException e) {
 						// Drop invalid votes
 						continue;
 					}
 
+					consumer.accept(voter, vote);
+					++count;
 				}
-
-				return votes;
 			}
 		}
+		return count;
+	}
+
+	/**
+	 * Receives votes as they are read from the database
+	 * @param <T> The type of vote
+	 */
+	public interface VoteConsumer<T extends Vote> {
+		void accept(UUID voter, T vote);
 	}
 
 	/**
@@ -145,13 +193,44 @@ public class CompServerBackendManager extends CompBackendManager {
 			PreparedStatement statement = handler.prepareStatement(STATEMENT_VOTE_ADD.getSQL());
 			statement.setInt(1, comp.getCompId());
 			statement.setString(2, voter.toString());
-			statement.setString(3, vote.getPlot().toString());
-			statement.setString(4, vote.getPlotOwner().toString());
-			statement.setInt(5, vote.toNumber());
+			statement.setBytes(3, UUIDCodec.toBytes(voter));
+			statement.setString(4, vote.getPlot().toString());
+			statement.setString(5, vote.getPlotOwner().toString());
+			statement.setBytes(6, UUIDCodec.toBytes(vote.getPlotOwner()));
+			statement.setInt(7, vote.toNumber());
 			statement.executeUpdate();
 		}
 	}
 
+	/**
+	 * Records many votes in a single batch. Votes already recorded for a player will be overridden
+	 * @param comp The comp to record the votes in
+	 * @param votes The votes to record, keyed by voter
+	 * @throws SQLException Thrown if something goes wrong writing the votes
+	 */
+	public void addVotes(Competition comp, Multimap<UUID, ? extends Vote> votes) throws SQLException {
+		if (votes.isEmpty()) {
+			return;
+		}
+
+		try (UnitOfWork work = beginWork()) {
+			PreparedStatement statement = work.prepare(STATEMENT_VOTE_ADD);
+			for (Map.Entry<UUID, ? extends Vote> entry : votes.entries()) {
+				Vote vote = entry.getValue();
+				statement.setInt(1, comp.getCompId());
+				statement.setString(2, entry.getKey().toString());
+				statement.setBytes(3, UUIDCodec.toBytes(entry.getKey()));
+				statement.setString(4, vote.getPlot().toString());
+				statement.setString(5, vote.getPlotOwner().toString());
+				statement.setBytes(6, UUIDCodec.toBytes(vote.getPlotOwner()));
+				statement.setInt(7, vote.toNumber());
+				statement.addBatch();
+			}
+			work.executeBatch(STATEMENT_VOTE_ADD);
+			work.commit();
+		}
+	}
+
 	/**
 	 * Removes a vote for the player if any is recorded
 	 * @param voter The UUID of the voter
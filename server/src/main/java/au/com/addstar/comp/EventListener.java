@@ -120,7 +120,7 @@ public class EventListener implements Listener {
 		}
 		
 		// Check for no other plots
-		if (bridge.getPlot(event.getPlotPlayer().getUUID()) != null) {
+		if (bridge.findPlot(event.getPlotPlayer().getUUID()) != null) {
 			event.getPlotPlayer().sendMessage(StaticCaption.of(messages.get("join.denied.already-entered")));
 			event.setEventResult(Result.DENY);
 			return;
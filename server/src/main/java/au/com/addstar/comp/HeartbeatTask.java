@@ -0,0 +1,38 @@
+package au.com.addstar.comp;
+
+import org.bukkit.Bukkit;
+
+import au.com.addstar.comp.redis.RedisManager;
+import au.com.addstar.comp.redis.ServerPresence;
+import au.com.addstar.comp.util.P2Bridge;
+
+/**
+ * Periodically tells the lobby that this server is alive,
+ * along with some status information
+ */
+public class HeartbeatTask implements Runnable {
+	private final CompManager compManager;
+	private final P2Bridge bridge;
+	private final RedisManager redis;
+	
+	public HeartbeatTask(CompManager compManager, P2Bridge bridge, RedisManager redis) {
+		this.compManager = compManager;
+		this.bridge = bridge;
+		this.redis = redis;
+	}
+	
+	@Override
+	public void run() {
+		Competition comp = compManager.getCurrentComp();
+		
+		ServerPresence presence = new ServerPresence(
+			Bukkit.getTPS()[0],
+			Bukkit.getOnlinePlayers().size(),
+			compManager.getState().name(),
+			bridge.getUsedPlotCount(),
+			(comp != null ? comp.getMaxEntrants() : 0)
+		);
+		
+		redis.broadcastPresence(presence);
+	}
+}
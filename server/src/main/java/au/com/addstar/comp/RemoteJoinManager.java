@@ -132,4 +132,10 @@ public class RemoteJoinManager implements RedisQueryHandler {
 			throw new AssertionError("This handle should not be registed for the command " + command);
 		}
 	}
+	
+	@Override
+	public boolean runsOnMainThread() {
+		// Entering a comp reserves and claims plots through PlotSquared
+		return true;
+	}
 }
@@ -2,15 +2,17 @@ package au.com.addstar.comp.commands;
 
 import au.com.addstar.comp.CompManager;
 import au.com.addstar.comp.confirmations.ConfirmationManager;
+import au.com.addstar.comp.database.QueryProfiler;
 import au.com.addstar.comp.notifications.NotificationManager;
 import au.com.addstar.comp.services.PlotBackupService;
 import au.com.addstar.comp.services.PlotResetService;
 import au.com.addstar.comp.util.Messages;
+import au.com.addstar.comp.util.P2Bridge;
 import au.com.addstar.comp.whitelist.WhitelistHandler;
 import au.com.addstar.monolith.command.RootCommandDispatcher;
 
 public final class CompAdminCommand extends RootCommandDispatcher {
-	public CompAdminCommand(WhitelistHandler whitelist, CompManager manager, NotificationManager notificationManager, ConfirmationManager confirmations, PlotBackupService backupService, PlotResetService resetService, Messages messages) {
+	public CompAdminCommand(WhitelistHandler whitelist, CompManager manager, NotificationManager notificationManager, ConfirmationManager confirmations, PlotBackupService backupService, PlotResetService resetService, P2Bridge bridge, QueryProfiler profiler, Messages messages) {
 		super("Gives access to all comp administration commands");
 		
 		registerCommand(new WhitelistCommand(whitelist));
@@ -19,5 +21,8 @@ public final class CompAdminCommand extends RootCommandDispatcher {
 		registerCommand(new TallyVotesCommand(manager, confirmations));
 		registerCommand(new BackupCommand(manager, backupService, messages));
 		registerCommand(new ResetCommand(manager, resetService, messages));
+		registerCommand(new VoteBufferCommand(manager.getVoteBuffer()));
+		registerCommand(new DbStatsCommand(profiler));
+		registerCommand(new PlotIndexCommand(bridge));
 	}
 }
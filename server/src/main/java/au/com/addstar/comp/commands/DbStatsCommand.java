@@ -0,0 +1,84 @@
+package au.com.addstar.comp.commands;
+
+import java.util.EnumSet;
+import java.util.List;
+
+import org.bukkit.command.CommandSender;
+
+import au.com.addstar.comp.database.QueryProfiler;
+import au.com.addstar.monolith.command.BadArgumentException;
+import au.com.addstar.monolith.command.CommandSenderType;
+import au.com.addstar.monolith.command.ICommand;
+import net.md_5.bungee.api.ChatColor;
+
+public class DbStatsCommand implements ICommand {
+	private final QueryProfiler profiler;
+
+	public DbStatsCommand(QueryProfiler profiler) {
+		this.profiler = profiler;
+	}
+
+	@Override
+	public String getName() {
+		return "dbstats";
+	}
+
+	@Override
+	public String[] getAliases() {
+		return null;
+	}
+
+	@Override
+	public String getPermission() {
+		return "comp.admin.dbstats";
+	}
+
+	@Override
+	public String getUsageString(String label, CommandSender sender) {
+		return label + " [reset]";
+	}
+
+	@Override
+	public String getDescription() {
+		return "Shows the statements that have taken the most database time";
+	}
+
+	@Override
+	public EnumSet<CommandSenderType> getAllowedSenders() {
+		return EnumSet.allOf(CommandSenderType.class);
+	}
+
+	@Override
+	public boolean onCommand(CommandSender sender, String parent, String label, String[] args) throws BadArgumentException {
+		if (args.length > 1) {
+			return false;
+		}
+
+		if (profiler == null) {
+			sender.sendMessage(ChatColor.RED + "Database profiling is disabled in the config");
+			return true;
+		}
+
+		if (args.length == 1) {
+			if (!args[0].equalsIgnoreCase("reset")) {
+				return false;
+			}
+
+			profiler.reset();
+			sender.sendMessage(ChatColor.GREEN + "Database statistics have been reset");
+			return true;
+		}
+
+		for (String line : profiler.getReport()) {
+			sender.sendMessage(line);
+		}
+
+		return true;
+	}
+
+	@Override
+	public List<String> onTabComplete(CommandSender sender, String parent, String label, String[] args) {
+		return null;
+	}
+
+}
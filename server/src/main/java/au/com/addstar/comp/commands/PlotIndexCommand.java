@@ -0,0 +1,92 @@
+package au.com.addstar.comp.commands;
+
+import java.util.EnumSet;
+import java.util.List;
+
+import org.bukkit.command.CommandSender;
+
+import au.com.addstar.comp.util.P2Bridge;
+import au.com.addstar.comp.util.PlotOwnerIndex;
+import au.com.addstar.monolith.command.BadArgumentException;
+import au.com.addstar.monolith.command.CommandSenderType;
+import au.com.addstar.monolith.command.ICommand;
+import net.md_5.bungee.api.ChatColor;
+
+public class PlotIndexCommand implements ICommand {
+	private final P2Bridge bridge;
+	
+	public PlotIndexCommand(P2Bridge bridge) {
+		this.bridge = bridge;
+	}
+	
+	@Override
+	public String getName() {
+		return "plotindex";
+	}
+
+	@Override
+	public String[] getAliases() {
+		return null;
+	}
+
+	@Override
+	public String getPermission() {
+		return "comp.admin.plotindex";
+	}
+
+	@Override
+	public String getUsageString(String label, CommandSender sender) {
+		return label + " [fix]";
+	}
+
+	@Override
+	public String getDescription() {
+		return "Compares the plot owner index against every plot, or rebuilds it";
+	}
+
+	@Override
+	public EnumSet<CommandSenderType> getAllowedSenders() {
+		return EnumSet.allOf(CommandSenderType.class);
+	}
+
+	@Override
+	public boolean onCommand(CommandSender sender, String parent, String label, String[] args) throws BadArgumentException {
+		if (args.length > 1) {
+			return false;
+		}
+		
+		boolean fix = false;
+		if (args.length == 1) {
+			if (!args[0].equalsIgnoreCase("fix")) {
+				return false;
+			}
+			fix = true;
+		}
+		
+		PlotOwnerIndex.Report report = (fix ? bridge.reconcileOwnerIndex() : bridge.verifyOwnerIndex());
+		
+		sender.sendMessage(ChatColor.GOLD + "Plot owner index:");
+		sender.sendMessage(ChatColor.GRAY + " Owned plots: " + ChatColor.YELLOW + report.indexedPlots + ChatColor.GRAY + " indexed, " + ChatColor.YELLOW + report.scannedPlots + ChatColor.GRAY + " scanned");
+		sender.sendMessage(ChatColor.GRAY + " Owners: " + ChatColor.YELLOW + report.indexedOwners + ChatColor.GRAY + " indexed, " + ChatColor.YELLOW + report.scannedOwners + ChatColor.GRAY + " scanned");
+		if (report.getDrift() == 0) {
+			sender.sendMessage(ChatColor.GREEN + " The index matches every plot");
+		} else {
+			sender.sendMessage(ChatColor.GRAY + " Missing plots: " + ChatColor.RED + report.missingPlots
+					+ ChatColor.GRAY + ", extra plots: " + ChatColor.RED + report.extraPlots
+					+ ChatColor.GRAY + ", wrong owners: " + ChatColor.RED + report.wrongOwners);
+			if (fix) {
+				sender.sendMessage(ChatColor.GREEN + " The index has been rebuilt");
+			} else {
+				sender.sendMessage(ChatColor.GRAY + " Use " + ChatColor.YELLOW + "/compadmin plotindex fix" + ChatColor.GRAY + " to rebuild it");
+			}
+		}
+		
+		return true;
+	}
+
+	@Override
+	public List<String> onTabComplete(CommandSender sender, String parent, String label, String[] args) {
+		return null;
+	}
+
+}
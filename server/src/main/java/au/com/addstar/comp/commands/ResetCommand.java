@@ -98,6 +98,16 @@ public class ResetCommand implements ICommand {
 				}
 				sender.sendMessage(message);
 			}
+			
+			@Override
+			public void onClearingProgress(int cleared, int failed, int total, double plotsPerSecond, double tps) {
+				sender.sendMessage(messages.get("reset.clearing-progress")
+					.replace("{cleared}", String.valueOf(cleared))
+					.replace("{failed}", String.valueOf(failed))
+					.replace("{total}", String.valueOf(total))
+					.replace("{rate}", String.format("%.1f", plotsPerSecond))
+					.replace("{tps}", String.format("%.1f", tps)));
+			}
 		};
 		
 		// Start reset
@@ -0,0 +1,89 @@
+package au.com.addstar.comp.commands;
+
+import java.util.EnumSet;
+import java.util.List;
+
+import org.bukkit.command.CommandSender;
+
+import au.com.addstar.comp.voting.VoteBuffer;
+import au.com.addstar.monolith.command.BadArgumentException;
+import au.com.addstar.monolith.command.CommandSenderType;
+import au.com.addstar.monolith.command.ICommand;
+import net.md_5.bungee.api.ChatColor;
+
+public class VoteBufferCommand implements ICommand {
+	private final VoteBuffer buffer;
+	
+	public VoteBufferCommand(VoteBuffer buffer) {
+		this.buffer = buffer;
+	}
+	
+	@Override
+	public String getName() {
+		return "votebuffer";
+	}
+
+	@Override
+	public String[] getAliases() {
+		return null;
+	}
+
+	@Override
+	public String getPermission() {
+		return "comp.admin.votebuffer";
+	}
+
+	@Override
+	public String getUsageString(String label, CommandSender sender) {
+		return label + " [flush]";
+	}
+
+	@Override
+	public String getDescription() {
+		return "Shows the state of the vote buffer, or writes it now";
+	}
+
+	@Override
+	public EnumSet<CommandSenderType> getAllowedSenders() {
+		return EnumSet.allOf(CommandSenderType.class);
+	}
+
+	@Override
+	public boolean onCommand(CommandSender sender, String parent, String label, String[] args) throws BadArgumentException {
+		if (args.length > 1) {
+			return false;
+		}
+		
+		if (args.length == 1) {
+			if (!args[0].equalsIgnoreCase("flush")) {
+				return false;
+			}
+			
+			if (buffer.flush()) {
+				sender.sendMessage(ChatColor.GREEN + "All buffered votes have been written");
+			} else {
+				sender.sendMessage(ChatColor.RED + "Failed to write the buffered votes. See the console for details");
+			}
+			return true;
+		}
+		
+		sender.sendMessage(ChatColor.GOLD + "Vote buffer:");
+		sender.sendMessage(ChatColor.GRAY + " Waiting: " + ChatColor.YELLOW + buffer.getDepth() + ChatColor.GRAY + " / " + buffer.getMaxSize());
+		sender.sendMessage(ChatColor.GRAY + " Written: " + ChatColor.YELLOW + buffer.getFlushedVotes() + ChatColor.GRAY + " in " + buffer.getFlushCount() + " flushes");
+		sender.sendMessage(ChatColor.GRAY + " Coalesced revotes: " + ChatColor.YELLOW + buffer.getCoalescedVotes());
+		sender.sendMessage(ChatColor.GRAY + " Flush time: " + ChatColor.YELLOW + buffer.getLastFlushLatency() + "ms" + ChatColor.GRAY + " last, "
+				+ ChatColor.YELLOW + buffer.getAverageFlushLatency() + "ms" + ChatColor.GRAY + " avg, "
+				+ ChatColor.YELLOW + buffer.getMaxFlushLatency() + "ms" + ChatColor.GRAY + " max");
+		if (buffer.getFailedFlushes() > 0) {
+			sender.sendMessage(ChatColor.GRAY + " Failed flushes: " + ChatColor.RED + buffer.getFailedFlushes());
+		}
+		
+		return true;
+	}
+
+	@Override
+	public List<String> onTabComplete(CommandSender sender, String parent, String label, String[] args) {
+		return null;
+	}
+
+}
@@ -1,8 +1,8 @@
 package au.com.addstar.comp.commands;
 
-import java.sql.SQLException;
 import java.util.EnumSet;
 import java.util.List;
+import java.util.concurrent.Executor;
 
 import au.com.addstar.comp.CompPlugin;
 import org.bukkit.Bukkit;
@@ -124,8 +124,10 @@ final class WhitelistCommand implements ICommand {
 	 */
 	private abstract class BaseHandler implements FutureCallback<PlayerDefinition> {
 		protected final CommandSender sender;
+		protected final Executor mainThread;
 		public BaseHandler(CommandSender sender) {
 			this.sender = sender;
+			this.mainThread = Bukkit.getScheduler().getMainThreadExecutor(CompPlugin.instance);
 		}
 		
 		@Override
@@ -145,13 +147,14 @@ final class WhitelistCommand implements ICommand {
 		
 		@Override
 		public void onSuccess(PlayerDefinition player) {
-			try {
-				handler.add(player.getUniqueId());
-				sender.sendMessage(ChatColor.GREEN + player.getName() + " has been added to the whitelist");
-			} catch (SQLException e) {
-				sender.sendMessage(ChatColor.RED + "An error occured writing to the whitelist");
-				CompPlugin.instance.getLogger().log(java.util.logging.Level.SEVERE, "Failed to add " + player.getName() + " to the comp whitelist", e);
-			}
+			handler.addAsync(player.getUniqueId()).whenCompleteAsync((result, error) -> {
+				if (error == null) {
+					sender.sendMessage(ChatColor.GREEN + player.getName() + " has been added to the whitelist");
+				} else {
+					sender.sendMessage(ChatColor.RED + "An error occured writing to the whitelist");
+					CompPlugin.instance.getLogger().log(java.util.logging.Level.SEVERE, "Failed to add " + player.getName() + " to the comp whitelist", error);
+				}
+			}, mainThread);
 		}
 	}
 	
@@ -165,13 +168,14 @@ final class WhitelistCommand implements ICommand {
 		
 		@Override
 		public void onSuccess(PlayerDefinition player) {
-			try {
-				handler.remove(player.getUniqueId());
-				sender.sendMessage(ChatColor.GREEN + player.getName() + " has been removed from the whitelist");
-			} catch (SQLException e) {
-				sender.sendMessage(ChatColor.RED + "An error occured writing to the whitelist");
-				CompPlugin.instance.getLogger().log(java.util.logging.Level.SEVERE, "Failed to remove " + player.getName() + " from the comp whitelist", e);
-			}
+			handler.removeAsync(player.getUniqueId()).whenCompleteAsync((result, error) -> {
+				if (error == null) {
+					sender.sendMessage(ChatColor.GREEN + player.getName() + " has been removed from the whitelist");
+				} else {
+					sender.sendMessage(ChatColor.RED + "An error occured writing to the whitelist");
+					CompPlugin.instance.getLogger().log(java.util.logging.Level.SEVERE, "Failed to remove " + player.getName() + " from the comp whitelist", error);
+				}
+			}, mainThread);
 		}
 	}
 	
@@ -185,16 +189,16 @@ final class WhitelistCommand implements ICommand {
 		
 		@Override
 		public void onSuccess(PlayerDefinition player) {
-			try {
-				if (handler.isWhitelisted(player.getUniqueId())) {
+			handler.isWhitelistedAsync(player.getUniqueId()).whenCompleteAsync((whitelisted, error) -> {
+				if (error != null) {
+					sender.sendMessage(ChatColor.RED + "An error occured reading from the whitelist");
+					CompPlugin.instance.getLogger().log(java.util.logging.Level.SEVERE, "Failed to check the comp whitelist", error);
+				} else if (whitelisted) {
 					sender.sendMessage(player.getName() + " is whitelisted");
 				} else {
 					sender.sendMessage(player.getName() + " is not whitelisted");
 				}
-			} catch (SQLException e) {
-				sender.sendMessage(ChatColor.RED + "An error occured reading from the whitelist");
-				CompPlugin.instance.getLogger().log(java.util.logging.Level.SEVERE, "Failed to check the comp whitelist", e);
-			}
+			}, mainThread);
 		}
 	}
 }
@@ -0,0 +1,224 @@
+package au.com.addstar.comp.entry;
+
+import java.util.BitSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.plotsquared.core.plot.Plot;
+
+import au.com.addstar.comp.util.P2Bridge;
+
+/**
+ * Hands out free plots to players entering a comp, closest to the centre first.
+ * <p>
+ * The plots are laid out in spiral order once, and the free ones are tracked by their
+ * position in that order. A plot given to a player is leased until the entry is
+ * completed or aborted, or the lease expires, at which point it becomes free again.
+ * Plots that become free some other way are picked up when the allocator runs out and rescans,
+ * which happens at most once every {@link #RescanInterval} ms.
+ * <p>
+ * This is safe to use from any thread.
+ */
+public class PlotAllocator {
+	private static final long RescanInterval = 5000;
+
+	private final P2Bridge bridge;
+
+	private List<Plot> plots;
+	private final BitSet free = new BitSet();
+	private final Map<Integer, Lease> leases = Maps.newHashMap();
+	private long lastRescan;
+
+	public PlotAllocator(P2Bridge bridge) {
+		this.bridge = bridge;
+		plots = Lists.newArrayList();
+	}
+
+	/**
+	 * Makes sure the allocator covers the given number of plots, rescanning them if it changed
+	 * @param maxPlots The number of plots available in the comp
+	 */
+	public synchronized void ensureSize(int maxPlots) {
+		if (plots.size() != maxPlots) {
+			rescan(maxPlots);
+		}
+	}
+
+	/**
+	 * Forgets every lease and rescans which plots are free. Use after plots are reset
+	 */
+	public synchronized void reset() {
+		leases.clear();
+		rescan(plots.size());
+	}
+
+	private void rescan(int maxPlots) {
+		lastRescan = System.currentTimeMillis();
+		plots = Lists.newArrayList(bridge.getOrderedPlots(maxPlots));
+		free.clear();
+		for (int i = 0; i < plots.size(); ++i) {
+			Plot plot = plots.get(i);
+			if (plot != null && !bridge.isClaimed(plot) && !leases.containsKey(i)) {
+				free.set(i);
+			}
+		}
+
+		// Leases beyond the new size no longer matter
+		leases.keySet().removeIf(index -> index >= plots.size());
+	}
+
+	/**
+	 * Leases the free plot closest to the centre
+	 * @param playerId The player the plot is for
+	 * @param duration How long in ms until the lease expires if not completed
+	 * @return The lease, or null if there are no free plots
+	 */
+	public synchronized Lease lease(UUID playerId, long duration) {
+		int index = nextFree();
+		if (index < 0) {
+			// Plots may have been freed without us knowing. None can have been if every plot is leased,
+			// and a full comp is only rescanned every so often rather than on every attempt to enter
+			if (leases.size() >= plots.size() || System.currentTimeMillis() - lastRescan < RescanInterval) {
+				return null;
+			}
+			rescan(plots.size());
+			index = nextFree();
+			if (index < 0) {
+				return null;
+			}
+		}
+
+		free.clear(index);
+		Lease lease = new Lease(index, plots.get(index), playerId, System.currentTimeMillis() + duration);
+		leases.put(index, lease);
+		return lease;
+	}
+
+	private int nextFree() {
+		for (int index = free.nextSetBit(0); index >= 0; index = free.nextSetBit(index + 1)) {
+			if (!bridge.isClaimed(plots.get(index))) {
+				return index;
+			}
+
+			// Claimed outside of the allocator
+			free.clear(index);
+		}
+		return -1;
+	}
+
+	/**
+	 * Completes a lease, keeping the plot out of the free queue
+	 * @param lease The lease
+	 * @return False if the lease had expired and the plot was given to someone else
+	 */
+	public synchronized boolean complete(Lease lease) {
+		if (leases.get(lease.index) == lease) {
+			leases.remove(lease.index);
+			return true;
+		}
+
+		// It expired, but can still be used if nobody else took it
+		if (free.get(lease.index) && isSamePlot(lease)) {
+			free.clear(lease.index);
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Releases a lease, returning the plot to the free queue
+	 * @param lease The lease
+	 */
+	public synchronized void release(Lease lease) {
+		if (leases.get(lease.index) != lease) {
+			return;
+		}
+
+		leases.remove(lease.index);
+		if (isSamePlot(lease) && !bridge.isClaimed(lease.plot)) {
+			free.set(lease.index);
+		}
+	}
+
+	/**
+	 * Releases every lease that has expired
+	 * @return The number of leases released
+	 */
+	public synchronized int expireLeases() {
+		long now = System.currentTimeMillis();
+		int expired = 0;
+		Iterator<Lease> it = leases.values().iterator();
+		while (it.hasNext()) {
+			Lease lease = it.next();
+			if (now >= lease.expiresAt) {
+				it.remove();
+				if (isSamePlot(lease) && !bridge.isClaimed(lease.plot)) {
+					free.set(lease.index);
+				}
+				++expired;
+			}
+		}
+		return expired;
+	}
+
+	/**
+	 * Checks the lease is still for the plot at its index. Rescans look plots up again,
+	 * and unclaimed plots are new objects each time, so plots are compared by id and area
+	 */
+	private boolean isSamePlot(Lease lease) {
+		if (lease.index >= plots.size()) {
+			return false;
+		}
+
+		Plot current = plots.get(lease.index);
+		return current != null && current.getId().equals(lease.plot.getId()) && Objects.equals(current.getArea(), lease.plot.getArea());
+	}
+
+	/**
+	 * Gets the number of plots that can currently be leased
+	 */
+	public synchronized int getFreeCount() {
+		return free.cardinality();
+	}
+
+	/**
+	 * Gets the number of plots currently leased
+	 */
+	public synchronized int getLeaseCount() {
+		return leases.size();
+	}
+
+	/**
+	 * A plot reserved for a player who has not finished entering
+	 */
+	public static final class Lease {
+		private final int index;
+		private final Plot plot;
+		private final UUID playerId;
+		private final long expiresAt;
+
+		private Lease(int index, Plot plot, UUID playerId, long expiresAt) {
+			this.index = index;
+			this.plot = plot;
+			this.playerId = playerId;
+			this.expiresAt = expiresAt;
+		}
+
+		public Plot getPlot() {
+			return plot;
+		}
+
+		public UUID getPlayerId() {
+			return playerId;
+		}
+
+		public long getExpiresAt() {
+			return expiresAt;
+		}
+	}
+}
@@ -0,0 +1,87 @@
+package au.com.addstar.comp.placeholders;
+
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+/**
+ * Holds values loaded from the database so placeholders never wait on it.
+ * A lookup returns the last loaded value, or a default the first time,
+ * and reloads in the background once the value is older than the refresh time.
+ */
+class CachedLookup<K, V> {
+    private final Function<K, CompletableFuture<V>> loader;
+    private final long refreshMillis;
+    private final Logger logger;
+
+    private final Cache<K, Loaded<V>> values;
+    private final Set<K> loading;
+
+    CachedLookup(Function<K, CompletableFuture<V>> loader, long refreshMillis, Logger logger) {
+        this.loader = loader;
+        this.refreshMillis = refreshMillis;
+        this.logger = logger;
+
+        values = CacheBuilder.newBuilder()
+                .expireAfterAccess(10, TimeUnit.MINUTES)
+                .build();
+        loading = ConcurrentHashMap.newKeySet();
+    }
+
+    /**
+     * Gets the value for a key without blocking
+     * @param key The key to look up
+     * @param def The value to use if nothing is loaded yet, or the loaded value is null
+     * @return The value
+     */
+    V get(K key, V def) {
+        Loaded<V> loaded = values.getIfPresent(key);
+        if (loaded == null || System.currentTimeMillis() - loaded.time > refreshMillis) {
+            load(key);
+        }
+
+        if (loaded == null || loaded.value == null) {
+            return def;
+        }
+        return loaded.value;
+    }
+
+    /**
+     * Forgets every loaded value
+     */
+    void invalidateAll() {
+        values.invalidateAll();
+    }
+
+    private void load(K key) {
+        if (!loading.add(key)) {
+            return;
+        }
+
+        loader.apply(key).whenComplete((value, error) -> {
+            loading.remove(key);
+            if (error != null) {
+                logger.log(Level.WARNING, "Failed to load placeholder value for " + key, error);
+            } else {
+                values.put(key, new Loaded<>(value));
+            }
+        });
+    }
+
+    private static final class Loaded<V> {
+        final V value;
+        final long time;
+
+        Loaded(V value) {
+            this.value = value;
+            this.time = System.currentTimeMillis();
+        }
+    }
+}
@@ -1,18 +1,20 @@
 package au.com.addstar.comp.placeholders;
 
 import au.com.addstar.comp.CompPlugin;
+import au.com.addstar.comp.CompServerBackendManager;
+import au.com.addstar.comp.Competition;
 import au.com.addstar.comp.EntrantResult;
 import au.com.addstar.comp.criterions.BaseCriterion;
 import au.com.addstar.comp.util.CompUtils;
 
 import org.bukkit.entity.Player;
 
-import java.sql.SQLException;
 import java.text.DateFormat;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
-import java.util.logging.Level;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 import java.util.stream.Collectors;
 
 /**
@@ -21,10 +23,38 @@ import java.util.stream.Collectors;
  */
 public class PlaceHolderHandler {
     private static final String identifier = "COMPMANAGER".toLowerCase();
+    /**
+     * How old database values may get before they are loaded again
+     */
+    private static final long RefreshMillis = 30000;
+
     private final CompPlugin plugin;
+    private final CachedLookup<UUID, EntrantResult> results;
+    private int resultsCompId = -1;
 
     public PlaceHolderHandler(CompPlugin plugin) {
         this.plugin = plugin;
+
+        results = new CachedLookup<>(playerId -> {
+            CompServerBackendManager backend = plugin.getCompManager().getBackend();
+            Competition comp = plugin.getCompManager().getCurrentComp();
+            if (comp == null) {
+                return CompletableFuture.completedFuture(null);
+            }
+            return backend.async(() -> backend.getResult(comp, playerId));
+        }, RefreshMillis, plugin.getLogger());
+    }
+
+    /**
+     * Gets the result of the player in the current comp without blocking
+     */
+    private EntrantResult getResult(Player player) {
+        Competition comp = plugin.getCompManager().getCurrentComp();
+        if (comp.getCompId() != resultsCompId) {
+            results.invalidateAll();
+            resultsCompId = comp.getCompId();
+        }
+        return results.get(player.getUniqueId(), null);
     }
 
     protected static String getIdentifier() {
@@ -119,35 +149,21 @@ public class PlaceHolderHandler {
                 return Boolean.toString(plugin.getCompManager().hasEntered(player));
             case "prize":
                 if (plugin.getCompManager().getCurrentComp() == null) return "None";
-                try {
-                    EntrantResult result = plugin.getCompManager().getBackend().getResult(
-                        plugin.getCompManager().getCurrentComp(), player.getUniqueId());
-                    if (result != null && result.getPrize().isPresent()) {
-                        return result.getPrize().get().toHumanReadable();
-                    }
-                } catch (SQLException e) {
-                    plugin.getLogger().log(Level.WARNING, "Failed to get prize for " + player.getName(), e);
+                EntrantResult result = getResult(player);
+                if (result != null && result.getPrize().isPresent()) {
+                    return result.getPrize().get().toHumanReadable();
                 }
                 return "None";
             case "prizeclaimed":
                 if (plugin.getCompManager().getCurrentComp() == null) return "false";
-                try {
-                    EntrantResult result = plugin.getCompManager().getBackend().getResult(
-                        plugin.getCompManager().getCurrentComp(), player.getUniqueId());
-                    if (result != null) {
-                        return Boolean.toString(result.isPrizeClaimed());
-                    }
-                } catch (SQLException e) {
-                    plugin.getLogger().log(Level.WARNING, "Failed to get prize claimed status for " + player.getName(), e);
+                result = getResult(player);
+                if (result != null) {
+                    return Boolean.toString(result.isPrizeClaimed());
                 }
                 return "false";
             case "iswhitelisted":
-                try {
-                    return Boolean.toString(plugin.getCompManager().getWhitelist().isWhitelisted(player));
-                } catch (SQLException e) {
-                    plugin.getLogger().log(Level.WARNING, "Failed to check whitelist status for " + player.getName(), e);
-                    return "false";
-                }
+                // Never wait on the database here, placeholders are resolved on the main thread
+                return Boolean.toString(plugin.getCompManager().getWhitelist().isWhitelistedCached(player.getUniqueId()));
             case "spotsremaining":
                 if (plugin.getCompManager().getCurrentComp() == null) return "0";
                 int maxEntrants = plugin.getCompManager().getCurrentComp().getMaxEntrants();
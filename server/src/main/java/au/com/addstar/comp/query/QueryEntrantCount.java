@@ -13,4 +13,9 @@ public class QueryEntrantCount implements RedisQueryHandler {
 	public String onQuery(String command, String[] arguments) {
 		return String.valueOf(bridge.getUsedPlotCount());
 	}
+	
+	@Override
+	public boolean runsOnMainThread() {
+		return true;
+	}
 }
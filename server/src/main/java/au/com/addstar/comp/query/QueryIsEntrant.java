@@ -30,4 +30,10 @@ public class QueryIsEntrant implements RedisQueryHandler {
 			throw new QueryException("Invalid UUID");
 		}
 	}
+	
+	@Override
+	public boolean runsOnMainThread() {
+		// Plot ownership is read from PlotSquared
+		return true;
+	}
 }
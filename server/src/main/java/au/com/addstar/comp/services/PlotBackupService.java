@@ -3,7 +3,9 @@ package au.com.addstar.comp.services;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -20,6 +22,7 @@ import com.sk89q.jnbt.CompoundTag;
 
 import au.com.addstar.comp.Competition;
 import au.com.addstar.comp.util.P2Bridge;
+import au.com.addstar.comp.util.PlotEmptinessChecker;
 import com.plotsquared.core.plot.Plot;
 import com.plotsquared.core.util.SchematicHandler;
 
@@ -77,6 +80,7 @@ public class PlotBackupService {
 	}
 	
 	private final P2Bridge bridge;
+	private final PlotEmptinessChecker emptinessChecker;
 	private final JavaPlugin plugin;
 	private final Logger logger;
 	private final boolean backupEmptyPlots;
@@ -85,8 +89,9 @@ public class PlotBackupService {
 	private volatile boolean isBackingUp = false;
 	private final Object backupLock = new Object();
 	
-	public PlotBackupService(P2Bridge bridge, JavaPlugin plugin, Logger logger, boolean backupEmptyPlots, int progressInterval) {
+	public PlotBackupService(P2Bridge bridge, PlotEmptinessChecker emptinessChecker, JavaPlugin plugin, Logger logger, boolean backupEmptyPlots, int progressInterval) {
 		this.bridge = bridge;
+		this.emptinessChecker = emptinessChecker;
 		this.plugin = plugin;
 		this.logger = logger;
 		this.backupEmptyPlots = backupEmptyPlots;
@@ -186,96 +191,123 @@ public class PlotBackupService {
 				return;
 			}
 			
-			// Filter plots if needed and extract plot data
-			List<PlotData> plotDataList = new ArrayList<>();
-			for (Plot plot : plots) {
-				if (backupEmptyPlots || !isPlotEmpty(plot)) {
-					// Extract plot data
-					String plotId = plot.getId().toString();
-					UUID firstOwner = plot.getOwners().iterator().next();
-					plotDataList.add(new PlotData(plotId, firstOwner, plot));
-				}
+			if (backupEmptyPlots) {
+				backupFilteredPlots(compId, archiveDir, schematicHandler, plots, Collections.emptySet(), progressCallback, resultFuture);
+				return;
 			}
 			
-			if (plotDataList.isEmpty()) {
-				logger.info("[Backup] No plots to backup after filtering");
-				resultFuture.set(new BackupResult(plots.size(), 0, 0, archiveDir));
-				return;
+			// Work out which plots are empty off the main thread, then continue back on it
+			emptinessChecker.findEmptyPlots(plots).whenComplete((emptyPlots, error) -> {
+				Bukkit.getScheduler().runTask(plugin, () -> {
+					Set<Plot> skipped = emptyPlots;
+					if (error != null) {
+						logger.log(Level.WARNING, "[Backup] Failed to check for empty plots. Every plot will be backed up", error);
+						skipped = Collections.emptySet();
+					}
+					backupFilteredPlots(compId, archiveDir, schematicHandler, plots, skipped, progressCallback, resultFuture);
+				});
+			});
+		});
+	}
+	
+	/**
+	 * Backs up every plot that is not empty. Must be called on the main thread.
+	 */
+	private void backupFilteredPlots(int compId, File archiveDir, SchematicHandler schematicHandler, List<Plot> plots, Set<Plot> emptyPlots,
+			BackupProgressCallback progressCallback, SettableFuture<BackupResult> resultFuture) {
+		// Filter plots if needed and extract plot data
+		List<PlotData> plotDataList = new ArrayList<>();
+		for (Plot plot : plots) {
+			if (!emptyPlots.contains(plot)) {
+				// Extract plot data
+				String plotId = plot.getId().toString();
+				UUID firstOwner = plot.getOwners().iterator().next();
+				plotDataList.add(new PlotData(plotId, firstOwner, plot));
 			}
+		}
+		
+		if (!emptyPlots.isEmpty()) {
+			logger.info("[Backup] Skipping " + emptyPlots.size() + " plots that have not been built on");
+		}
+		
+		if (plotDataList.isEmpty()) {
+			logger.info("[Backup] No plots to backup after filtering");
+			resultFuture.set(new BackupResult(plots.size(), 0, 0, archiveDir));
+			return;
+		}
+		
+		// Backup operations
+		Bukkit.getScheduler().runTaskAsynchronously(plugin, () -> {
+			AtomicInteger successful = new AtomicInteger(0);
+			AtomicInteger failed = new AtomicInteger(0);
 			
-			// Backup operations
-			Bukkit.getScheduler().runTaskAsynchronously(plugin, () -> {
-				AtomicInteger successful = new AtomicInteger(0);
-				AtomicInteger failed = new AtomicInteger(0);
-				
-				// Collect all backup futures
-				List<CompletableFuture<Boolean>> backupFutures = new ArrayList<>();
+			// Collect all backup futures
+			List<CompletableFuture<Boolean>> backupFutures = new ArrayList<>();
+			
+			for (PlotData plotData : plotDataList) {
+				CompletableFuture<Boolean> plotFuture = backupPlotAsync(
+					plotData.plot, 
+					archiveDir, 
+					schematicHandler, 
+					plotData.plotId, 
+					plotData.firstOwner
+				);
+				backupFutures.add(plotFuture);
 				
-				for (PlotData plotData : plotDataList) {
-					CompletableFuture<Boolean> plotFuture = backupPlotAsync(
-						plotData.plot, 
-						archiveDir, 
-						schematicHandler, 
-						plotData.plotId, 
-						plotData.firstOwner
-					);
-					backupFutures.add(plotFuture);
+				// Progress updates as futures complete
+				plotFuture.whenComplete((success, throwable) -> {
+					if (success != null && success) {
+						successful.incrementAndGet();
+					} else {
+						failed.incrementAndGet();
+					}
 					
-					// Progress updates as futures complete
-					plotFuture.whenComplete((success, throwable) -> {
-						if (success != null && success) {
-							successful.incrementAndGet();
-						} else {
-							failed.incrementAndGet();
-						}
-						
-						int completed = successful.get() + failed.get();
+					int completed = successful.get() + failed.get();
+					
+					// Progress updates
+					if (completed % progressInterval == 0 || completed == plotDataList.size()) {
+						logger.info(String.format("[Backup] Progress: %d/%d plots processed (%d successful, %d failed)",
+							completed, plotDataList.size(), successful.get(), failed.get()));
 						
-						// Progress updates
-						if (completed % progressInterval == 0 || completed == plotDataList.size()) {
-							logger.info(String.format("[Backup] Progress: %d/%d plots processed (%d successful, %d failed)",
-								completed, plotDataList.size(), successful.get(), failed.get()));
-							
-							if (progressCallback != null) {
-								final int finalCompleted = completed;
-								final int finalSuccessful = successful.get();
-								final int finalFailed = failed.get();
-								Bukkit.getScheduler().runTask(plugin, () -> {
-									progressCallback.onProgress(finalCompleted, plotDataList.size(), finalSuccessful, finalFailed);
-								});
-							}
+						if (progressCallback != null) {
+							final int finalCompleted = completed;
+							final int finalSuccessful = successful.get();
+							final int finalFailed = failed.get();
+							Bukkit.getScheduler().runTask(plugin, () -> {
+								progressCallback.onProgress(finalCompleted, plotDataList.size(), finalSuccessful, finalFailed);
+							});
 						}
-					});
-				}
-				
-				// Wait for all backups to complete
-				CompletableFuture<Void> allBackups = CompletableFuture.allOf(
-					backupFutures.toArray(new CompletableFuture[0])
-				);
+					}
+				});
+			}
+			
+			// Wait for all backups to complete
+			CompletableFuture<Void> allBackups = CompletableFuture.allOf(
+				backupFutures.toArray(new CompletableFuture[0])
+			);
+			
+			allBackups.thenRun(() -> {
+				// Collect results directly from futures to avoid race condition
+				int actualSuccessful = 0;
+				int actualFailed = 0;
 				
-				allBackups.thenRun(() -> {
-					// Collect results directly from futures to avoid race condition
-					int actualSuccessful = 0;
-					int actualFailed = 0;
-					
-					for (CompletableFuture<Boolean> future : backupFutures) {
-						try {
-							Boolean result = future.getNow(null); // Non-blocking get
-							if (result != null && result) {
-								actualSuccessful++;
-							} else {
-								actualFailed++;
-							}
-						} catch (Exception e) {
+				for (CompletableFuture<Boolean> future : backupFutures) {
+					try {
+						Boolean result = future.getNow(null); // Non-blocking get
+						if (result != null && result) {
+							actualSuccessful++;
+						} else {
 							actualFailed++;
 						}
+					} catch (Exception e) {
+						actualFailed++;
 					}
-					
-					logger.info(String.format("[Backup] Completed backup for competition %d: %d successful, %d failed out of %d total",
-						compId, actualSuccessful, actualFailed, plotDataList.size()));
-					
-					resultFuture.set(new BackupResult(plotDataList.size(), actualSuccessful, actualFailed, archiveDir));
-				});
+				}
+				
+				logger.info(String.format("[Backup] Completed backup for competition %d: %d successful, %d failed out of %d total",
+					compId, actualSuccessful, actualFailed, plotDataList.size()));
+				
+				resultFuture.set(new BackupResult(plotDataList.size(), actualSuccessful, actualFailed, archiveDir));
 			});
 		});
 	}
@@ -295,11 +327,6 @@ public class PlotBackupService {
 		}
 	}
 	
-	private boolean isPlotEmpty(Plot plot) {
-        // TODO: Implement a check to see if the plot is empty
-		return false;
-	}
-	
 	private CompletableFuture<Boolean> backupPlotAsync(Plot plot, File archiveDir, SchematicHandler schematicHandler, String plotId, UUID firstOwner) {
 		CompletableFuture<Boolean> resultFuture = new CompletableFuture<>();
 		
@@ -31,6 +31,17 @@ public class PlotResetService {
 		 * @param phase The current phase name (e.g., "backup", "transfer", "clearing")
 		 */
 		void onPhaseStart(String phase);
+		
+		/**
+		 * Called periodically while plots are being cleared, and once when clearing finishes.
+		 * @param cleared Number of plots cleared so far
+		 * @param failed Number of plots that could not be cleared
+		 * @param total Total number of plots to clear
+		 * @param plotsPerSecond The average number of plots finished each second
+		 * @param tps The measured TPS
+		 */
+		default void onClearingProgress(int cleared, int failed, int total, double plotsPerSecond, double tps) {
+		}
 	}
 	
 	private final PlotBackupService backupService;
@@ -133,7 +144,17 @@ public class PlotResetService {
 							}
 							
 							try {
-								bridge.clearAllPlots(() -> {
+								bridge.clearAllPlots(plugin, (progressCallback != null ? progressCallback::onClearingProgress : null), (cleared, failed) -> {
+									if (failed > 0) {
+										// Those plots may still be claimed, so the comp has not been reset
+										logger.severe("[Reset] " + failed + " plots could not be cleared, reset failed for competition: " + competition.getTheme());
+										synchronized (resetLock) {
+											isResetting = false;
+										}
+										resultFuture.setException(new IllegalStateException(failed + " plots could not be cleared"));
+										return;
+									}
+									
 									// Phase 4: Update tracker
 									try {
 										changeTracker.updateTrackedCompetition(competition);
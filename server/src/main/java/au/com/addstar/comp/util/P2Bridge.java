@@ -7,12 +7,12 @@ import com.plotsquared.core.player.PlotPlayer;
 import com.plotsquared.core.plot.Plot;
 import com.plotsquared.core.plot.PlotArea;
 import com.plotsquared.core.plot.PlotId;
-import com.plotsquared.core.plot.PlotModificationManager;
 import com.plotsquared.core.util.SchematicHandler;
 import org.bukkit.Bukkit;
 import org.bukkit.Location;
 import org.bukkit.OfflinePlayer;
 import org.bukkit.World;
+import org.bukkit.plugin.Plugin;
 
 import com.google.common.base.Preconditions;
 import com.google.common.collect.Iterables;
@@ -21,9 +21,14 @@ import com.google.common.collect.Sets;
 
 public class P2Bridge {
 	private final PlotAPI api;
+	private final PlotOwnerIndex ownerIndex;
+	private PlotClearingPipeline.Settings clearingSettings = PlotClearingPipeline.DefaultSettings;
 	
 	public P2Bridge(PlotAPI plugin) {
 		this.api = plugin;
+		ownerIndex = new PlotOwnerIndex(plugin);
+		ownerIndex.rebuild();
+		api.registerListener(ownerIndex);
 	}
 
 	public void registerPlotListener(Object listener) {
@@ -36,22 +41,42 @@ public class P2Bridge {
 	 * @return The Plot they own, or null
 	 */
 	public Plot getPlot(UUID playerId) {
-		for (Plot plot : api.getAllPlots()) {
-			if (plot.hasOwner() && plot.isOwner(playerId)) {
-				return plot;
-			}
+		return ownerIndex.get(playerId);
+	}
+	
+	/**
+	 * Gets the plot of a player, checking the plot areas as well if the owner index has none.
+	 * This is slower than {@link #getPlot(UUID)} for players without a plot, so it is only for claims and entries
+	 * @param playerId The UUID of the player
+	 * @return The Plot they own, or null
+	 */
+	public Plot findPlot(UUID playerId) {
+		return ownerIndex.find(playerId);
+	}
+	
+	/**
+	 * Rebuilds the plot owner index from every plot, logging if it had drifted.
+	 * This must be done on the server thread
+	 * @return The differences there were before the rebuild
+	 */
+	public PlotOwnerIndex.Report reconcileOwnerIndex() {
+		PlotOwnerIndex.Report report = ownerIndex.rebuild();
+		if (report.getDrift() > 0) {
+			Bukkit.getLogger().warning("[CompManager] Corrected " + report.getDrift() + " stale entries in the plot owner index");
 		}
-
-		return null;
+		return report;
+	}
+	
+	/**
+	 * Compares the plot owner index against a full scan of every plot
+	 * @return The differences found
+	 */
+	public PlotOwnerIndex.Report verifyOwnerIndex() {
+		return ownerIndex.verify();
 	}
 
 	public ArrayList<Plot> getOwnedPlots(){
-		ArrayList<Plot> plots = new ArrayList<>();
-		for (Plot plot : api.getAllPlots()) {
-			if (plot.hasOwner()) {
-				plots.add(plot);
-			}
-		}
+		ArrayList<Plot> plots = new ArrayList<>(ownerIndex.getOwnedPlots());
 		Bukkit.getServer().getLogger().info("Found " + plots.size() + " plots");
 		return plots;
 	}
@@ -85,19 +110,22 @@ public class P2Bridge {
 		throw new IllegalStateException("No plot area for some reason");
 	}
 	
+	/**
+	 * Checks if a plot is claimed. Unclaimed plots are new objects each time they are looked up,
+	 * so one held from before it was claimed some other way still has no owner itself
+	 * @param plot The plot to check
+	 * @return True if it or the area's copy of it has an owner
+	 */
+	public boolean isClaimed(Plot plot) {
+		return plot.hasOwner() || plot.getArea().getOwnedPlotAbs(plot.getId()) != null;
+	}
+	
 	/**
 	 * Gets all plots that are owned
 	 * @return The owned plots
 	 */
 	public List<Plot> getUsedPlots() {
-		List<Plot> plots = Lists.newArrayList();
-		for (Plot plot : api.getAllPlots()) {
-			if (plot.hasOwner()) {
-				plots.add(plot);
-			}
-		}
-		
-		return plots;
+		return Lists.newArrayList(ownerIndex.getOwnedPlots());
 	}
 	
 	/**
@@ -123,13 +151,7 @@ public class P2Bridge {
 	 * @return Number of owned plots
 	 */
 	public int getUsedPlotCount() {
-		int count = 0;
-		for (Plot plot : api.getAllPlots()) {
-			if (plot.hasOwner()) {
-				++count;
-			}
-		}
-		return count;
+		return ownerIndex.getOwnedPlotCount();
 	}
 	
 	/**
@@ -137,14 +159,7 @@ public class P2Bridge {
 	 * @return A set of player ids
 	 */
 	public Set<UUID> getOwners() {
-		Set<UUID> owners = Sets.newHashSet();
-		for (Plot plot : api.getAllPlots()) {
-			if (plot.hasOwner()) {
-				owners.addAll(plot.getOwners());
-			}
-		}
-		
-		return owners;
+		return Sets.newHashSet(ownerIndex.getOwners());
 	}
 	
 	/**
@@ -162,6 +177,7 @@ public class P2Bridge {
 
 		// Assign the plot to the offline player, before they join the comp server
 		plot.setOwner(player.getUniqueId());
+		ownerIndex.update(plot);
 
 		if (player.isOnline() && teleport) {
 			PlotPlayer<?> wrappedPlayer = api.wrapPlayer(player.getUniqueId());
@@ -176,88 +192,43 @@ public class P2Bridge {
 	/**
 	 * Clears all owned plots by deleting them.
 	 * This operation must be run on the main thread.
-	 * @param callback Callback to run when clearing is complete
+	 * @param plugin The plugin to schedule the clearing with
+	 * @param listener Optional listener for progress updates (can be null)
+	 * @param callback Callback to run when clearing is complete, with the number of plots cleared and failed
 	 */
-	public void clearAllPlots(Runnable callback) {
+	public void clearAllPlots(Plugin plugin, PlotClearingPipeline.ProgressListener listener, PlotClearingPipeline.CompletionListener callback) {
 		Preconditions.checkState(Bukkit.isPrimaryThread(), "This must be done on the server thread");
 		
-		List<Plot> plots = getUsedPlots();
-		if (plots.isEmpty()) {
-			if (callback != null) {
-				callback.run();
-			}
-			return;
-		}
-		
-		performPlotClearing(plots, callback);
+		performPlotClearing(plugin, getUsedPlots(), listener, callback);
 	}
 	
 	/**
-	 * Performs plot clearing using PlotSquared's PlotModificationManager.deletePlot() API.
+	 * Sets the limits used when clearing plots
+	 * @param clearingSettings The settings
+	 */
+	public void setClearingSettings(PlotClearingPipeline.Settings clearingSettings) {
+		this.clearingSettings = clearingSettings;
+	}
+	
+	/**
+	 * Clears plots using PlotSquared's PlotModificationManager.deletePlot() API.
+	 * Only a limited number of plots are deleted at once, spread over as many ticks as needed.
+	 * @param plugin The plugin to schedule the clearing with
 	 * @param plots The list of plots to clear
-	 * @param callback Callback to run when clearing is complete
+	 * @param listener Optional listener for progress updates (can be null)
+	 * @param callback Callback to run once, on the server thread, when clearing is complete, with the number of plots cleared and failed
 	 */
-	public void performPlotClearing(List<Plot> plots, Runnable callback) {
+	public void performPlotClearing(Plugin plugin, List<Plot> plots, PlotClearingPipeline.ProgressListener listener, PlotClearingPipeline.CompletionListener callback) {
 		Preconditions.checkState(Bukkit.isPrimaryThread(), "This must be done on the server thread");
 		
 		if (plots.isEmpty()) {
 			if (callback != null) {
-				callback.run();
+				callback.onComplete(0, 0);
 			}
 			return;
 		}
 		
-		final java.util.concurrent.atomic.AtomicInteger completed = new java.util.concurrent.atomic.AtomicInteger(0);
-		final java.util.concurrent.atomic.AtomicInteger failed = new java.util.concurrent.atomic.AtomicInteger(0);
-		final int total = plots.size();
-		final java.util.concurrent.atomic.AtomicInteger callbackCalled = new java.util.concurrent.atomic.AtomicInteger(0);
-		
-		// Helper to check completion and call callback once
-		Runnable checkAndCall = () -> {
-			int currentCompleted = completed.get();
-			int currentFailed = failed.get();
-			
-			if (currentCompleted + currentFailed >= total) {
-				// Only one thread can successfully set this flag
-				if (callbackCalled.compareAndSet(0, 1)) {
-					Bukkit.getLogger().info("[Plot Clearing] Completed: " + currentCompleted + " successful, " + currentFailed + " failed out of " + total);
-					if (callback != null) {
-						callback.run();
-					}
-				}
-			}
-		};
-		
-		// Delete all plots using PlotSquared API
-		for (Plot plot : plots) {
-			try {
-				// Skip plots that are already unclaimed
-				if (!plot.hasOwner()) {
-					completed.incrementAndGet();
-					checkAndCall.run();
-					continue;
-				}
-				
-				PlotModificationManager manager = plot.getPlotModificationManager();
-				if (manager != null) {
-					// deletePlot clears the plot blocks and unclaims it
-					// Use null for actor since this is a system operation
-					manager.deletePlot(null, () -> {
-						completed.incrementAndGet();
-						checkAndCall.run();
-					});
-				} else {
-					Bukkit.getLogger().warning("[Plot Clearing] PlotModificationManager is null for plot " + plot.getId());
-					failed.incrementAndGet();
-					checkAndCall.run();
-				}
-			} catch (Exception e) {
-				Bukkit.getLogger().log(java.util.logging.Level.WARNING, 
-					"Failed to clear plot " + plot.getId() + ": " + e.getMessage(), e);
-				failed.incrementAndGet();
-				checkAndCall.run();
-			}
-		}
+		new PlotClearingPipeline(plugin, ownerIndex, plots, clearingSettings, listener, callback).start();
 	}
 	
 	/**
@@ -0,0 +1,240 @@
+package au.com.addstar.comp.util;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+
+import org.bukkit.Bukkit;
+import org.bukkit.plugin.Plugin;
+import org.bukkit.scheduler.BukkitTask;
+
+import com.plotsquared.core.plot.Plot;
+import com.plotsquared.core.plot.PlotModificationManager;
+
+/**
+ * Deletes plots a few at a time so a reset does not flood PlotSquared's queue.
+ * <p>
+ * Every tick new deletions are started until either the concurrency limit or the tick's time budget is reached.
+ * The limit is halved each second the TPS is below the target, and grows by one each second it is not,
+ * up to the configured maximum. The completion listener runs once on the server thread after every plot is done,
+ * and is told how many plots failed so a caller does not treat plots that may still be claimed as cleared.
+ */
+public class PlotClearingPipeline implements Runnable {
+	/**
+	 * Receives progress updates while plots are cleared
+	 */
+	public interface ProgressListener {
+		/**
+		 * @param cleared Number of plots cleared so far
+		 * @param failed Number of plots that could not be cleared
+		 * @param total Total number of plots to clear
+		 * @param plotsPerSecond The average number of plots finished each second
+		 * @param tps The measured TPS
+		 */
+		void onProgress(int cleared, int failed, int total, double plotsPerSecond, double tps);
+	}
+
+	/**
+	 * Receives the outcome once every plot is done
+	 */
+	public interface CompletionListener {
+		/**
+		 * @param cleared Number of plots cleared
+		 * @param failed Number of plots that could not be cleared. These may still be claimed
+		 */
+		void onComplete(int cleared, int failed);
+	}
+
+	/**
+	 * Limits for how hard plot clearing may push the server
+	 */
+	public static class Settings {
+		private final int maxConcurrent;
+		private final long tickBudgetNanos;
+		private final double targetTps;
+		private final long progressInterval;
+		private final long deletionTimeout;
+
+		/**
+		 * @param maxConcurrent The most deletions that may be running at once
+		 * @param tickBudgetMs How many ms each tick may spend starting deletions
+		 * @param targetTps Below this TPS fewer deletions are allowed at once
+		 * @param progressIntervalSeconds How often progress is reported
+		 * @param deletionTimeoutSeconds Deletions taking longer than this are counted as failed
+		 */
+		public Settings(int maxConcurrent, long tickBudgetMs, double targetTps, long progressIntervalSeconds, long deletionTimeoutSeconds) {
+			this.maxConcurrent = Math.max(1, maxConcurrent);
+			this.tickBudgetNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, tickBudgetMs));
+			this.targetTps = targetTps;
+			this.progressInterval = TimeUnit.SECONDS.toMillis(Math.max(1, progressIntervalSeconds));
+			this.deletionTimeout = TimeUnit.SECONDS.toMillis(Math.max(1, deletionTimeoutSeconds));
+		}
+	}
+
+	public static final Settings DefaultSettings = new Settings(4, 5, 18, 5, 120);
+
+	private static final long AdjustInterval = 1000;
+
+	private final Plugin plugin;
+	private final PlotOwnerIndex ownerIndex;
+	private final Settings settings;
+	private final ProgressListener listener;
+	private final CompletionListener callback;
+
+	private final ArrayDeque<Plot> queue;
+	private final int total;
+	// Deletions that have been started, and when
+	private final Map<Plot, Long> running = new ConcurrentHashMap<>();
+	private final AtomicInteger cleared = new AtomicInteger();
+	private final AtomicInteger failed = new AtomicInteger();
+
+	private int limit;
+	private long startTime;
+	private long lastAdjust;
+	private long lastProgress;
+	private BukkitTask task;
+	private boolean finished;
+
+	PlotClearingPipeline(Plugin plugin, PlotOwnerIndex ownerIndex, List<Plot> plots, Settings settings, ProgressListener listener, CompletionListener callback) {
+		this.plugin = plugin;
+		this.ownerIndex = ownerIndex;
+		this.settings = settings;
+		this.listener = listener;
+		this.callback = callback;
+
+		queue = new ArrayDeque<>(plots);
+		total = plots.size();
+		limit = Math.max(1, settings.maxConcurrent / 2);
+	}
+
+	/**
+	 * Starts clearing on the next tick
+	 */
+	void start() {
+		startTime = System.currentTimeMillis();
+		lastAdjust = startTime;
+		lastProgress = startTime;
+		task = Bukkit.getScheduler().runTaskTimer(plugin, this, 1, 1);
+	}
+
+	@Override
+	public void run() {
+		if (finished) {
+			return;
+		}
+
+		long tickStart = System.nanoTime();
+		long now = System.currentTimeMillis();
+		double tps = getTps();
+
+		if (now - lastAdjust >= AdjustInterval) {
+			lastAdjust = now;
+			if (tps < settings.targetTps) {
+				limit = Math.max(1, limit / 2);
+			} else if (limit < settings.maxConcurrent) {
+				++limit;
+			}
+		}
+
+		expireDeletions(now);
+
+		while (!queue.isEmpty() && running.size() < limit && System.nanoTime() - tickStart < settings.tickBudgetNanos) {
+			startDeletion(queue.poll());
+		}
+
+		if (queue.isEmpty() && running.isEmpty()) {
+			finish(tps);
+		} else if (now - lastProgress >= settings.progressInterval) {
+			lastProgress = now;
+			reportProgress(tps);
+		}
+	}
+
+	private void startDeletion(Plot plot) {
+		// Skip plots that are already unclaimed
+		if (!plot.hasOwner()) {
+			cleared.incrementAndGet();
+			return;
+		}
+
+		PlotModificationManager manager = plot.getPlotModificationManager();
+		if (manager == null) {
+			Bukkit.getLogger().warning("[Plot Clearing] PlotModificationManager is null for plot " + plot.getId());
+			failed.incrementAndGet();
+			return;
+		}
+
+		running.put(plot, System.currentTimeMillis());
+		try {
+			// deletePlot clears the plot blocks and unclaims it
+			// Use null for actor since this is a system operation
+			manager.deletePlot(null, () -> {
+				// The plot is unclaimed even if it finished too late, but it has already been counted as failed
+				ownerIndex.remove(plot);
+				if (running.remove(plot) != null) {
+					cleared.incrementAndGet();
+				}
+			});
+		} catch (Exception e) {
+			Bukkit.getLogger().log(Level.WARNING, "Failed to clear plot " + plot.getId() + ": " + e.getMessage(), e);
+			if (running.remove(plot) != null) {
+				failed.incrementAndGet();
+			}
+		}
+	}
+
+	private void expireDeletions(long now) {
+		Iterator<Map.Entry<Plot, Long>> it = running.entrySet().iterator();
+		while (it.hasNext()) {
+			Map.Entry<Plot, Long> entry = it.next();
+			if (now - entry.getValue() >= settings.deletionTimeout && running.remove(entry.getKey(), entry.getValue())) {
+				Bukkit.getLogger().warning("[Plot Clearing] Gave up waiting for plot " + entry.getKey().getId() + " to be cleared");
+				failed.incrementAndGet();
+			}
+		}
+	}
+
+	private void finish(double tps) {
+		finished = true;
+		task.cancel();
+
+		double seconds = (System.currentTimeMillis() - startTime) / 1000.0;
+		Bukkit.getLogger().info(String.format("[Plot Clearing] Completed: %d successful, %d failed out of %d in %.1fs",
+			cleared.get(), failed.get(), total, seconds));
+		reportProgress(tps);
+
+		if (callback != null) {
+			callback.onComplete(cleared.get(), failed.get());
+		}
+	}
+
+	private void reportProgress(double tps) {
+		if (listener == null) {
+			return;
+		}
+
+		double seconds = Math.max(0.001, (System.currentTimeMillis() - startTime) / 1000.0);
+		int done = cleared.get() + failed.get();
+		try {
+			listener.onProgress(cleared.get(), failed.get(), total, done / seconds, tps);
+		} catch (Exception e) {
+			Bukkit.getLogger().log(Level.WARNING, "[Plot Clearing] Progress listener failed", e);
+		}
+	}
+
+	/**
+	 * Gets the TPS from the recent average tick time, which reacts faster than the one minute TPS average
+	 */
+	private static double getTps() {
+		double tickTime = Bukkit.getAverageTickTime();
+		if (tickTime <= 0) {
+			return 20;
+		}
+		return Math.min(20, 1000 / tickTime);
+	}
+}
@@ -0,0 +1,468 @@
+package au.com.addstar.comp.util;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+import org.bukkit.Bukkit;
+import org.bukkit.ChunkSnapshot;
+import org.bukkit.Material;
+import org.bukkit.World;
+import org.bukkit.block.Block;
+import org.bukkit.block.BlockState;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.block.BlockBreakEvent;
+import org.bukkit.event.block.BlockBurnEvent;
+import org.bukkit.event.block.BlockExplodeEvent;
+import org.bukkit.event.block.BlockFadeEvent;
+import org.bukkit.event.block.BlockFertilizeEvent;
+import org.bukkit.event.block.BlockFormEvent;
+import org.bukkit.event.block.BlockFromToEvent;
+import org.bukkit.event.block.BlockGrowEvent;
+import org.bukkit.event.block.BlockPistonExtendEvent;
+import org.bukkit.event.block.BlockPistonRetractEvent;
+import org.bukkit.event.block.BlockPlaceEvent;
+import org.bukkit.event.block.LeavesDecayEvent;
+import org.bukkit.event.entity.EntityChangeBlockEvent;
+import org.bukkit.event.entity.EntityExplodeEvent;
+import org.bukkit.event.player.PlayerBucketEmptyEvent;
+import org.bukkit.event.world.StructureGrowEvent;
+import org.bukkit.plugin.Plugin;
+
+import com.google.common.collect.Lists;
+import com.plotsquared.core.generator.ClassicPlotWorld;
+import com.plotsquared.core.generator.HybridPlotWorld;
+import com.plotsquared.core.location.Location;
+import com.plotsquared.core.plot.BlockBucket;
+import com.plotsquared.core.plot.Plot;
+import com.plotsquared.core.plot.PlotArea;
+import com.sk89q.worldedit.function.pattern.Pattern;
+import com.sk89q.worldedit.world.block.BlockStateHolder;
+
+/**
+ * Works out which plots have not been built on, so they can be left out of backups.
+ * <p>
+ * The chunks of a plot are snapshotted on the server thread and then compared off thread, block by block,
+ * against what the generator places in an unclaimed plot. That template is worked out from the plot area's
+ * configured floor rather than read from an existing plot, as unclaiming a plot does not clear it.
+ * Areas the template cannot be worked out for, such as those with a plot schematic or a floor mixing
+ * several blocks, have every plot treated as built on.
+ * <p>
+ * Results are cached per plot until a block change is seen in one of its chunks, or the area's floor changes.
+ * Changes that do not fire block events, such as WorldEdit, are only picked up once the cached result is older
+ * than the max age. Merged plots are never considered empty.
+ */
+public class PlotEmptinessChecker implements Listener {
+	private final Executor mainThread;
+	private final Executor async;
+	private final long maxAge;
+
+	// Worlds already warned about not having a template
+	private final Set<String> unsupportedWorlds = ConcurrentHashMap.newKeySet();
+	private final Map<Plot, Result> results = new ConcurrentHashMap<>();
+	// Incremented when a block changes in the plot, so results started before the change are not stored
+	private final Map<Plot, Long> versions = new ConcurrentHashMap<>();
+	private final Map<Long, Set<Plot>> plotsByChunk = new ConcurrentHashMap<>();
+
+	/**
+	 * @param plugin The plugin to schedule work with
+	 * @param maxAgeMinutes How long a cached result may be used for, even without seeing a block change
+	 */
+	public PlotEmptinessChecker(Plugin plugin, long maxAgeMinutes) {
+		this.mainThread = Bukkit.getScheduler().getMainThreadExecutor(plugin);
+		this.async = task -> Bukkit.getScheduler().runTaskAsynchronously(plugin, task);
+		this.maxAge = TimeUnit.MINUTES.toMillis(Math.max(1, maxAgeMinutes));
+	}
+
+	/**
+	 * Finds which of the given plots are empty. Plots are checked one at a time
+	 * so only one plot's chunks are held in memory at once.
+	 * @param plots The plots to check
+	 * @return A future that completes with the empty plots
+	 */
+	public CompletableFuture<Set<Plot>> findEmptyPlots(List<Plot> plots) {
+		Set<Plot> emptyPlots = ConcurrentHashMap.newKeySet();
+		CompletableFuture<Void> chain = CompletableFuture.completedFuture(null);
+		for (Plot plot : plots) {
+			// A plot that cannot be checked is backed up
+			chain = chain.thenCompose(v -> isEmpty(plot).exceptionally(error -> false)).thenAccept(empty -> {
+				if (empty) {
+					emptyPlots.add(plot);
+				}
+			});
+		}
+		return chain.thenApply(v -> emptyPlots);
+	}
+
+	/**
+	 * Checks if a plot has not been built on
+	 * @param plot The plot to check
+	 * @return A future that completes with true if the plot matches the generator
+	 */
+	public CompletableFuture<Boolean> isEmpty(Plot plot) {
+		if (plot.isMerged()) {
+			return CompletableFuture.completedFuture(false);
+		}
+
+		Template template = getTemplate(plot);
+		if (template == null) {
+			return CompletableFuture.completedFuture(false);
+		}
+
+		long version = versions.getOrDefault(plot, 0L);
+		Result cached = results.get(plot);
+		if (cached != null && cached.version == version && cached.template.equals(template) && System.currentTimeMillis() - cached.time < maxAge) {
+			return CompletableFuture.completedFuture(cached.empty);
+		}
+
+		CompletableFuture<PlotSnapshot> snapshot = CompletableFuture.supplyAsync(() -> snapshot(plot), mainThread)
+			.thenCompose(future -> future);
+
+		return snapshot.thenApplyAsync(template::matches, async)
+			.thenApply(empty -> {
+				// Only keep it if nothing changed while the plot was being checked
+				if (versions.getOrDefault(plot, 0L) == version) {
+					results.put(plot, new Result(version, template, empty));
+				}
+				return empty;
+			});
+	}
+
+	/**
+	 * Works out the template for a plot's area. This is cheap, so it is done for every check
+	 * and a change to the area's configuration is picked up straight away
+	 * @return The template, or null if the area does not have one
+	 */
+	private Template getTemplate(Plot plot) {
+		Template template = Template.fromArea(plot.getArea());
+		if (template == null) {
+			if (unsupportedWorlds.add(plot.getWorldName())) {
+				Bukkit.getLogger().warning("[Backup] The plot area in " + plot.getWorldName() + " does not have a plain floor of one block per layer to compare plots against. Every plot will be backed up");
+			}
+		} else {
+			unsupportedWorlds.remove(plot.getWorldName());
+		}
+		return template;
+	}
+
+	/**
+	 * Loads and snapshots every chunk of a plot. Must be called on the server thread
+	 */
+	private CompletableFuture<PlotSnapshot> snapshot(Plot plot) {
+		World world = Bukkit.getWorld(plot.getWorldName());
+		if (world == null) {
+			CompletableFuture<PlotSnapshot> failed = new CompletableFuture<>();
+			failed.completeExceptionally(new IllegalStateException("World " + plot.getWorldName() + " is not loaded"));
+			return failed;
+		}
+
+		Location bottom = plot.getBottomAbs();
+		Location top = plot.getTopAbs();
+		PlotSnapshot snapshot = new PlotSnapshot(bottom.getX(), bottom.getZ(), top.getX(), top.getZ(), world.getMinHeight(), world.getMaxHeight());
+
+		List<CompletableFuture<Void>> chunks = Lists.newArrayList();
+		for (int cx = snapshot.minX >> 4; cx <= snapshot.maxX >> 4; ++cx) {
+			for (int cz = snapshot.minZ >> 4; cz <= snapshot.maxZ >> 4; ++cz) {
+				plotsByChunk.computeIfAbsent(chunkKey(cx, cz), key -> ConcurrentHashMap.newKeySet()).add(plot);
+
+				// Chunks that were never generated cannot have been built in
+				chunks.add(world.getChunkAtAsync(cx, cz, false).thenAccept(chunk -> {
+					if (chunk != null) {
+						snapshot.chunks.add(chunk.getChunkSnapshot(false, false, false));
+					}
+				}));
+			}
+		}
+
+		return CompletableFuture.allOf(chunks.toArray(new CompletableFuture[0])).thenApply(v -> snapshot);
+	}
+
+	private static long chunkKey(int cx, int cz) {
+		return ((long)cx << 32) | (cz & 0xFFFFFFFFL);
+	}
+
+	private void invalidate(Block block) {
+		Set<Plot> plots = plotsByChunk.get(chunkKey(block.getX() >> 4, block.getZ() >> 4));
+		if (plots == null) {
+			return;
+		}
+
+		String world = block.getWorld().getName();
+		for (Plot plot : plots) {
+			if (plot.getWorldName().equals(world)) {
+				versions.merge(plot, 1L, Long::sum);
+				results.remove(plot);
+			}
+		}
+	}
+
+	private void invalidate(List<Block> blocks) {
+		for (Block block : blocks) {
+			invalidate(block);
+		}
+	}
+
+	@EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+	public void onBlockPlace(BlockPlaceEvent event) {
+		invalidate(event.getBlock());
+	}
+
+	@EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+	public void onBlockBreak(BlockBreakEvent event) {
+		invalidate(event.getBlock());
+	}
+
+	@EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+	public void onBucketEmpty(PlayerBucketEmptyEvent event) {
+		invalidate(event.getBlock());
+	}
+
+	@EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+	public void onBlockExplode(BlockExplodeEvent event) {
+		invalidate(event.getBlock());
+		invalidate(event.blockList());
+	}
+
+	@EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+	public void onEntityExplode(EntityExplodeEvent event) {
+		invalidate(event.blockList());
+	}
+
+	@EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+	public void onEntityChangeBlock(EntityChangeBlockEvent event) {
+		invalidate(event.getBlock());
+	}
+
+	@EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+	public void onFlow(BlockFromToEvent event) {
+		invalidate(event.getToBlock());
+	}
+
+	@EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+	public void onPistonExtend(BlockPistonExtendEvent event) {
+		invalidate(event.getBlock());
+		for (Block block : event.getBlocks()) {
+			invalidate(block.getRelative(event.getDirection()));
+		}
+	}
+
+	@EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+	public void onPistonRetract(BlockPistonRetractEvent event) {
+		invalidate(event.getBlock());
+		invalidate(event.getBlocks());
+	}
+
+	@EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+	public void onBurn(BlockBurnEvent event) {
+		invalidate(event.getBlock());
+	}
+
+	@EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+	public void onFade(BlockFadeEvent event) {
+		invalidate(event.getBlock());
+	}
+
+	@EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+	public void onForm(BlockFormEvent event) {
+		invalidate(event.getBlock());
+	}
+
+	@EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+	public void onGrow(BlockGrowEvent event) {
+		invalidate(event.getBlock());
+	}
+
+	@EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+	public void onLeavesDecay(LeavesDecayEvent event) {
+		invalidate(event.getBlock());
+	}
+
+	@EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+	public void onFertilize(BlockFertilizeEvent event) {
+		for (BlockState state : event.getBlocks()) {
+			invalidate(state.getBlock());
+		}
+	}
+
+	@EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+	public void onStructureGrow(StructureGrowEvent event) {
+		for (BlockState state : event.getBlocks()) {
+			invalidate(state.getBlock());
+		}
+	}
+
+	/**
+	 * The chunks covering one plot, and the part of them the plot occupies
+	 */
+	private static class PlotSnapshot {
+		final int minX;
+		final int minZ;
+		final int maxX;
+		final int maxZ;
+		final int minY;
+		final int maxY;
+		final List<ChunkSnapshot> chunks = Lists.newCopyOnWriteArrayList();
+
+		PlotSnapshot(int minX, int minZ, int maxX, int maxZ, int minY, int maxY) {
+			this.minX = minX;
+			this.minZ = minZ;
+			this.maxX = maxX;
+			this.maxZ = maxZ;
+			this.minY = minY;
+			this.maxY = maxY;
+		}
+	}
+
+	/**
+	 * The block the generator places at each height in an unclaimed plot.
+	 * Only floors with a single block in each layer are supported, so every position at a height is the same
+	 */
+	private static final class Template {
+		private final int minGenHeight;
+		private final boolean bedrock;
+		private final int plotHeight;
+		private final Material main;
+		private final Material top;
+
+		private Template(int minGenHeight, boolean bedrock, int plotHeight, Material main, Material top) {
+			this.minGenHeight = minGenHeight;
+			this.bedrock = bedrock;
+			this.plotHeight = plotHeight;
+			this.main = main;
+			this.top = top;
+		}
+
+		/**
+		 * Works out the template from an area's configuration, matching what HybridGen places in a plot
+		 * @param area The plot area
+		 * @return The template, or null if the area is not a classic or hybrid plot world, uses a plot schematic,
+		 *         or mixes several blocks in its main or top block
+		 */
+		static Template fromArea(PlotArea area) {
+			if (!(area instanceof ClassicPlotWorld)) {
+				return null;
+			}
+			if (area instanceof HybridPlotWorld && ((HybridPlotWorld) area).PLOT_SCHEMATIC) {
+				return null;
+			}
+
+			ClassicPlotWorld world = (ClassicPlotWorld) area;
+			Material main = getSingleMaterial(world.MAIN_BLOCK);
+			Material top = getSingleMaterial(world.TOP_BLOCK);
+			if (main == null || top == null) {
+				return null;
+			}
+
+			return new Template(area.getMinGenHeight(), world.PLOT_BEDROCK, world.PLOT_HEIGHT, main, top);
+		}
+
+		/**
+		 * Gets the block a bucket places, if it only ever places one
+		 */
+		private static Material getSingleMaterial(BlockBucket bucket) {
+			Pattern pattern = (bucket != null ? bucket.toPattern() : null);
+			if (!(pattern instanceof BlockStateHolder)) {
+				// A mix of blocks chosen at random
+				return null;
+			}
+			return Material.matchMaterial(((BlockStateHolder<?>) pattern).getBlockType().getId());
+		}
+
+		/**
+		 * Gets the block placed at a height
+		 */
+		Material getBlock(int y) {
+			if (y < minGenHeight || y > plotHeight) {
+				return Material.AIR;
+			}
+			if (y == minGenHeight && bedrock) {
+				return Material.BEDROCK;
+			}
+			return (y == plotHeight ? top : main);
+		}
+
+		boolean matches(PlotSnapshot plot) {
+			Material[] layers = new Material[plot.maxY - plot.minY];
+			for (int i = 0; i < layers.length; ++i) {
+				layers[i] = getBlock(plot.minY + i);
+			}
+
+			for (ChunkSnapshot chunk : plot.chunks) {
+				int startX = Math.max(plot.minX, chunk.getX() << 4);
+				int endX = Math.min(plot.maxX, (chunk.getX() << 4) + 15);
+				int startZ = Math.max(plot.minZ, chunk.getZ() << 4);
+				int endZ = Math.min(plot.maxZ, (chunk.getZ() << 4) + 15);
+
+				for (int section = 0; section < (layers.length + 15) >> 4; ++section) {
+					int sectionStart = section << 4;
+					int sectionEnd = Math.min(layers.length, sectionStart + 16);
+					// Sections are indexed from the bottom of the world
+					if (isAir(layers, sectionStart, sectionEnd) && chunk.isSectionEmpty(section)) {
+						continue;
+					}
+
+					for (int i = sectionStart; i < sectionEnd; ++i) {
+						Material expected = layers[i];
+						int y = plot.minY + i;
+						for (int x = startX; x <= endX; ++x) {
+							for (int z = startZ; z <= endZ; ++z) {
+								Material actual = chunk.getBlockType(x & 15, y, z & 15);
+								if (expected.isAir() ? !actual.isAir() : actual != expected) {
+									return false;
+								}
+							}
+						}
+					}
+				}
+			}
+
+			return true;
+		}
+
+		private static boolean isAir(Material[] layers, int start, int end) {
+			for (int i = start; i < end; ++i) {
+				if (!layers[i].isAir()) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof Template)) {
+				return false;
+			}
+
+			Template other = (Template)obj;
+			return minGenHeight == other.minGenHeight && bedrock == other.bedrock && plotHeight == other.plotHeight
+				&& main == other.main && top == other.top;
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(minGenHeight, bedrock, plotHeight, main, top);
+		}
+	}
+
+	private static class Result {
+		final long version;
+		final Template template;
+		final boolean empty;
+		final long time;
+
+		Result(long version, Template template, boolean empty) {
+			this.version = version;
+			this.template = template;
+			this.empty = empty;
+			this.time = System.currentTimeMillis();
+		}
+	}
+}
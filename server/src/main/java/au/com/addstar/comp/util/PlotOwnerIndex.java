@@ -0,0 +1,257 @@
+package au.com.addstar.comp.util;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.common.eventbus.Subscribe;
+import com.plotsquared.core.PlotAPI;
+import com.plotsquared.core.events.PlotClaimedNotifyEvent;
+import com.plotsquared.core.events.post.PostPlotChangeOwnerEvent;
+import com.plotsquared.core.events.post.PostPlotDeleteEvent;
+import com.plotsquared.core.events.post.PostPlotMergeEvent;
+import com.plotsquared.core.events.post.PostPlotUnlinkEvent;
+import com.plotsquared.core.plot.Plot;
+import com.plotsquared.core.plot.PlotArea;
+
+/**
+ * Keeps track of which plots are owned, and which plot each player owns, so lookups do not scan every plot.
+ * <p>
+ * The index is kept up to date from PlotSquared's claim, owner change, delete, merge and unlink events.
+ * Ownership changed through the API does not always fire events, so {@link #rebuild()}
+ * should be run periodically to correct any drift, and claims and entries use {@link #find(UUID)}
+ * so a missed claim cannot let a player enter twice in the meantime.
+ */
+public class PlotOwnerIndex {
+	private final PlotAPI api;
+	private final ConcurrentMap<UUID, Plot> plotsByOwner = new ConcurrentHashMap<>();
+	private final Set<Plot> ownedPlots = ConcurrentHashMap.newKeySet();
+
+	public PlotOwnerIndex(PlotAPI api) {
+		this.api = api;
+	}
+
+	/**
+	 * Gets the plot a player owns
+	 * @param owner The UUID of the player
+	 * @return The base plot they own, or null
+	 */
+	public Plot get(UUID owner) {
+		Plot plot = plotsByOwner.get(owner);
+		if (plot != null && !plot.isOwner(owner)) {
+			// Changed without us hearing about it
+			plotsByOwner.remove(owner, plot);
+			return null;
+		}
+		return plot;
+	}
+
+	/**
+	 * Gets the plot a player owns, looking through every claimed plot in each plot area if the index
+	 * has none for them. A plot found that way is added to the index.
+	 * This costs as much as the number of claimed plots on a miss, so only use it when claiming or entering
+	 * @param owner The UUID of the player
+	 * @return The base plot they own, or null
+	 */
+	public Plot find(UUID owner) {
+		Plot plot = get(owner);
+		if (plot != null) {
+			return plot;
+		}
+
+		for (PlotArea area : api.getPlotSquared().getPlotAreaManager().getAllPlotAreas()) {
+			for (Plot owned : area.getPlotsAbs(owner)) {
+				update(owned);
+				return owned.getBasePlot(false);
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Gets every owned plot. Merged plots are counted once for each part
+	 * @return An unmodifiable live view of the owned plots
+	 */
+	public Set<Plot> getOwnedPlots() {
+		return Collections.unmodifiableSet(ownedPlots);
+	}
+
+	/**
+	 * Gets the number of owned plots. Merged plots are counted once for each part
+	 */
+	public int getOwnedPlotCount() {
+		return ownedPlots.size();
+	}
+
+	/**
+	 * Gets every player that owns a plot
+	 * @return An unmodifiable live view of the owners
+	 */
+	public Set<UUID> getOwners() {
+		return Collections.unmodifiableSet(plotsByOwner.keySet());
+	}
+
+	/**
+	 * Re-reads the owners of a plot and any plots merged with it
+	 * @param plot The plot that changed
+	 */
+	public void update(Plot plot) {
+		remove(plot);
+		if (plot.hasOwner()) {
+			Plot base = plot.getBasePlot(false);
+			for (UUID owner : plot.getOwners()) {
+				plotsByOwner.put(owner, base);
+			}
+			for (Plot part : plot.getConnectedPlots()) {
+				if (part.hasOwner()) {
+					ownedPlots.add(part);
+				}
+			}
+			ownedPlots.add(plot);
+		}
+	}
+
+	/**
+	 * Removes a plot and any plots merged with it
+	 * @param plot The plot that is no longer owned
+	 */
+	public void remove(Plot plot) {
+		Set<Plot> parts = Sets.newHashSet(plot.getConnectedPlots());
+		parts.add(plot);
+
+		ownedPlots.removeAll(parts);
+		plotsByOwner.values().removeIf(parts::contains);
+	}
+
+	/**
+	 * Compares the index against a full scan of every plot without changing anything
+	 * @return The differences found
+	 */
+	public Report verify() {
+		return compare(new Scan());
+	}
+
+	/**
+	 * Rebuilds the index from a full scan of every plot
+	 * @return The differences there were before the rebuild
+	 */
+	public Report rebuild() {
+		Scan scan = new Scan();
+		Report report = compare(scan);
+
+		plotsByOwner.keySet().retainAll(scan.plotsByOwner.keySet());
+		plotsByOwner.putAll(scan.plotsByOwner);
+		ownedPlots.retainAll(scan.ownedPlots);
+		ownedPlots.addAll(scan.ownedPlots);
+		return report;
+	}
+
+	private Report compare(Scan scan) {
+		Report report = new Report();
+		report.indexedPlots = ownedPlots.size();
+		report.scannedPlots = scan.ownedPlots.size();
+		report.indexedOwners = plotsByOwner.size();
+		report.scannedOwners = scan.plotsByOwner.size();
+
+		for (Plot plot : scan.ownedPlots) {
+			if (!ownedPlots.contains(plot)) {
+				++report.missingPlots;
+			}
+		}
+		for (Plot plot : ownedPlots) {
+			if (!scan.ownedPlots.contains(plot)) {
+				++report.extraPlots;
+			}
+		}
+
+		for (Map.Entry<UUID, Plot> entry : scan.plotsByOwner.entrySet()) {
+			Plot existing = plotsByOwner.get(entry.getKey());
+			if (existing == null || !existing.equals(entry.getValue())) {
+				++report.wrongOwners;
+			}
+		}
+		for (UUID owner : plotsByOwner.keySet()) {
+			if (!scan.plotsByOwner.containsKey(owner)) {
+				++report.wrongOwners;
+			}
+		}
+
+		return report;
+	}
+
+	@Subscribe
+	public void onClaimed(PlotClaimedNotifyEvent event) {
+		update(event.getPlot());
+	}
+
+	@Subscribe
+	public void onOwnerChange(PostPlotChangeOwnerEvent event) {
+		update(event.getPlot());
+	}
+
+	@Subscribe
+	public void onDelete(PostPlotDeleteEvent event) {
+		remove(event.getPlot());
+	}
+
+	@Subscribe
+	public void onMerge(PostPlotMergeEvent event) {
+		update(event.getPlot());
+	}
+
+	@Subscribe
+	public void onUnlink(PostPlotUnlinkEvent event) {
+		update(event.getPlot());
+	}
+
+	/**
+	 * The ownership of every plot read straight from PlotSquared
+	 */
+	private class Scan {
+		final Map<UUID, Plot> plotsByOwner = Maps.newHashMap();
+		final Set<Plot> ownedPlots = Sets.newHashSet();
+
+		Scan() {
+			for (Plot plot : api.getAllPlots()) {
+				if (plot.hasOwner()) {
+					ownedPlots.add(plot);
+					Plot base = plot.getBasePlot(false);
+					for (UUID owner : plot.getOwners()) {
+						plotsByOwner.putIfAbsent(owner, base);
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * The differences between the index and a full scan
+	 */
+	public static class Report {
+		public int indexedPlots;
+		public int scannedPlots;
+		public int indexedOwners;
+		public int scannedOwners;
+		/**
+		 * Owned plots the index did not have
+		 */
+		public int missingPlots;
+		/**
+		 * Plots the index had that are not owned
+		 */
+		public int extraPlots;
+		/**
+		 * Players that were missing, extra or pointing at the wrong plot
+		 */
+		public int wrongOwners;
+
+		public int getDrift() {
+			return missingPlots + extraPlots + wrongOwners;
+		}
+	}
+}
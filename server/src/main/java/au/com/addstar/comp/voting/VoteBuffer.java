@@ -0,0 +1,249 @@
+package au.com.addstar.comp.voting;
+
+import java.sql.SQLException;
+import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.bukkit.Bukkit;
+import org.bukkit.plugin.Plugin;
+
+import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.ListMultimap;
+import com.google.common.collect.Maps;
+import com.plotsquared.core.plot.PlotId;
+
+import au.com.addstar.comp.CompServerBackendManager;
+import au.com.addstar.comp.Competition;
+
+/**
+ * Holds votes in memory and writes them to the database in batches.
+ * Revotes on the same plot replace the buffered vote so only the latest is written.
+ * The buffer is written when it reaches its size limit, when {@link #flush()} is called,
+ * and periodically by running this as a task.
+ */
+public class VoteBuffer implements Runnable {
+	private final CompServerBackendManager backend;
+	private final Plugin plugin;
+	private final Logger logger;
+	private final int maxSize;
+
+	private final Map<Key, BufferedVote> pending;
+	private final Object flushLock = new Object();
+	private final AtomicBoolean flushScheduled = new AtomicBoolean();
+
+	// Metrics
+	private volatile long lastFlushLatency;
+	private volatile long maxFlushLatency;
+	private long totalFlushLatency;
+	private long flushCount;
+	private long flushedVotes;
+	private long coalescedVotes;
+	private long failedFlushes;
+
+	/**
+	 * @param backend The backend to write votes to
+	 * @param plugin The plugin used to schedule flushes
+	 * @param maxSize How many votes may be buffered before a flush is started
+	 */
+	public VoteBuffer(CompServerBackendManager backend, Plugin plugin, int maxSize) {
+		this.backend = backend;
+		this.plugin = plugin;
+		this.logger = plugin.getLogger();
+		this.maxSize = Math.max(1, maxSize);
+
+		pending = Maps.newLinkedHashMap();
+	}
+
+	/**
+	 * Buffers a vote, replacing any buffered vote by the same voter on the same plot
+	 * @param voter The uuid of the voter
+	 * @param vote The vote to record
+	 * @param comp The comp to record the vote in
+	 */
+	public void add(UUID voter, Vote vote, Competition comp) {
+		int size;
+		synchronized (pending) {
+			if (pending.put(new Key(comp.getCompId(), voter, vote.getPlot()), new BufferedVote(voter, vote, comp)) != null) {
+				++coalescedVotes;
+			}
+			size = pending.size();
+		}
+
+		if (size >= maxSize && flushScheduled.compareAndSet(false, true)) {
+			Bukkit.getScheduler().runTaskAsynchronously(plugin, () -> {
+				flushScheduled.set(false);
+				flush();
+			});
+		}
+	}
+
+	/**
+	 * Periodic flush
+	 */
+	@Override
+	public void run() {
+		flush();
+	}
+
+	/**
+	 * Writes all buffered votes to the database, blocking until done.
+	 * Votes that fail to be written are kept for the next flush
+	 * unless they have been replaced in the meantime.
+	 * @return True if everything was written
+	 */
+	public boolean flush() {
+		synchronized (flushLock) {
+			Map<Key, BufferedVote> toWrite;
+			synchronized (pending) {
+				if (pending.isEmpty()) {
+					return true;
+				}
+				toWrite = Maps.newLinkedHashMap(pending);
+				pending.clear();
+			}
+
+			// Group by comp so each comp is one batch
+			Map<Integer, Competition> comps = Maps.newHashMap();
+			Map<Integer, ListMultimap<UUID, Vote>> byComp = Maps.newHashMap();
+			for (BufferedVote entry : toWrite.values()) {
+				int compId = entry.comp.getCompId();
+				comps.putIfAbsent(compId, entry.comp);
+				byComp.computeIfAbsent(compId, id -> ArrayListMultimap.create()).put(entry.voter, entry.vote);
+			}
+
+			long start = System.currentTimeMillis();
+			try {
+				for (Map.Entry<Integer, ListMultimap<UUID, Vote>> entry : byComp.entrySet()) {
+					backend.addVotes(comps.get(entry.getKey()), entry.getValue());
+				}
+			} catch (SQLException e) {
+				logger.log(Level.SEVERE, "Failed to write " + toWrite.size() + " buffered votes to the database. They will be retried", e);
+				synchronized (pending) {
+					++failedFlushes;
+					for (Map.Entry<Key, BufferedVote> entry : toWrite.entrySet()) {
+						pending.putIfAbsent(entry.getKey(), entry.getValue());
+					}
+				}
+				return false;
+			}
+
+			long latency = System.currentTimeMillis() - start;
+			synchronized (pending) {
+				lastFlushLatency = latency;
+				maxFlushLatency = Math.max(maxFlushLatency, latency);
+				totalFlushLatency += latency;
+				++flushCount;
+				flushedVotes += toWrite.size();
+			}
+			return true;
+		}
+	}
+
+	/**
+	 * Gets the number of votes waiting to be written
+	 */
+	public int getDepth() {
+		synchronized (pending) {
+			return pending.size();
+		}
+	}
+
+	public int getMaxSize() {
+		return maxSize;
+	}
+
+	/**
+	 * Gets how long the last successful flush took in ms
+	 */
+	public long getLastFlushLatency() {
+		return lastFlushLatency;
+	}
+
+	/**
+	 * Gets the longest time a successful flush has taken in ms
+	 */
+	public long getMaxFlushLatency() {
+		return maxFlushLatency;
+	}
+
+	/**
+	 * Gets the average time a successful flush has taken in ms
+	 */
+	public long getAverageFlushLatency() {
+		synchronized (pending) {
+			return (flushCount == 0 ? 0 : totalFlushLatency / flushCount);
+		}
+	}
+
+	public long getFlushCount() {
+		synchronized (pending) {
+			return flushCount;
+		}
+	}
+
+	/**
+	 * Gets the number of votes that have been written
+	 */
+	public long getFlushedVotes() {
+		synchronized (pending) {
+			return flushedVotes;
+		}
+	}
+
+	/**
+	 * Gets the number of buffered votes that were replaced by a revote before being written
+	 */
+	public long getCoalescedVotes() {
+		synchronized (pending) {
+			return coalescedVotes;
+		}
+	}
+
+	public long getFailedFlushes() {
+		synchronized (pending) {
+			return failedFlushes;
+		}
+	}
+
+	private static final class BufferedVote {
+		final UUID voter;
+		final Vote vote;
+		final Competition comp;
+
+		BufferedVote(UUID voter, Vote vote, Competition comp) {
+			this.voter = voter;
+			this.vote = vote;
+			this.comp = comp;
+		}
+	}
+
+	private static final class Key {
+		private final int compId;
+		private final UUID voter;
+		private final PlotId plot;
+
+		Key(int compId, UUID voter, PlotId plot) {
+			this.compId = compId;
+			this.voter = voter;
+			this.plot = plot;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof Key)) {
+				return false;
+			}
+			Key other = (Key)obj;
+			return compId == other.compId && voter.equals(other.voter) && plot.equals(other.plot);
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(compId, voter, plot);
+		}
+	}
+}
@@ -6,9 +6,7 @@ import java.util.Set;
 import java.util.UUID;
 
 import au.com.addstar.comp.CompManager;
-import au.com.addstar.comp.CompPlugin;
 import com.plotsquared.core.plot.PlotId;
-import org.bukkit.Bukkit;
 import org.bukkit.entity.Player;
 
 import com.google.common.base.Preconditions;
@@ -65,13 +63,7 @@ public class VoteStorage<T extends Vote> {
         votes.put(vote.getPlot(), vote);
 
         // Record the vote in the backend
-        Bukkit.getScheduler().runTaskAsynchronously(CompPlugin.getPlugin(CompPlugin.class), () -> {
-            try {
-                manager.getBackend().addVote(player.getUniqueId(), vote, manager.getCurrentComp());
-            } catch (SQLException e) {
-                CompPlugin.instance.getLogger().log(java.util.logging.Level.SEVERE, "Failed to add vote to database", e);
-            }
-        });
+        manager.getVoteBuffer().add(player.getUniqueId(), vote, manager.getCurrentComp());
     }
 
     public boolean canPlayersRevote() {
@@ -94,14 +86,10 @@ public class VoteStorage<T extends Vote> {
             return;
         }
 
-        SetMultimap<UUID, T> loaded = manager.getBackend().loadVotes(manager.getCurrentComp(), provider);
-
-        playerVotes.putAll(loaded);
-        for (UUID voter : loaded.keySet()) {
-            for (T vote : loaded.get(voter)) {
-                votes.put(vote.getPlot(), vote);
-            }
-        }
+        manager.getBackend().streamVotes(manager.getCurrentComp(), provider, (voter, vote) -> {
+            playerVotes.put(voter, vote);
+            votes.put(vote.getPlot(), vote);
+        });
     }
 
     /**
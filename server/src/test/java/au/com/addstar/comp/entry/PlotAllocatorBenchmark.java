@@ -0,0 +1,156 @@
+package au.com.addstar.comp.entry;
+
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.objenesis.ObjenesisStd;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.google.common.collect.Lists;
+import com.plotsquared.core.plot.Plot;
+import com.plotsquared.core.plot.PlotArea;
+import com.plotsquared.core.plot.PlotId;
+
+import au.com.addstar.comp.util.P2Bridge;
+
+/**
+ * Measures {@link PlotAllocator} for a 2,000 plot comp without a server.
+ * P2Bridge and the plots are stubs created without running their constructors,
+ * so only the allocator's own work is measured.
+ * <p>
+ * Run with {@code mvn -pl server test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=au.com.addstar.comp.entry.PlotAllocatorBenchmark}
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PlotAllocatorBenchmark {
+	private static final int PlotCount = 2000;
+	private static final long LeaseTime = TimeUnit.MINUTES.toMillis(1);
+
+	private final UUID playerId = UUID.randomUUID();
+	private StubBridge bridge;
+	// Half of the plots leased
+	private PlotAllocator halfFull;
+	// Every plot leased
+	private PlotAllocator full;
+
+	@Setup
+	public void setup() {
+		ObjenesisStd objenesis = new ObjenesisStd();
+		bridge = objenesis.newInstance(StubBridge.class);
+		bridge.plots = Lists.newArrayListWithCapacity(PlotCount);
+		for (int i = 0; i < PlotCount; ++i) {
+			StubPlot plot = objenesis.newInstance(StubPlot.class);
+			plot.id = PlotId.of(i, 0);
+			bridge.plots.add(plot);
+		}
+
+		halfFull = new PlotAllocator(bridge);
+		halfFull.ensureSize(PlotCount);
+		for (int i = 0; i < PlotCount / 2; ++i) {
+			halfFull.lease(playerId, LeaseTime);
+		}
+
+		full = new PlotAllocator(bridge);
+		full.ensureSize(PlotCount);
+		while (full.lease(playerId, LeaseTime) != null) {
+		}
+	}
+
+	/**
+	 * An entry that is started and then aborted
+	 */
+	@Benchmark
+	public PlotAllocator.Lease leaseAndRelease() {
+		PlotAllocator.Lease lease = halfFull.lease(playerId, LeaseTime);
+		halfFull.release(lease);
+		return lease;
+	}
+
+	/**
+	 * An attempt to enter once every plot is taken
+	 */
+	@Benchmark
+	public PlotAllocator.Lease leaseWhenFull() {
+		return full.lease(playerId, LeaseTime);
+	}
+
+	/**
+	 * Every plot being handed out as the comp opens
+	 */
+	@Benchmark
+	public int fillComp() {
+		PlotAllocator allocator = new PlotAllocator(bridge);
+		allocator.ensureSize(PlotCount);
+		while (allocator.lease(playerId, LeaseTime) != null) {
+		}
+		return allocator.getLeaseCount();
+	}
+
+	public static void main(String[] args) throws RunnerException {
+		new Runner(new OptionsBuilder().include(PlotAllocatorBenchmark.class.getSimpleName()).build()).run();
+	}
+
+	/**
+	 * Hands out the same plots every time instead of looking them up in a plot area
+	 */
+	public static class StubBridge extends P2Bridge {
+		List<Plot> plots;
+
+		public StubBridge() {
+			super(null);
+		}
+
+		@Override
+		public Iterable<Plot> getOrderedPlots(int maxPlots) {
+			return plots.subList(0, Math.min(maxPlots, plots.size()));
+		}
+
+		@Override
+		public boolean isClaimed(Plot plot) {
+			return plot.hasOwner();
+		}
+	}
+
+	/**
+	 * An unclaimed plot with only an id
+	 */
+	public static class StubPlot extends Plot {
+		PlotId id;
+
+		public StubPlot() {
+			super((PlotArea) null, (PlotId) null);
+		}
+
+		@Override
+		public PlotId getId() {
+			return id;
+		}
+
+		@Override
+		public PlotArea getArea() {
+			return null;
+		}
+
+		@Override
+		public boolean hasOwner() {
+			return false;
+		}
+	}
+}